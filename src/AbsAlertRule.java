@@ -0,0 +1,144 @@
+import java.time.Duration;
+
+/**
+ * An abstract superclass for rules that raise an alert while a measured value is above (or below) a threshold.
+ * A rule may be given a duration the condition must hold for before the alert is raised, and must stay false for
+ * before it is cleared, so that a single sample neither raises nor clears it.
+ */
+public abstract class AbsAlertRule {
+
+    /**
+     * A name to identify the rule in alerts
+     */
+    protected String name;
+
+    /**
+     * The value above (or below) which the rule is triggered
+     */
+    protected double threshold;
+
+    /**
+     * True if the rule is triggered below the threshold rather than above it
+     */
+    protected boolean below;
+
+    /**
+     * How long in seconds the condition must hold (or not hold) before the rule changes state
+     */
+    protected long sustainSeconds;
+
+    /**
+     * The time in seconds since the epoch since which the condition has disagreed with active, or -1 if it agrees
+     */
+    private long changingSince;
+
+    /**
+     * Whether the rule was triggered the last time it was evaluated
+     */
+    private boolean active;
+
+    /**
+     * Constructs a new abstract alert rule
+     * @param name a name to identify the rule in alerts
+     * @param threshold the value above which the rule is triggered
+     */
+    public AbsAlertRule(String name, double threshold){
+        this(name, threshold, false, Duration.ZERO);
+    }
+
+    /**
+     * Constructs a new abstract alert rule
+     * @param name a name to identify the rule in alerts
+     * @param threshold the value above (or below) which the rule is triggered
+     * @param below true to trigger while the value is below the threshold, false for above
+     * @param sustain how long the condition must hold before the rule is triggered, and must not hold before it is cleared
+     * @throws IllegalArgumentException if sustain is negative
+     */
+    public AbsAlertRule(String name, double threshold, boolean below, Duration sustain){
+        if (sustain.isNegative())
+            throw new IllegalArgumentException("sustain must not be negative");
+        this.name = name;
+        this.threshold = threshold;
+        this.below = below;
+        this.sustainSeconds = sustain.getSeconds();
+        this.active = false;
+        this.changingSince = -1;
+    }
+
+    /**
+     * Sets up the shared aggregates this rule reads from
+     * @param engine the engine the rule is being added to
+     */
+    protected abstract void register(AlertEngine engine);
+
+    /**
+     * Reads the current value of whatever this rule watches
+     * @param engine the engine holding the shared aggregates
+     * @return the measured value, or -999.0 if there is nothing to measure yet
+     */
+    protected abstract double measure(AlertEngine engine);
+
+    /**
+     * Evaluates the rule and tells the listeners if it changed state, which it does once the condition has
+     * disagreed with the current state for the sustain duration
+     * @param engine the engine holding the shared aggregates
+     * @param datetime the newest datetime seen, in YYYYMMDDhhmmss.0 format
+     * @param listeners the listeners to notify
+     */
+    void evaluate(AlertEngine engine, double datetime, Iterable<AlertListener> listeners){
+        double value = measure(engine);
+        boolean triggered = !Utility.compareDoubles(value, -999.0) && (below ? value < threshold : value > threshold);
+        if (triggered == active){
+            changingSince = -1;
+            return;
+        }
+        long now = Utility.toEpochSecond(datetime);
+        if (changingSince < 0)
+            changingSince = now;
+        if (now - changingSince < sustainSeconds)
+            return;
+        changingSince = -1;
+        active = triggered;
+        for (AlertListener l : listeners){
+            if (triggered)
+                l.alertRaised(this, datetime, value);
+            else
+                l.alertCleared(this, datetime, value);
+        }
+    }
+
+    /**
+     * @return the name of the rule
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the value above (or below) which the rule is triggered
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @return true if the rule is triggered below the threshold rather than above it
+     */
+    public boolean isBelow() {
+        return below;
+    }
+
+    /**
+     * @return how long the condition must hold before the rule is triggered, and must not hold before it is cleared
+     */
+    public Duration getSustain() {
+        return Duration.ofSeconds(sustainSeconds);
+    }
+
+    /**
+     * @return true if the rule was triggered the last time it was evaluated
+     */
+    public boolean isActive() {
+        return active;
+    }
+}
@@ -1,12 +1,33 @@
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.RandomAccess;
 import java.util.GregorianCalendar;
 import java.util.Calendar;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 /**
  * An abstract superclass to provide template methods for performance specific subclasses.
  */
-public abstract class AbsGreenHouse implements QualityControlable{
+public abstract class AbsGreenHouse implements QualityControlable, Sensible, AutoCloseable{
+
+    static {
+        // registering the events loads Flight Recorder's metadata, which takes long enough that it should be paid
+        // when the first greenhouse is made rather than by its first poll or query
+        jdk.jfr.FlightRecorder.register(IngestEvent.class);
+        jdk.jfr.FlightRecorder.register(QueryEvent.class);
+    }
 
     /**
      * A gregorian calendar
@@ -23,12 +44,63 @@ public abstract class AbsGreenHouse implements QualityControlable{
      */
     protected ArrayList<Double> data;
 
+    /**
+     * Publishes the middle reading of each day once it closes, or null if nobody asked for it
+     */
+    private SubmissionPublisher<DailyMedian> dailyMedians;
+
+    /**
+     * The date of the newest accepted datetime, which is still open
+     */
+    private double openDate;
+
+    /**
+     * Dates that closed since the last publish
+     */
+    private ArrayList<Double> closedDates;
+
+    /**
+     * How far behind the clock a frame may be and still be accepted, in seconds
+     */
+    private long allowedLateness;
+
+    /**
+     * The number of frames accepted despite being behind the clock
+     */
+    private long lateFrames;
+
+    /**
+     * The number of frames dropped for being too far behind the clock
+     */
+    private long droppedFrames;
+
+    /**
+     * Recently accepted frames, or null if duplicate frames are not dropped
+     */
+    private FrameDedupIndex dedup;
+
+    /**
+     * The number of frames dropped for repeating a recently accepted frame
+     */
+    private long duplicateFrames;
+
+    /**
+     * Runs and coalesces asynchronous queries, or null until the first one
+     */
+    private QueryCoalescer queries;
+
+    /**
+     * The default query executor, or null if queries run on one set by setQueryExecutor or none has started yet
+     */
+    private ExecutorService queryThread;
+
     /**
      * Constructs a new abstract greenhoyse
      */
     public AbsGreenHouse(){
         calendar = new GregorianCalendar();
         parsedDataStrategy = new ArrayListStrategy();
+        closedDates = new ArrayList<Double>();
     }
 
     /**
@@ -39,30 +111,347 @@ public abstract class AbsGreenHouse implements QualityControlable{
     public AbsGreenHouse(GregorianCalendar calendar){
         this.calendar = (GregorianCalendar) calendar.clone();
         parsedDataStrategy = new ArrayListStrategy();
+        closedDates = new ArrayList<Double>();
     }
 
 
     /**
-     * Filters out data that occurs before the current calendar
+     * Filters out data that occurs before the current calendar, less the allowed lateness.
+     * Late frames within the allowed lateness are kept and put back into datetime order with the rest of the batch;
+     * older frames are counted and dropped. If deduplication is on, frames repeating a recently accepted frame
+     * (same datetime and values) are also counted and dropped. Each call is recorded as a filterData ingest event,
+     * with the time spent setting the clock.
      * @param data the data to filter
      * @return the filtered data
      */
     public ArrayList<Double> filterData(List<Double> data){
+        IngestEvent event = new IngestEvent();
+        event.begin();
+        boolean timed = event.isEnabled();
+        int days = 0;
+        double lastDate = 0;
+        if (!(data instanceof RandomAccess))
+            data = new ArrayList<Double>(data);
         ArrayList<Double> newData = new ArrayList<Double>();
+        ArrayList<Integer> starts = new ArrayList<Integer>();
+        boolean late = false;
         for (int i = 0; i < data.size(); i++){
             double time = data.get(i);
-            if (Utility.isDateTime(time) && time >= clockAsDatetime()){
+            if (!Utility.isDateTime(time))
+                continue;
+            boolean onTime = time >= clockAsDatetime();
+            boolean accepted = onTime || isWithinLateness(time);
+            if (accepted && isDuplicate(data, i, time)){
+                duplicateFrames++;
+                while (i + 1 < data.size() && !Utility.isDateTime(data.get(i + 1)))
+                    i++;
+            } else if (accepted){
+                starts.add(newData.size());
                 newData.add(data.get(i));
-                setClockTo(time);
+                if (timed && !Utility.sameDate(lastDate, Utility.toDate(time))){
+                    lastDate = Utility.toDate(time);
+                    days++;
+                }
+                if (onTime){
+                    if (timed){
+                        long start = System.nanoTime();
+                        setClockTo(time);
+                        event.clockTime += System.nanoTime() - start;
+                    } else
+                        setClockTo(time);
+                    if (dailyMedians != null)
+                        trackDay(Utility.toDate(time));
+                } else {
+                    late = true;
+                    lateFrames++;
+                }
                 while (i + 1 < data.size() && !Utility.isDateTime(data.get(i + 1))){
                     i++;
                     newData.add(data.get(i));
                 }
-            }
+            } else
+                droppedFrames++;
         }
+        if (late)
+            newData = reorderFrames(newData, starts);
+        event.record("filterData", this, data.size(), starts.size(), days);
         return newData;
     }
 
+    /**
+     * Sets how far behind the clock a frame may be and still be accepted. Zero (the default)
+     * only accepts frames at or after the clock.
+     * @param allowedLateness the allowed lateness
+     */
+    public synchronized void setAllowedLateness(Duration allowedLateness){
+        this.allowedLateness = allowedLateness.getSeconds();
+    }
+
+    /**
+     * Drops frames that repeat a recently accepted frame (same datetime and values), as at-least-once collectors
+     * deliver after a retry. Frames are remembered for one to two windows of frame time, and at most 2 * maxFrames
+     * are remembered at once.
+     * @param window how long a frame is remembered at least, or zero to stop dropping duplicates
+     * @param maxFrames the most frames remembered per window
+     */
+    public synchronized void setDeduplication(Duration window, int maxFrames){
+        dedup = window.isZero() ? null : new FrameDedupIndex(window.getSeconds(), maxFrames);
+    }
+
+    /**
+     * @return the number of frames dropped for repeating a recently accepted frame
+     */
+    public synchronized long getDuplicateFrames(){
+        return duplicateFrames;
+    }
+
+    /**
+     * @return the number of frames accepted despite being behind the clock
+     */
+    public synchronized long getLateFrames(){
+        return lateFrames;
+    }
+
+    /**
+     * @return the number of frames dropped for being too far behind the clock
+     */
+    public synchronized long getDroppedFrames(){
+        return droppedFrames;
+    }
+
+    /**
+     * Creates a subscriber which polls frames of sensor data from a publisher into this greenhouse,
+     * requesting no more frames than it can buffer
+     * @param bufferSize the most frames that may be requested and not yet polled
+     * @param batchSize the number of values at which received frames are polled together
+     * @return a new subscriber, whose getCompletion() tells when ingest has drained
+     */
+    public SensorFrameSubscriber sensorSubscriber(int bufferSize, int batchSize){
+        return new SensorFrameSubscriber(this, bufferSize, batchSize);
+    }
+
+    /**
+     * Gets a publisher of the middle reading of each day, published once a reading for a later day is polled.
+     * Publishing blocks while a subscriber's buffer is full.
+     * @return the publisher
+     */
+    public synchronized Flow.Publisher<DailyMedian> dailyMedians(){
+        if (dailyMedians == null)
+            dailyMedians = new SubmissionPublisher<DailyMedian>();
+        return dailyMedians;
+    }
+
+    /**
+     * Completes every subscriber of dailyMedians()
+     */
+    public synchronized void closeDailyMedians(){
+        if (dailyMedians != null)
+            dailyMedians.close();
+    }
+
+    /**
+     * Publishes the middle reading of every day that closed since the last publish.
+     * Called after polled data has been stored.
+     */
+    protected void publishClosedDays(){
+        if (dailyMedians == null)
+            return;
+        for (double date : closedDates)
+            dailyMedians.submit(new DailyMedian(date, middleReading(date)));
+        closedDates.clear();
+    }
+
+    /**
+     * Summarizes every reading polled so far, to be merged with the summaries of other greenhouses
+     * (see ReadingSummary.of). Holds this greenhouse's lock, which polling from the ingest server also holds.
+     * @param capacity the capacity of each sketch (see QuantileSketch)
+     * @return a new summary
+     */
+    public synchronized ReadingSummary summarize(int capacity){
+        return query("summarize", 0, strategy -> {
+            ReadingSummary summary = new ReadingSummary(capacity);
+            strategy.summarizeInto(summary);
+            return summary;
+        });
+    }
+
+    /**
+     * Hands a batch of filtered data to the strategy, recording it as a processData ingest event
+     * @param batch filtered data
+     */
+    protected void processBatch(List<Double> batch){
+        IngestEvent event = new IngestEvent();
+        event.begin();
+        parsedDataStrategy.processData(batch);
+        event.record("processData", parsedDataStrategy, batch.size(), 0, 0);
+    }
+
+    /**
+     * Sets the executor asynchronous queries run on. By default they run on a daemon thread of their own,
+     * started by the first asynchronous query and stopped after a second idle or by close().
+     * @param executor the executor, which the caller shuts down
+     */
+    public synchronized void setQueryExecutor(Executor executor){
+        close();
+        queries = new QueryCoalescer(executor, this);
+    }
+
+    /**
+     * Stops the default query thread once the queries already asked have run. A later asynchronous query starts
+     * a new one; an executor set by setQueryExecutor is left running.
+     */
+    @Override
+    public synchronized void close(){
+        if (queryThread == null)
+            return;
+        queryThread.shutdown();
+        queryThread = null;
+        queries = null;
+    }
+
+    /**
+     * @return what runs and coalesces asynchronous queries
+     */
+    public synchronized QueryCoalescer getQueryCoalescer(){
+        if (queries == null){
+            ThreadPoolExecutor thread = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), r -> {
+                Thread t = new Thread(r, "greenhouse-query");
+                t.setDaemon(true);
+                return t;
+            });
+            thread.allowCoreThreadTimeOut(true);
+            queryThread = thread;
+            queries = new QueryCoalescer(thread, this);
+        }
+        return queries;
+    }
+
+    /**
+     * produces middleReading() on the query executor, holding this greenhouse's lock
+     * @return a future for the reading, which the caller may cancel or time out
+     */
+    @Override
+    public CompletableFuture<TempHumidReading> middleReadingAsync(){
+        return getQueryCoalescer().submit("middleReading", this::middleReading);
+    }
+
+    /**
+     * produces middleReading(onDate) on the query executor, holding this greenhouse's lock
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a future for the reading, which the caller may cancel or time out
+     */
+    @Override
+    public CompletableFuture<TempHumidReading> middleReadingAsync(double onDate){
+        return getQueryCoalescer().submit("middleReading " + onDate, () -> middleReading(onDate));
+    }
+
+    /**
+     * produces percentError() on the query executor, holding this greenhouse's lock
+     * @return a future for the percentage, which the caller may cancel or time out
+     */
+    @Override
+    public CompletableFuture<Double> percentErrorAsync(){
+        return getQueryCoalescer().submit("percentError", this::percentError);
+    }
+
+    /**
+     * Makes sure everything polled so far is visible to queries. Does nothing by default.
+     */
+    protected void flushPending(){
+    }
+
+    /**
+     * Answers a query from the strategy after processing whatever polled data is waiting, recorded as a query event
+     * @param query the name of the query
+     * @param date the date it asks about, or 0 for all readings
+     * @param answer asks the strategy
+     * @param <T> the type of the answer
+     * @return the answer
+     */
+    protected <T> T query(String query, double date, Function<ParsedDataStrategy, T> answer){
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        flushPending();
+        T result = answer.apply(parsedDataStrategy);
+        event.record(query, parsedDataStrategy, date);
+        return result;
+    }
+
+    /**
+     * Answers a query whose answer is a primitive, as query does, without boxing it
+     * @param query the name of the query
+     * @param date the date it asks about, or 0 for all readings
+     * @param answer asks the strategy
+     * @return the answer
+     */
+    protected double queryValue(String query, double date, ToDoubleFunction<ParsedDataStrategy> answer){
+        QueryEvent event = new QueryEvent();
+        event.begin();
+        flushPending();
+        double result = answer.applyAsDouble(parsedDataStrategy);
+        event.record(query, parsedDataStrategy, date);
+        return result;
+    }
+
+    /**
+     * Checks whether a frame repeats a recently accepted frame, remembering it if not
+     * @param data raw data
+     * @param start the index of the frame's datetime
+     * @param time the frame's datetime
+     * @return true if deduplication is on and the frame was seen recently
+     */
+    private boolean isDuplicate(List<Double> data, int start, double time){
+        if (dedup == null)
+            return false;
+        int end = start + 1;
+        while (end < data.size() && !Utility.isDateTime(data.get(end)))
+            end++;
+        return !dedup.add(FrameDedupIndex.fingerprint(data, start, end), time);
+    }
+
+    /**
+     * Checks whether a datetime behind the clock is within the allowed lateness
+     * @param time a datetime before the clock
+     * @return true if the frame should still be accepted
+     */
+    private boolean isWithinLateness(double time){
+        if (allowedLateness <= 0)
+            return false;
+        return Utility.toEpochSecond(clockAsDatetime()) - Utility.toEpochSecond(time) <= allowedLateness;
+    }
+
+    /**
+     * Puts accepted frames back into datetime order, using a heap of frame starts keyed by datetime
+     * (frames with equal datetimes keep their arrival order)
+     * @param frames accepted frames in arrival order
+     * @param starts the index in frames at which each frame starts
+     * @return the frames in datetime order
+     */
+    private ArrayList<Double> reorderFrames(ArrayList<Double> frames, ArrayList<Integer> starts){
+        PriorityQueue<Integer> heap = new PriorityQueue<Integer>(
+                Comparator.comparingDouble((Integer start) -> frames.get(start)).thenComparingInt(start -> start));
+        heap.addAll(starts);
+        ArrayList<Double> ordered = new ArrayList<Double>(frames.size());
+        while (!heap.isEmpty()){
+            int start = heap.poll();
+            ordered.add(frames.get(start));
+            for (int i = start + 1; i < frames.size() && !Utility.isDateTime(frames.get(i)); i++)
+                ordered.add(frames.get(i));
+        }
+        return ordered;
+    }
+
+    /**
+     * Records that a datetime on date was accepted, closing the previously open date if it is different
+     * @param date a date in the format YYYYMMDD.0
+     */
+    private void trackDay(double date){
+        if (openDate != 0 && !Utility.sameDate(openDate, date))
+            closedDates.add(openDate);
+        openDate = date;
+    }
+
     /**
      * A helper method to convert a gregroian calendar to a HW3 style datetime double
      * @return a HW3 style datetime double
@@ -106,9 +495,10 @@ public abstract class AbsGreenHouse implements QualityControlable{
      * Handles switching to another strategy
      * @param otherStrategy the strategy to be switched to
      */
-    public void setStrategy(ParsedDataStrategy otherStrategy){
+    public synchronized void setStrategy(ParsedDataStrategy otherStrategy){
         this.parsedDataStrategy = otherStrategy;
-        data.clear();
+        if (data != null)
+            data.clear();
     }
 
 }
\ No newline at end of file
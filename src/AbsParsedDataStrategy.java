@@ -0,0 +1,538 @@
+import java.nio.DoubleBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * An abstract superclass for strategies which keep every valid reading in two sorted lists and index
+ * the readings of each date as DateReadings. Subclasses choose how the date index is stored.
+ * Batches are ingested in one pass which buckets values by date, counts errors and collects
+ * the new values, touching each input value once.
+ *
+ * A strategy can be given a memory budget, checked against an estimate of its footprint after each batch. While over budget
+ * it spills its oldest days to a SpillStore, removing their values from the sorted lists. Spilled days are read from
+ * their mapped segments by queries on their date, found among the sorted lists and every segment by SortedRuns for queries
+ * over all readings, and loaded back if more readings arrive for them.
+ *
+ * Later batches for a day already held are kept as sorted runs in its DateReading. Given a compaction executor, a day
+ * with COMPACT_RUNS runs is compacted on it, off the ingest path; otherwise days compact when they reach MAX_RUNS runs.
+ */
+public abstract class AbsParsedDataStrategy implements ParsedDataStrategy{
+
+    /**
+     * A list of sorted temps
+     */
+    protected ArrayList<Double> temps;
+
+    /**
+     * A list of sorted humidities
+     */
+    protected ArrayList<Double> hums;
+
+    /**
+     * The number of errors (-999) encountered in the data
+     */
+    protected int numErrs;
+
+    /**
+     * The estimated bytes taken by each value held in memory: a Double, its place in a day's list and a sorted list,
+     * and its entry (value, second and sorted copy) in the day's hourly index
+     */
+    public static final long VALUE_BYTES = 46;
+
+    /**
+     * The estimated bytes taken by each day held in memory, besides its values: the DateReading, its lists and its index entry
+     */
+    public static final long DAY_BYTES = 160;
+
+    /**
+     * The estimated bytes taken by each spilled day: its index entry, mapping and buffers
+     */
+    public static final long SPILLED_DAY_BYTES = 320;
+
+    /**
+     * The number of runs a day gathers before it is handed to the compaction executor
+     */
+    public static final int COMPACT_RUNS = 4;
+
+    /**
+     * Compacts days' runs in the background, or null to compact them on the ingest path
+     */
+    private Executor compactor;
+
+    /**
+     * The number of days held in memory
+     */
+    private int residentDays;
+
+    /**
+     * The most bytes the strategy should take, or Long.MAX_VALUE for no budget
+     */
+    private long budget;
+
+    /**
+     * The spilled days, or null if there is no budget
+     */
+    private SpillStore spills;
+
+    /**
+     * A view of temps and every spilled day's temperatures, or null until a query needs it
+     */
+    private SortedRuns tempRuns;
+
+    /**
+     * A view of hums and every spilled day's humidities, or null until a query needs it
+     */
+    private SortedRuns humRuns;
+
+    /**
+     * Constructs a new strategy with no readings
+     */
+    public AbsParsedDataStrategy(){
+        temps = new ArrayList<Double>();
+        hums = new ArrayList<Double>();
+        numErrs = 0;
+        residentDays = 0;
+        budget = Long.MAX_VALUE;
+        spills = null;
+    }
+
+    /**
+     * Sets the most memory the strategy should take, spilling its oldest days at once if it is already over budget
+     * @param bytes the budget in bytes, as estimated by footprint()
+     * @param spillDir the directory to write spilled days to, created if needed
+     * @throws IllegalArgumentException if bytes is negative
+     * @throws java.io.UncheckedIOException if spillDir cannot be created or a day cannot be spilled
+     */
+    public void setMemoryBudget(long bytes, Path spillDir){
+        if (bytes < 0)
+            throw new IllegalArgumentException("budget must not be negative");
+        if (spills == null)
+            spills = new SpillStore(spillDir);
+        budget = bytes;
+        enforceBudget();
+    }
+
+    /**
+     * Sets where days' runs are compacted
+     * @param executor runs compactions in the background, or null to compact on the ingest path once a day has MAX_RUNS runs
+     */
+    public void setCompactionExecutor(Executor executor){
+        compactor = executor;
+    }
+
+    /**
+     * Estimates the memory taken by the strategy's readings, date index and sorted lists
+     * @return the estimated bytes
+     */
+    public long footprint(){
+        long bytes = (temps.size() + (long) hums.size()) * VALUE_BYTES + residentDays * DAY_BYTES;
+        if (spills != null)
+            bytes += spills.size() * SPILLED_DAY_BYTES;
+        return bytes;
+    }
+
+    /**
+     * @return the number of days spilled to disk
+     */
+    public int spilledDays(){
+        return spills == null ? 0 : spills.size();
+    }
+
+    /**
+     * Processes data in one pass: each value is bucketed into a new DateReading for its date, or counted if it is an error.
+     * The new readings of each date are then sorted, appended to the batch's values and merged into the index
+     * (before the merge, which may fold them into an existing reading), and the batch's values, already runs of sorted days,
+     * are sorted and merged into temps and hums. The two passes are recorded as parseData and mergeData ingest events.
+     *
+     * @param data raw data
+     */
+    @Override
+    public void processData(List<Double> data) {
+        IngestEvent parse = new IngestEvent();
+        parse.begin();
+        ArrayList<DateReading> batch = new ArrayList<DateReading>();
+        int frames = DateReading.parse(data, batch, true);
+        for (DateReading dr : batch)
+            numErrs += dr.getErrors();
+        parse.record("parseData", this, data.size(), frames, batch.size());
+
+        IngestEvent merge = new IngestEvent();
+        merge.begin();
+        ArrayList<Double> newTemps = new ArrayList<Double>();
+        ArrayList<Double> newHums = new ArrayList<Double>();
+        for (DateReading dr : batch){
+            dr.getTemps().sort(Double::compare);
+            dr.getHums().sort(Double::compare);
+            newTemps.addAll(dr.getTemps());
+            newHums.addAll(dr.getHums());
+            DateReading existing = getDateReadings(dr.getDate());
+            if (existing == null && spills != null && spills.contains(dr.getDate())){
+                existing = spills.load(dr.getDate());
+                newTemps.addAll(existing.getTemps());
+                newHums.addAll(existing.getHums());
+                addDateReading(existing);
+                residentDays++;
+            }
+            if (existing == null){
+                addDateReading(dr);
+                residentDays++;
+            } else {
+                existing.merge(dr);
+                if (compactor != null && existing.getPendingRuns() >= COMPACT_RUNS && existing.scheduleCompaction())
+                    compactor.execute(existing::compact);
+            }
+        }
+        newTemps.sort(Double::compare);
+        newHums.sort(Double::compare);
+        temps = Utility.mergeSorted(temps, newTemps);
+        hums = Utility.mergeSorted(hums, newHums);
+        tempRuns = null;
+        humRuns = null;
+        enforceBudget();
+        merge.record("mergeData", this, data.size(), frames, batch.size());
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading() {
+        return new SuperTempHumidReading(middleTemperature(), middleHumidity());
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @param onDate the date which to consider medianReadings for (inclusive) with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading(double onDate) {
+        return new SuperTempHumidReading(middleTemperature(onDate), middleHumidity(onDate));
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time ignoring
+     * error values (-999s). Days the range covers whole are taken as they are; on the days it covers in part, the hours
+     * it covers whole come from the day's hourly index and the (at most two) hours it covers in part are scanned.
+     * Spilled days the range covers in part are scanned on disk. The sorted pieces are selected across without merging them.
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none
+     */
+    @Override
+    public TempHumidReading middleReading(double from, double to) {
+        double start = Utility.rangeStart(from);
+        double end = Utility.rangeEnd(to);
+        SortedRuns tempRange = new SortedRuns();
+        SortedRuns humRange = new SortedRuns();
+        for (double date : residentDates()){
+            if (date < Utility.toDate(start) || date > Utility.toDate(end))
+                continue;
+            DateReading d = getDateReadings(date);
+            int fromSecond = Utility.firstSecondOn(start, date);
+            int toSecond = Utility.lastSecondOn(end, date);
+            if (fromSecond == 0 && toSecond == HourBuckets.DAY - 1){
+                d.addTempsTo(tempRange);
+                d.addHumsTo(humRange);
+            } else
+                d.getHourly().addTo(tempRange, humRange, fromSecond, toSecond);
+        }
+        if (spills != null){
+            for (double date : spills.sortedDates()){
+                if (date < Utility.toDate(start) || date > Utility.toDate(end))
+                    continue;
+                int fromSecond = Utility.firstSecondOn(start, date);
+                int toSecond = Utility.lastSecondOn(end, date);
+                if (fromSecond == 0 && toSecond == HourBuckets.DAY - 1){
+                    tempRange.add(spills.temps(date));
+                    humRange.add(spills.hums(date));
+                } else
+                    spills.addTo(date, tempRange, humRange, fromSecond, toSecond);
+            }
+        }
+        return new SuperTempHumidReading(tempRange.quantile(0.5), humRange.quantile(0.5));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature() {
+        return spilledDays() == 0 ? Utility.quantile(temps, 0.5) : tempRuns().quantile(0.5);
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity() {
+        return spilledDays() == 0 ? Utility.quantile(hums, 0.5) : humRuns().quantile(0.5);
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature(double onDate) {
+        DateReading d = getDateReadings(onDate);
+        return d == null ? spilledQuantile(spilledTemps(onDate), 0.5) : d.tempQuantile(0.5);
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity(double onDate) {
+        DateReading d = getDateReadings(onDate);
+        return d == null ? spilledQuantile(spilledHums(onDate), 0.5) : d.humQuantile(0.5);
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q) {
+        if (spilledDays() == 0)
+            return new SuperTempHumidReading(Utility.quantile(temps, q), Utility.quantile(hums, q));
+        return new SuperTempHumidReading(tempRuns().quantile(q), humRuns().quantile(q));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q, double onDate) {
+        DateReading d = getDateReadings(onDate);
+        if (d == null)
+            return new SuperTempHumidReading(spilledQuantile(spilledTemps(onDate), q), spilledQuantile(spilledHums(onDate), q));
+        return new SuperTempHumidReading(d.tempQuantile(q), d.humQuantile(q));
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public TempHumidReading[] quantiles(double[] qs) {
+        TempHumidReading[] readings = new TempHumidReading[qs.length];
+        for (int i = 0; i < qs.length; i++)
+            readings[i] = quantile(qs[i]);
+        return readings;
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order, whether the day is in memory or spilled
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public void forEachDay(DailySummaryVisitor visitor) {
+        double[] resident = residentDates();
+        double[] spilled = spills == null ? new double[0] : spills.sortedDates();
+        int i = 0;
+        int j = 0;
+        while (i < resident.length || j < spilled.length){
+            if (j == spilled.length || (i < resident.length && resident[i] < spilled[j])){
+                DateReading d = getDateReadings(resident[i++]);
+                visitor.visitDay(d.getDate(), d.tempQuantile(0.5), d.humQuantile(0.5),
+                        d.tempCount(), d.humCount(), d.getErrors());
+            } else {
+                double date = spilled[j++];
+                DoubleBuffer t = spills.temps(date);
+                DoubleBuffer h = spills.hums(date);
+                visitor.visitDay(date, spilledQuantile(t, 0.5), spilledQuantile(h, 0.5), t.limit(), h.limit(),
+                        spills.errors(date));
+            }
+        }
+    }
+
+    /**
+     * adds every stored reading and the number of errors to a mergeable summary
+     *
+     * @param summary the summary to add to
+     */
+    @Override
+    public void summarizeInto(ReadingSummary summary) {
+        for (int i = 0; i < temps.size(); i++)
+            summary.addTemp(temps.get(i));
+        for (int i = 0; i < hums.size(); i++)
+            summary.addHum(hums.get(i));
+        if (spills != null){
+            for (double date : spills.sortedDates()){
+                DoubleBuffer t = spills.temps(date);
+                for (int i = 0; i < t.limit(); i++)
+                    summary.addTemp(t.get(i));
+                DoubleBuffer h = spills.hums(date);
+                for (int i = 0; i < h.limit(); i++)
+                    summary.addHum(h.get(i));
+            }
+        }
+        summary.addErrors(numErrs);
+    }
+
+    /**
+     * computes the current percentage of non-datetime sensor values that are -999.0s
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError(){
+        long spilled = spills == null ? 0 : spills.values();
+        return (numErrs / (double)(temps.size() + hums.size() + spilled + numErrs)) * 100.0;
+    }
+
+    /**
+     * Gets the reading that correspond to a particular date
+     * @param onDate a date formatted as a double
+     * @return the reading, or null if there is none
+     */
+    protected abstract DateReading getDateReadings(double onDate);
+
+    /**
+     * Adds the (sorted) reading of a date which is not yet in the index
+     * @param dr the reading
+     */
+    protected abstract void addDateReading(DateReading dr);
+
+    /**
+     * Removes the reading of a date from the index
+     * @param date a date formatted as a double, which is in the index
+     * @return the removed reading
+     */
+    protected abstract DateReading removeDateReading(double date);
+
+    /**
+     * @return the date of every reading in the index, in ascending order
+     */
+    protected abstract double[] residentDates();
+
+    /**
+     * produces the middle temperature on a date which is not in the index, from its spilled segment
+     * @param onDate a date formatted as a double
+     * @return the value at index (size() / 2) of the date's sorted temperatures, or -999 if the date is not spilled or has none
+     */
+    protected double spilledMiddleTemperature(double onDate){
+        return spilledQuantile(spilledTemps(onDate), 0.5);
+    }
+
+    /**
+     * produces the middle humidity on a date which is not in the index, from its spilled segment
+     * @param onDate a date formatted as a double
+     * @return the value at index (size() / 2) of the date's sorted humidities, or -999 if the date is not spilled or has none
+     */
+    protected double spilledMiddleHumidity(double onDate){
+        return spilledQuantile(spilledHums(onDate), 0.5);
+    }
+
+    //helpers
+    /**
+     * Spills the oldest days in the index until the footprint is within budget, then removes their values from the sorted lists
+     */
+    private void enforceBudget(){
+        long over = footprint() - budget;
+        if (over <= 0)
+            return;
+        ArrayList<Double> goneTemps = new ArrayList<Double>();
+        ArrayList<Double> goneHums = new ArrayList<Double>();
+        for (double date : residentDates()){
+            if (over <= 0)
+                break;
+            DateReading dr = removeDateReading(date);
+            spills.spill(dr);
+            residentDays--;
+            goneTemps.addAll(dr.getTemps());
+            goneHums.addAll(dr.getHums());
+            over -= (dr.getTemps().size() + dr.getHums().size()) * VALUE_BYTES + DAY_BYTES - SPILLED_DAY_BYTES;
+        }
+        goneTemps.sort(Double::compare);
+        goneHums.sort(Double::compare);
+        temps = Utility.removeSorted(temps, goneTemps);
+        hums = Utility.removeSorted(hums, goneHums);
+        tempRuns = null;
+        humRuns = null;
+    }
+
+    /**
+     * @return a view of temps and every spilled day's temperatures, built when first needed after a change
+     */
+    private SortedRuns tempRuns(){
+        if (tempRuns == null){
+            tempRuns = new SortedRuns();
+            tempRuns.add(temps);
+            spills.addTempsTo(tempRuns);
+        }
+        return tempRuns;
+    }
+
+    /**
+     * @return a view of hums and every spilled day's humidities, built when first needed after a change
+     */
+    private SortedRuns humRuns(){
+        if (humRuns == null){
+            humRuns = new SortedRuns();
+            humRuns.add(hums);
+            spills.addHumsTo(humRuns);
+        }
+        return humRuns;
+    }
+
+    /**
+     * @param onDate a date formatted as a double
+     * @return the date's spilled temperatures, or null if it is not spilled
+     */
+    private DoubleBuffer spilledTemps(double onDate){
+        return spills == null ? null : spills.temps(onDate);
+    }
+
+    /**
+     * @param onDate a date formatted as a double
+     * @return the date's spilled humidities, or null if it is not spilled
+     */
+    private DoubleBuffer spilledHums(double onDate){
+        return spills == null ? null : spills.hums(onDate);
+    }
+
+    /**
+     * @param sorted spilled values, or null
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at quantile q of the values, or -999 if there are none
+     */
+    private static double spilledQuantile(DoubleBuffer sorted, double q){
+        if (sorted == null || sorted.limit() == 0)
+            return -999.0;
+        return sorted.get(Utility.quantileIndex(q, sorted.limit()));
+    }
+}
@@ -0,0 +1,116 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Evaluates alert rules once per batch of incoming data.
+ * Rules read from aggregates that are shared between them (one time window per length, one error window per N),
+ * so the cost per reading depends on the number of distinct aggregates rather than the number of rules.
+ */
+public class AlertEngine {
+
+    /**
+     * The time windows median rules read from
+     */
+    private WindowedReadings windows;
+
+    /**
+     * The error windows error rate rules read from, keyed by N
+     */
+    private HashMap<Integer, ErrorRateWindow> errorWindows;
+
+    /**
+     * The registered rules
+     */
+    private ArrayList<AbsAlertRule> rules;
+
+    /**
+     * The registered listeners
+     */
+    private ArrayList<AlertListener> listeners;
+
+    /**
+     * Constructs an alert engine with no rules
+     * @param windows the time windows median rules read from, which are fed by the greenhouse
+     */
+    public AlertEngine(WindowedReadings windows){
+        this.windows = windows;
+        errorWindows = new HashMap<Integer, ErrorRateWindow>();
+        rules = new ArrayList<AbsAlertRule>();
+        listeners = new ArrayList<AlertListener>();
+    }
+
+    /**
+     * Adds a rule
+     * @param rule the rule
+     */
+    public void addRule(AbsAlertRule rule){
+        rule.register(this);
+        rules.add(rule);
+    }
+
+    /**
+     * Adds a listener
+     * @param listener the listener
+     */
+    public void addListener(AlertListener listener){
+        listeners.add(listener);
+    }
+
+    /**
+     * Switches to another set of time windows, e.g. after the retention period changed
+     * @param windows the time windows median rules read from
+     */
+    public void setWindows(WindowedReadings windows){
+        this.windows = windows;
+        for (AbsAlertRule rule : rules)
+            rule.register(this);
+    }
+
+    /**
+     * Updates the error windows with a batch of filtered data, then evaluates every rule once.
+     * The time windows must already have been fed the batch.
+     * @param data an ordered sequence of [datetime, temperature, humidity, ..., datetime, temperature, humidity, ...]
+     *             as produced by AbsGreenHouse.filterData
+     */
+    public void ingest(List<Double> data){
+        if (rules.isEmpty() || data.isEmpty())
+            return;
+
+        double datetime = 0;
+        for (int i = 0; i < data.size(); i++){
+            double value = data.get(i);
+            if (Utility.isDateTime(value)){
+                datetime = value;
+                continue;
+            }
+            boolean error = Utility.compareDoubles(value, -999.0);
+            for (ErrorRateWindow w : errorWindows.values())
+                w.add(error);
+        }
+
+        for (AbsAlertRule rule : rules)
+            rule.evaluate(this, datetime, listeners);
+    }
+
+    /**
+     * @return the time windows median rules read from
+     */
+    public WindowedReadings getWindows(){
+        return windows;
+    }
+
+    /**
+     * Gets the shared error window over the last N values, creating it if needed
+     * @param lastN how many of the most recent values to consider
+     * @return the error window
+     */
+    public ErrorRateWindow getErrorWindow(int lastN){
+        ErrorRateWindow w = errorWindows.get(lastN);
+        if (w == null){
+            w = new ErrorRateWindow(lastN);
+            errorWindows.put(lastN, w);
+        }
+        return w;
+    }
+}
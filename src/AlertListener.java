@@ -0,0 +1,21 @@
+/**
+ * Gets told when alert rules start and stop being triggered
+ */
+public interface AlertListener {
+
+    /**
+     * Called when a rule becomes triggered
+     * @param rule the rule
+     * @param datetime the newest datetime in the batch that triggered it, in YYYYMMDDhhmmss.0 format
+     * @param value the measured value
+     */
+    public void alertRaised(AbsAlertRule rule, double datetime, double value);
+
+    /**
+     * Called when a triggered rule stops being triggered
+     * @param rule the rule
+     * @param datetime the newest datetime in the batch that cleared it, in YYYYMMDDhhmmss.0 format
+     * @param value the measured value
+     */
+    public void alertCleared(AbsAlertRule rule, double datetime, double value);
+}
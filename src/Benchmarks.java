@@ -0,0 +1,957 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Throughput and latency benchmarks, run with java Benchmarks [name...]
+ * (no names runs every benchmark)
+ */
+public class Benchmarks {
+
+    /**
+     * Keeps query results reachable so that the JIT cannot drop their allocation
+     */
+    private static volatile TempHumidReading lastReading;
+
+    /**
+     * Keeps primitive query results live for the same reason
+     */
+    private static volatile double lastValue;
+
+    /**
+     * Runs the benchmarks named in args, or every benchmark if there are none
+     * @param args benchmark names
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        List<String> names = List.of(args);
+        if (names.isEmpty() || names.contains("microBatching"))
+            microBatching();
+        if (names.isEmpty() || names.contains("encodedMemory"))
+            encodedMemory();
+        if (names.isEmpty() || names.contains("dailyExport"))
+            dailyExport();
+        if (names.isEmpty() || names.contains("queryAllocation"))
+            queryAllocation();
+        if (names.isEmpty() || names.contains("fusedIngest"))
+            fusedIngest();
+        if (names.isEmpty() || names.contains("memoryBudget"))
+            memoryBudget();
+        if (names.isEmpty() || names.contains("segmentedIngest"))
+            segmentedIngest();
+        if (names.isEmpty() || names.contains("deduplication"))
+            deduplication();
+        if (names.isEmpty() || names.contains("channelColumns"))
+            channelColumns();
+        if (names.isEmpty() || names.contains("scanKernels"))
+            scanKernels();
+        if (names.isEmpty() || names.contains("flightRecorder"))
+            flightRecorder();
+        if (names.isEmpty() || names.contains("ringHandoff"))
+            ringHandoff();
+        if (names.isEmpty() || names.contains("intradayRanges"))
+            intradayRanges();
+        if (names.isEmpty() || names.contains("asyncQueries"))
+            asyncQueries();
+        if (names.isEmpty() || names.contains("dayRuns"))
+            dayRuns();
+    }
+
+    /**
+     * Compares polling throughput and the latency added by micro batching for several batch sizes,
+     * polling frames of one datetime with four pairs into a GreenHouseProduce
+     */
+    public static void microBatching(){
+        int frames = 5_000;
+        List<List<Double>> workload = smallFrames(frames, 4, 30);
+        System.out.println("microBatching: " + frames + " frames of 4 pairs");
+
+        int[] batchSizes = {0, 64, 512, 4096};
+        for (int maxValues : batchSizes){
+            GreenHouseProduce g = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+            if (maxValues > 0)
+                g.enableMicroBatching(maxValues, Duration.ofMillis(5));
+
+            long start = System.nanoTime();
+            for (List<Double> frame : workload)
+                g.pollSensorData(frame);
+            g.middleReading();
+            long elapsed = System.nanoTime() - start;
+
+            String latency = "none";
+            if (maxValues > 0){
+                latency = String.format("%.3fms", g.getMicroBatcher().getMaxObservedLatencyNanos() / 1e6);
+                g.disableMicroBatching();
+            }
+            System.out.printf("  maxValues=%-5d %10.0f frames/s  max added latency %s%n",
+                    maxValues, frames / (elapsed / 1e9), latency);
+        }
+    }
+
+    /**
+     * Compares the heap taken by ArrayListStrategy and EncodedStrategy holding the same readings
+     * (100 days of 1000 frames of 5 pairs)
+     */
+    public static void encodedMemory(){
+        List<List<Double>> workload = new ArrayList<List<Double>>();
+        Random random = new Random(32);
+        for (int day = 0; day < 100; day++){
+            ArrayList<Double> data = new ArrayList<Double>();
+            long start = Utility.toEpochSecond(20230101000000.0) + day * 24 * 60 * 60;
+            for (int f = 0; f < 1000; f++){
+                data.add(Utility.fromEpochSecond(start + f * 60));
+                for (int p = 0; p < 5; p++){
+                    data.add(50 + random.nextInt(400) / 10.0);
+                    data.add(random.nextInt(1001) / 10.0);
+                }
+            }
+            workload.add(data);
+        }
+        System.out.println("encodedMemory: 100 days x 1000 frames x 5 pairs");
+
+        long plainBytes = retainedBytes(() -> {
+            ArrayListStrategy s = new ArrayListStrategy();
+            for (List<Double> data : workload)
+                s.processData(data);
+            return s;
+        });
+        long encodedBytes = retainedBytes(() -> {
+            EncodedStrategy s = new EncodedStrategy();
+            for (List<Double> data : workload)
+                s.processData(data);
+            return s;
+        });
+        System.out.printf("  ArrayListStrategy %,d bytes%n  EncodedStrategy   %,d bytes (%.1fx smaller)%n",
+                plainBytes, encodedBytes, plainBytes / (double) encodedBytes);
+    }
+
+    /**
+     * Compares exporting per-day summaries by formatting middleReading(onDate) with exporting through DailySummaryExporter,
+     * for 10 years of days with 1000 sensor pairs each (held in an EncodedStrategy)
+     * @throws IOException if a temporary file cannot be written
+     */
+    public static void dailyExport() throws IOException {
+        int days = 3650;
+        int sensors = 1000;
+        EncodedStrategy s = new EncodedStrategy();
+        Random random = new Random(36);
+        double[] dates = new double[days];
+        long start = Utility.toEpochSecond(20140101120000.0);
+        ArrayList<Double> data = new ArrayList<Double>();
+        for (int day = 0; day < days; day++){
+            double dateTime = Utility.fromEpochSecond(start + day * 24L * 60 * 60);
+            dates[day] = Utility.toDate(dateTime);
+            data.add(dateTime);
+            for (int p = 0; p < sensors; p++){
+                data.add(random.nextInt(50) == 0 ? -999.0 : 50 + random.nextInt(400) / 10.0);
+                data.add(random.nextInt(1001) / 10.0);
+            }
+            if (day % 365 == 364){
+                s.processData(data);
+                data.clear();
+            }
+        }
+        System.out.println("dailyExport: " + days + " days x " + sensors + " sensors");
+
+        Path file = Files.createTempFile("daily", ".txt");
+        try {
+            long begin = System.nanoTime();
+            try (BufferedWriter out = Files.newBufferedWriter(file)){
+                for (double date : dates){
+                    out.write(s.middleReading(date).toString());
+                    out.newLine();
+                }
+            }
+            reportExport("middleReading + toString", days, Files.size(file), System.nanoTime() - begin);
+
+            begin = System.nanoTime();
+            try (DailySummaryExporter e = DailySummaryExporter.csv(file)){
+                s.forEachDay(e);
+            }
+            reportExport("csv", days, Files.size(file), System.nanoTime() - begin);
+
+            begin = System.nanoTime();
+            try (DailySummaryExporter e = DailySummaryExporter.columnar(file)){
+                s.forEachDay(e);
+            }
+            reportExport("columnar", days, Files.size(file), System.nanoTime() - begin);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Compares the bytes allocated per query by middleReading(onDate) with middleTemperature(onDate) and middleHumidity(onDate),
+     * measured with the JVM's per-thread allocation counter, for each strategy holding 30 days of readings
+     */
+    public static void queryAllocation(){
+        int queries = 1_000_000;
+        List<List<Double>> workload = smallFrames(30 * 24, 4, 38);
+        System.out.println("queryAllocation: " + queries + " queries over 30 days");
+        ParsedDataStrategy[] strategies = {new ArrayListStrategy(), new HashMapStrategy(), new EncodedStrategy(), new HistogramStrategy()};
+        for (ParsedDataStrategy s : strategies){
+            for (List<Double> frame : workload)
+                s.processData(shiftHours(frame));
+            double sink = 0;
+            for (int i = 0; i < queries; i++){
+                sink += s.middleTemperature(20231106 + i % 30);
+                lastReading = s.middleReading(20231106 + i % 30);
+            }
+
+            long before = allocatedBytes();
+            for (int i = 0; i < queries; i++)
+                lastReading = s.middleReading(20231106 + i % 30);
+            long objects = allocatedBytes() - before;
+
+            before = allocatedBytes();
+            for (int i = 0; i < queries; i++)
+                sink += s.middleTemperature(20231106 + i % 30) + s.middleHumidity(20231106 + i % 30);
+            long primitives = allocatedBytes() - before;
+
+            lastValue = sink;
+            System.out.printf("  %-20s middleReading %6.1f bytes/query  primitive getters %6.1f bytes/query%n",
+                    s.getClass().getSimpleName(), objects / (double) queries, primitives / (double) queries);
+        }
+    }
+
+    /**
+     * Compares the ingest throughput of the fused single pass (AbsParsedDataStrategy) with a copy of the
+     * parse, clean, index and flatten pipeline it replaced, over 10 days of a 50 sensor SensorWorkload polled a day at a time
+     * with 5% errors, so that the work per batch rather than the merge into the sorted lists dominates
+     */
+    public static void fusedIngest(){
+        SensorWorkload workload = new SensorWorkload(40, 50, 20231106, 10);
+        workload.setFramesPerPoll(1440);
+        workload.setErrorRate(0.05);
+        List<List<Double>> polls = workload.polls();
+        long values = 0;
+        for (List<Double> poll : polls)
+            values += poll.size();
+        System.out.println("fusedIngest: " + polls.size() + " polls, " + values + " values");
+
+        for (int round = 0; round < 3; round++){
+            System.gc();
+            long start = System.nanoTime();
+            LegacyPipeline legacy = new LegacyPipeline();
+            for (List<Double> poll : polls)
+                legacy.processData(poll);
+            long legacyTime = System.nanoTime() - start;
+
+            System.gc();
+            start = System.nanoTime();
+            ArrayListStrategy arrays = new ArrayListStrategy();
+            for (List<Double> poll : polls)
+                arrays.processData(poll);
+            long arraysTime = System.nanoTime() - start;
+
+            System.gc();
+            start = System.nanoTime();
+            HashMapStrategy maps = new HashMapStrategy();
+            for (List<Double> poll : polls)
+                maps.processData(poll);
+            long mapsTime = System.nanoTime() - start;
+
+            if (legacy.middleTemperature() != arrays.middleTemperature() || legacy.middleTemperature() != maps.middleTemperature())
+                throw new IllegalStateException("fused and legacy pipelines disagree");
+            System.out.printf("  round %d: legacy %,12.0f values/s  fused ArrayList %,12.0f values/s  fused HashMap %,12.0f values/s%n",
+                    round, values / (legacyTime / 1e9), values / (arraysTime / 1e9), values / (mapsTime / 1e9));
+        }
+    }
+
+    /**
+     * Soaks ArrayListStrategy with 30 days of a 20 sensor SensorWorkload with and without a 16 MB memory budget,
+     * comparing the heap each keeps and the cost of queries over spilled days
+     * @throws IOException if the spill directory cannot be created or removed
+     */
+    public static void memoryBudget() throws IOException {
+        List<List<Double>> polls = new SensorWorkload(41, 20, 20231106, 30).polls();
+        long budget = 16L << 20;
+        Path dir = Files.createTempDirectory("spill");
+        System.out.println("memoryBudget: " + polls.size() + " polls, budget " + budget + " bytes");
+
+        long unbudgetedBytes = retainedBytes(() -> {
+            ArrayListStrategy s = new ArrayListStrategy();
+            for (List<Double> poll : polls)
+                s.processData(poll);
+            System.out.printf("  unbudgeted: footprint %,d bytes%n", s.footprint());
+            return s;
+        });
+        ArrayListStrategy[] kept = new ArrayListStrategy[1];
+        long budgetedBytes = retainedBytes(() -> {
+            ArrayListStrategy s = new ArrayListStrategy();
+            s.setMemoryBudget(budget, dir);
+            long most = 0;
+            for (List<Double> poll : polls){
+                s.processData(poll);
+                most = Math.max(most, s.footprint());
+            }
+            System.out.printf("  budgeted:   footprint %,d bytes (at most %,d), %d days spilled%n", s.footprint(), most, s.spilledDays());
+            kept[0] = s;
+            return s;
+        });
+        System.out.printf("  retained heap: unbudgeted %,d bytes, budgeted %,d bytes%n", unbudgetedBytes, budgetedBytes);
+
+        ArrayListStrategy s = kept[0];
+        for (int round = 0; round < 3; round++){
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++)
+                lastValue = s.middleTemperature(20231106 + i % 10);
+            long spilledNanos = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++)
+                lastValue = s.middleTemperature();
+            long allNanos = System.nanoTime() - start;
+            System.out.printf("  round %d: spilled day median %,d ns  median over all days %,d ns%n",
+                    round, spilledNanos / 1000, allNanos / 1000);
+        }
+        try (java.util.stream.Stream<Path> files = Files.walk(dir)){
+            files.sorted(java.util.Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+        }
+    }
+
+    /**
+     * Compares ingesting 60 days of a 20 sensor SensorWorkload into ArrayListStrategy, which merges every batch into its
+     * sorted history, and SegmentedStrategy, which only touches the current partition, then times their medians
+     */
+    public static void segmentedIngest(){
+        List<List<Double>> polls = new SensorWorkload(42, 20, 20231106, 60).polls();
+        long values = 0;
+        for (List<Double> poll : polls)
+            values += poll.size();
+        System.out.println("segmentedIngest: " + polls.size() + " polls, " + values + " values");
+
+        for (int round = 0; round < 3; round++){
+            System.gc();
+            long start = System.nanoTime();
+            ArrayListStrategy arrays = new ArrayListStrategy();
+            for (List<Double> poll : polls)
+                arrays.processData(poll);
+            long arraysTime = System.nanoTime() - start;
+
+            System.gc();
+            start = System.nanoTime();
+            SegmentedStrategy segments = new SegmentedStrategy();
+            for (List<Double> poll : polls)
+                segments.processData(poll);
+            long segmentsTime = System.nanoTime() - start;
+
+            if (arrays.middleTemperature() != segments.middleTemperature())
+                throw new IllegalStateException("strategies disagree");
+            start = System.nanoTime();
+            for (int i = 0; i < 1000; i++)
+                lastValue = segments.middleTemperature();
+            long medianNanos = (System.nanoTime() - start) / 1000;
+            start = System.nanoTime();
+            for (int i = 0; i < 100; i++)
+                lastReading = segments.middleReading(20231201, 20231230);
+            long rangeNanos = (System.nanoTime() - start) / 100;
+            System.out.printf("  round %d: ArrayList %,12.0f values/s  Segmented %,12.0f values/s  median %,d ns  30 day median %,d ns%n",
+                    round, values / (arraysTime / 1e9), values / (segmentsTime / 1e9), medianNanos, rangeNanos);
+        }
+    }
+
+    /**
+     * Times fingerprinting and checking each frame of 30 days of a 20 sensor SensorWorkload against a FrameDedupIndex,
+     * with every tenth poll (an hour of frames) delivered twice
+     */
+    public static void deduplication(){
+        List<List<Double>> polls = new SensorWorkload(43, 20, 20231106, 30).polls();
+        long frames = 0;
+        for (int round = 0; round < 5; round++){
+            FrameDedupIndex index = new FrameDedupIndex(2 * 60 * 60, 8192);
+            long duplicates = 0;
+            frames = 0;
+            long start = System.nanoTime();
+            for (int p = 0; p < polls.size(); p++){
+                List<Double> poll = polls.get(p);
+                for (int copy = p % 10 == 0 ? 2 : 1; copy > 0; copy--){
+                    for (int i = 0; i < poll.size(); i += 41){
+                        frames++;
+                        if (!index.add(FrameDedupIndex.fingerprint(poll, i, i + 41), (double) poll.get(i)))
+                            duplicates++;
+                    }
+                }
+            }
+            long nanos = System.nanoTime() - start;
+
+            double sum = 0;
+            start = System.nanoTime();
+            for (int p = 0; p < polls.size(); p++){
+                List<Double> poll = polls.get(p);
+                for (int copy = p % 10 == 0 ? 2 : 1; copy > 0; copy--)
+                    for (int i = 0; i < poll.size(); i++)
+                        sum += poll.get(i);
+            }
+            long readNanos = System.nanoTime() - start;
+            lastValue = sum;
+            System.out.printf("  round %d: %,d frames, %,d duplicates, %.1f ns per frame (reading the frames alone %.1f ns)%n",
+                    round, frames, duplicates, nanos / (double) frames, readNanos / (double) frames);
+        }
+    }
+
+    /**
+     * Compares ChannelStrategy with the list strategies on 10 days of a 20 sensor temperature humidity SensorWorkload,
+     * each answering a temperature median after every batch, then times five channel frames (adding CO2, soil moisture
+     * and light) answering the same temperature medians
+     */
+    public static void channelColumns(){
+        List<List<Double>> polls = new SensorWorkload(44, 20, 20231106, 10).polls();
+        long values = 0;
+        for (List<Double> poll : polls)
+            values += poll.size();
+        System.out.println("channelColumns: " + polls.size() + " polls, " + values + " values");
+
+        List<List<Double>> wide = new ArrayList<List<Double>>();
+        long wideValues = 0;
+        for (List<Double> poll : polls){
+            ArrayList<Double> frame = new ArrayList<Double>();
+            for (int i = 0; i < poll.size(); i++){
+                frame.add(poll.get(i));
+                if (!Utility.isDateTime(poll.get(i)) && frame.size() % 2 == 1){
+                    frame.add(400.0 + i % 200);
+                    frame.add(0.3 + (i % 50) / 100.0);
+                    frame.add(1000.0 + i % 500);
+                }
+            }
+            wide.add(frame);
+            wideValues += frame.size();
+        }
+
+        for (int round = 0; round < 3; round++){
+            ParsedDataStrategy[] strategies = {new ArrayListStrategy(), new HashMapStrategy(), new ChannelStrategy()};
+            StringBuilder line = new StringBuilder("  round " + round + ":");
+            for (ParsedDataStrategy s : strategies){
+                System.gc();
+                long start = System.nanoTime();
+                for (List<Double> poll : polls){
+                    s.processData(poll);
+                    lastValue = s.middleTemperature();
+                }
+                line.append(String.format("  %s %,.0f values/s", s.getClass().getSimpleName(), values / ((System.nanoTime() - start) / 1e9)));
+            }
+            ChannelStrategy five = new ChannelStrategy(new ChannelSchema("temperature", "humidity", "co2", "soil", "light"));
+            System.gc();
+            long start = System.nanoTime();
+            for (List<Double> poll : wide){
+                five.processData(poll);
+                lastValue = five.middleTemperature();
+            }
+            line.append(String.format("  five channels %,.0f values/s", wideValues / ((System.nanoTime() - start) / 1e9)));
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Compares each branch-free ScanKernels scan with its branchy scalar twin on a batch of 4M raw values
+     * (frames of 10 pairs, errors at 5% and 50%), then a five channel ChannelStrategy ingesting the batch as a primitive
+     * array against the same batch as a list
+     */
+    public static void scanKernels(){
+        int size = 4_000_000;
+        for (int percent : new int[]{5, 50}){
+            Random random = new Random(45);
+            double[] a = new double[size];
+            for (int i = 0; i < size; i++)
+                a[i] = i % 21 == 0 ? 20231106000000.0 + i / 21 % 60 : random.nextInt(100) < percent ? -999.0 : random.nextInt(1000) / 10.0;
+            int[] starts = new int[size];
+            double[] out = new double[size];
+            System.out.println("scanKernels: " + size + " values, " + percent + "% errors");
+            for (int round = 0; round < 3; round++){
+                long[] nanos = new long[10];
+                long sink = 0;
+                long t = System.nanoTime();
+                sink += ScanKernels.countErrors(a, 0, size);
+                nanos[0] = System.nanoTime() - t; t += nanos[0];
+                sink += ScanKernels.countErrorsScalar(a, 0, size);
+                nanos[1] = System.nanoTime() - t; t += nanos[1];
+                sink += ScanKernels.removeErrors(a, 0, size, out, 0);
+                nanos[2] = System.nanoTime() - t; t += nanos[2];
+                sink += ScanKernels.removeErrorsScalar(a, 0, size, out, 0);
+                nanos[3] = System.nanoTime() - t; t += nanos[3];
+                sink += ScanKernels.dateTimes(a, 0, size, starts);
+                nanos[4] = System.nanoTime() - t; t += nanos[4];
+                sink += ScanKernels.dateTimesScalar(a, 0, size, starts);
+                nanos[5] = System.nanoTime() - t; t += nanos[5];
+                sink += ScanKernels.filterRange(a, 0, size, 20.0, 80.0, out);
+                nanos[6] = System.nanoTime() - t; t += nanos[6];
+                sink += ScanKernels.filterRangeScalar(a, 0, size, 20.0, 80.0, out);
+                nanos[7] = System.nanoTime() - t; t += nanos[7];
+                ScanKernels.minMax(a, 0, size, out);
+                nanos[8] = System.nanoTime() - t; t += nanos[8];
+                ScanKernels.minMaxScalar(a, 0, size, out);
+                nanos[9] = System.nanoTime() - t;
+                lastValue = sink + out[0];
+                String[] scans = {"countErrors", "removeErrors", "dateTimes", "filterRange", "minMax"};
+                StringBuilder line = new StringBuilder("  round " + round + ":");
+                for (int k = 0; k < scans.length; k++)
+                    line.append(String.format("  %s %.2f/%.2fms", scans[k], nanos[2 * k] / 1e6, nanos[2 * k + 1] / 1e6));
+                System.out.println(line + "  (branch-free/scalar)");
+            }
+        }
+
+        Random random = new Random(45);
+        double[] frames = new double[size];
+        for (int i = 0; i < size; i++)
+            frames[i] = i % 21 == 0 ? 20231106000000.0 + i / 21 % 60 : random.nextInt(20) == 0 ? -999.0 : random.nextInt(1000) / 10.0;
+        List<Double> boxed = new ArrayList<Double>(size);
+        for (double v : frames)
+            boxed.add(v);
+        ChannelSchema schema = new ChannelSchema("temperature", "humidity", "co2", "soil", "light");
+        for (int round = 0; round < 3; round++){
+            ChannelStrategy fromArray = new ChannelStrategy(schema);
+            ChannelStrategy fromList = new ChannelStrategy(schema);
+            System.gc();
+            long start = System.nanoTime();
+            fromArray.processData(frames, 0, size);
+            long array = System.nanoTime() - start;
+            start = System.nanoTime();
+            fromList.processData(boxed);
+            long list = System.nanoTime() - start;
+            lastValue = fromArray.percentError() + fromList.percentError();
+            System.out.printf("  round %d: five channel ingest double[] %,.0f values/s  List<Double> %,.0f values/s%n",
+                    round, size / (array / 1e9), size / (list / 1e9));
+        }
+    }
+
+    /**
+     * Measures what the ingest and query events cost: a GreenHouseProduce polls 10 days of a 10 sensor SensorWorkload,
+     * answering a temperature median after every poll, with no recording, with a recording keeping events over 20ms
+     * (an always-on setting) and with a recording keeping every event
+     */
+    public static void flightRecorder() throws IOException {
+        List<List<Double>> polls = new SensorWorkload(46, 10, 20231106, 10).polls();
+        System.out.println("flightRecorder: " + polls.size() + " polls");
+        Duration[] thresholds = {null, Duration.ofMillis(20), Duration.ZERO};
+        for (int round = 0; round < 3; round++){
+            StringBuilder line = new StringBuilder("  round " + round + ":");
+            for (Duration threshold : thresholds){
+                jdk.jfr.Recording recording = new jdk.jfr.Recording();
+                if (threshold != null){
+                    recording.enable(IngestEvent.class).withThreshold(threshold);
+                    recording.enable(QueryEvent.class).withThreshold(threshold);
+                    recording.start();
+                }
+                GreenHouseProduce g = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+                System.gc();
+                long start = System.nanoTime();
+                for (List<Double> poll : polls){
+                    g.pollSensorData(poll);
+                    lastValue = g.middleTemperature();
+                }
+                long elapsed = System.nanoTime() - start;
+                String events = "";
+                if (threshold != null){
+                    recording.stop();
+                    Path file = Files.createTempFile("greenhouse", ".jfr");
+                    recording.dump(file);
+                    events = " (" + jdk.jfr.consumer.RecordingFile.readAllEvents(file).stream()
+                            .filter(e -> e.getEventType().getName().startsWith("greenhouse.")).count() + " events)";
+                    Files.delete(file);
+                }
+                recording.close();
+                line.append(String.format("  %s %,.0f polls/s%s", threshold == null ? "off" : "threshold " + threshold.toMillis() + "ms",
+                        polls.size() / (elapsed / 1e9), events));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Compares the latency pollSensorData adds to the polling thread when processing inline and when handing polls
+     * to a processing thread through a ReadingRing (yield and park wait strategies), polling one frame at a time from
+     * 5 days of a 10 sensor SensorWorkload. Busy spinning is left out, since it needs a core per thread.
+     */
+    public static void ringHandoff(){
+        List<List<Double>> frames = new ArrayList<List<Double>>();
+        for (List<Double> poll : new SensorWorkload(47, 10, 20231106, 5).polls()){
+            for (int start = 0; start < poll.size(); ){
+                int end = start + 1;
+                while (end < poll.size() && !Utility.isDateTime(poll.get(end)))
+                    end++;
+                frames.add(poll.subList(start, end));
+                start = end;
+            }
+        }
+        System.out.println("ringHandoff: " + frames.size() + " one frame polls");
+        String[] modes = {"inline", "yield", "park"};
+        for (int round = 0; round < 3; round++){
+            StringBuilder line = new StringBuilder("  round " + round + ":");
+            for (int mode = 0; mode < modes.length; mode++){
+                GreenHouseProduce g = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+                if (mode > 0)
+                    g.enableRingHandoff(1 << 16, mode == 1 ? ReadingRing.YIELD : ReadingRing.PARK);
+                long[] latencies = new long[frames.size()];
+                System.gc();
+                long start = System.nanoTime();
+                for (int f = 0; f < frames.size(); f++){
+                    long t = System.nanoTime();
+                    g.pollSensorData(frames.get(f));
+                    latencies[f] = System.nanoTime() - t;
+                }
+                lastValue = g.middleTemperature();
+                long elapsed = System.nanoTime() - start;
+                g.disableRingHandoff();
+                java.util.Arrays.sort(latencies);
+                line.append(String.format("  %s p50 %.1fus p99 %.1fus max %.2fms total %.0fms", modes[mode],
+                        latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3,
+                        latencies[latencies.length - 1] / 1e6, elapsed / 1e6));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Compares intraday range medians answered from ArrayListStrategy's hourly index with rescanning the raw data of the
+     * range's day, for 2000 random ranges (a few minutes to a whole day) over 20 days of a 20 sensor SensorWorkload
+     */
+    public static void intradayRanges(){
+        List<List<Double>> polls = new SensorWorkload(48, 20, 20231106, 20).polls();
+        ArrayListStrategy s = new ArrayListStrategy();
+        java.util.TreeMap<Double, ArrayList<Double>> rawDays = new java.util.TreeMap<Double, ArrayList<Double>>();
+        double dateTime = 0;
+        for (List<Double> poll : polls){
+            s.processData(poll);
+            for (double value : poll){
+                if (Utility.isDateTime(value))
+                    dateTime = value;
+                rawDays.computeIfAbsent(Utility.toDate(dateTime), d -> new ArrayList<Double>()).add(value);
+            }
+        }
+        Double[] dates = rawDays.keySet().toArray(new Double[0]);
+        Random random = new Random(48);
+        double[][] ranges = new double[2000][];
+        for (int r = 0; r < ranges.length; r++){
+            double date = dates[random.nextInt(dates.length)];
+            int from = random.nextInt(24 * 60 * 60);
+            int to = Math.min(24 * 60 * 60 - 1, from + random.nextInt(12 * 60 * 60));
+            ranges[r] = new double[]{date * 1000000.0 + from / 3600 * 10000 + from / 60 % 60 * 100 + from % 60,
+                    date * 1000000.0 + to / 3600 * 10000 + to / 60 % 60 * 100 + to % 60};
+        }
+        System.out.println("intradayRanges: " + dates.length + " days, " + ranges.length + " ranges");
+        for (int round = 0; round < 3; round++){
+            long start = System.nanoTime();
+            for (double[] range : ranges)
+                lastValue = s.middleReading(range[0], range[1]).temperature;
+            long indexed = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (double[] range : ranges){
+                ArrayList<Double> temps = new ArrayList<Double>();
+                ArrayList<Double> hums = new ArrayList<Double>();
+                boolean in = false;
+                boolean isTemp = true;
+                for (double value : rawDays.get(Utility.toDate(range[0]))){
+                    if (Utility.isDateTime(value)){
+                        in = value >= range[0] && value <= range[1];
+                        isTemp = true;
+                        continue;
+                    }
+                    if (in && !Utility.compareDoubles(value, -999.0))
+                        (isTemp ? temps : hums).add(value);
+                    isTemp = !isTemp;
+                }
+                temps.sort(Double::compare);
+                hums.sort(Double::compare);
+                lastValue = Utility.quantile(temps, 0.5) + Utility.quantile(hums, 0.5);
+            }
+            long scanned = System.nanoTime() - start;
+            System.out.printf("  round %d: hourly index %.1fus/range  rescan %.1fus/range%n",
+                    round, indexed / 1e3 / ranges.length, scanned / 1e3 / ranges.length);
+        }
+    }
+
+    /**
+     * Compares bursts of 32 identical middleReading queries after each poll answered synchronously with the same bursts
+     * asked asynchronously, where they coalesce, on a GreenHouseNursery holding 100 days of a 10 sensor SensorWorkload
+     * in a SegmentedStrategy (whose global median selects across every day)
+     */
+    public static void asyncQueries() throws Exception {
+        List<List<Double>> polls = new SensorWorkload(49, 10, 20230101, 100).polls();
+        int warm = polls.size() - 60;
+        System.out.println("asyncQueries: " + polls.size() + " polls, bursts of 32 queries after each of the last 60");
+        for (int round = 0; round < 3; round++){
+            StringBuilder line = new StringBuilder("  round " + round + ":");
+            for (boolean async : new boolean[]{false, true}){
+                GreenHouseNursery g = new GreenHouseNursery(new GregorianCalendar(2022, 0, 1));
+                g.setStrategy(new SegmentedStrategy());
+                for (List<Double> poll : polls.subList(0, warm))
+                    g.pollSensorData(poll);
+                g.middleReading();
+                java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newFixedThreadPool(2);
+                g.setQueryExecutor(executor);
+                List<java.util.concurrent.CompletableFuture<TempHumidReading>> answers = new ArrayList<java.util.concurrent.CompletableFuture<TempHumidReading>>();
+                System.gc();
+                long start = System.nanoTime();
+                for (List<Double> poll : polls.subList(warm, polls.size())){
+                    synchronized (g){
+                        g.pollSensorData(poll);
+                    }
+                    answers.clear();
+                    for (int q = 0; q < 32; q++){
+                        if (async)
+                            answers.add(g.middleReadingAsync());
+                        else synchronized (g){
+                            lastValue = g.middleReading().temperature;
+                        }
+                    }
+                    for (java.util.concurrent.CompletableFuture<TempHumidReading> answer : answers)
+                        lastValue = answer.get().temperature;
+                }
+                long elapsed = System.nanoTime() - start;
+                executor.shutdown();
+                line.append(String.format("  %s %.2fms/burst", async ? "async" : "sync", elapsed / 1e6 / 60));
+                if (async)
+                    line.append(String.format(" (%d computations for %d queries)", g.getQueryCoalescer().getComputations(), 60 * 32));
+            }
+            System.out.println(line);
+        }
+    }
+
+    /**
+     * Compares merging 4000 sorted batches of 50 readings into one day eagerly (a linear merge per batch, as merge did
+     * before runs) with keeping them as runs compacted on the merging thread or on a background thread, then the cost
+     * of a median of the day; and the same for a whole ArrayListStrategy ingesting one poll at a time into one day
+     */
+    public static void dayRuns() throws Exception {
+        Random random = new Random(50);
+        List<ArrayList<Double>> batches = new ArrayList<ArrayList<Double>>();
+        for (int b = 0; b < 4000; b++){
+            ArrayList<Double> batch = new ArrayList<Double>();
+            for (int i = 0; i < 50; i++)
+                batch.add(Math.round(random.nextGaussian() * 100) / 10.0 + 70);
+            batch.sort(Double::compare);
+            batches.add(batch);
+        }
+        List<Double> polls = new ArrayList<Double>();
+        for (int i = 0; i < 20000; i++)
+            polls.addAll(List.of(20231106000000.0 + i / 60 * 100 + i % 60, 60 + random.nextInt(300) / 10.0, 40 + random.nextInt(200) / 10.0));
+        System.out.println("dayRuns: 4000 batches of 50 into one day; 20000 polls of one frame into one day of a strategy");
+        for (int round = 0; round < 3; round++){
+            StringBuilder line = new StringBuilder("  round " + round + ":");
+            for (String mode : new String[]{"eager", "runs", "background"}){
+                java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+                DateReading day = new DateReading(20231106, new ArrayList<Double>(), new ArrayList<Double>());
+                System.gc();
+                long start = System.nanoTime();
+                for (ArrayList<Double> batch : batches){
+                    day.merge(new DateReading(20231106, batch, batch));
+                    if (mode.equals("eager"))
+                        day.getTemps();
+                    else if (mode.equals("background") && day.getPendingRuns() >= AbsParsedDataStrategy.COMPACT_RUNS
+                            && day.scheduleCompaction())
+                        executor.execute(day::compact);
+                }
+                long merged = System.nanoTime() - start;
+                start = System.nanoTime();
+                for (int q = 0; q < 100; q++)
+                    lastValue = day.tempQuantile(0.5);
+                long queried = System.nanoTime() - start;
+                executor.shutdown();
+                executor.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+                line.append(String.format("  %s %.2fus/batch %.1fus/median", mode, merged / 1e3 / batches.size(), queried / 1e3 / 100));
+            }
+            System.out.println(line);
+            line = new StringBuilder("           strategy:");
+            for (String mode : new String[]{"eager", "runs", "background"}){
+                java.util.concurrent.ExecutorService executor = java.util.concurrent.Executors.newSingleThreadExecutor();
+                ArrayListStrategy strategy = new ArrayListStrategy();
+                if (mode.equals("background"))
+                    strategy.setCompactionExecutor(executor);
+                System.gc();
+                long start = System.nanoTime();
+                for (int i = 0; i < polls.size(); i += 3){
+                    strategy.processData(polls.subList(i, i + 3));
+                    if (mode.equals("eager"))
+                        strategy.getDateReadings(20231106).getTemps();
+                }
+                long elapsed = System.nanoTime() - start;
+                executor.shutdown();
+                executor.awaitTermination(1, java.util.concurrent.TimeUnit.MINUTES);
+                line.append(String.format("  %s %.2fus/poll", mode, elapsed / 1e3 / (polls.size() / 3)));
+            }
+            System.out.println(line);
+        }
+    }
+
+    //helpers
+    /**
+     * A copy of ArrayListStrategy's ingest before it was fused into one pass, kept for comparison:
+     * parse into per-date readings (sorting each), remove errors, merge into the index, then copy, sort and merge into temps and hums
+     */
+    private static class LegacyPipeline {
+
+        /**
+         * The date readings, in date order
+         */
+        private ArrayList<DateReading> dateReadings = new ArrayList<DateReading>();
+
+        /**
+         * The sorted temperatures
+         */
+        private ArrayList<Double> temps = new ArrayList<Double>();
+
+        /**
+         * The sorted humidities
+         */
+        private ArrayList<Double> hums = new ArrayList<Double>();
+
+        /**
+         * The number of errors
+         */
+        private int numErrs;
+
+        /**
+         * Processes data
+         * @param data raw data
+         */
+        void processData(List<Double> data){
+            ArrayList<DateReading> batch = new ArrayList<DateReading>();
+            for (int i = 0; i < data.size(); i++){
+                double date = Utility.toDate(data.get(i));
+                DateReading dr = null;
+                for (DateReading d : batch)
+                    if (Utility.compareDoubles(d.getDate(), date))
+                        dr = d;
+                if (dr == null){
+                    dr = new DateReading(date, new ArrayList<Double>(), new ArrayList<Double>());
+                    batch.add(dr);
+                }
+                while (i + 1 < data.size() && !Utility.isDateTime(data.get(i+1))){
+                    i++;
+                    dr.addTemp(data.get(i));
+                    i++;
+                    dr.addHum(data.get(i));
+                }
+                dr.getTemps().sort(Double::compare);
+                dr.getHums().sort(Double::compare);
+            }
+            for (DateReading dr : batch){
+                for (int x = dr.getTemps().size()-1; x >= 0; x--){
+                    if (Utility.compareDoubles(dr.getTemps().get(x), -999.0)){
+                        numErrs++;
+                        dr.addError();
+                        dr.getTemps().remove(x);
+                    }
+                }
+                for (int x = dr.getHums().size()-1; x >= 0; x--){
+                    if (Utility.compareDoubles(dr.getHums().get(x), -999.0)){
+                        numErrs++;
+                        dr.addError();
+                        dr.getHums().remove(x);
+                    }
+                }
+            }
+            for (DateReading dr : batch){
+                int i = dateReadings.size();
+                while (i > 0 && dateReadings.get(i - 1).getDate() > dr.getDate() + 0.001)
+                    i--;
+                if (i > 0 && Utility.sameDate(dateReadings.get(i - 1).getDate(), dr.getDate()))
+                    dateReadings.get(i - 1).merge(dr);
+                else
+                    dateReadings.add(i, dr);
+            }
+            ArrayList<Double> newTemps = new ArrayList<Double>();
+            ArrayList<Double> newHums = new ArrayList<Double>();
+            for (DateReading d : batch){
+                newTemps.addAll(d.getTemps());
+                newHums.addAll(d.getHums());
+            }
+            newTemps.sort(Double::compare);
+            newHums.sort(Double::compare);
+            temps = Utility.mergeSorted(temps, newTemps);
+            hums = Utility.mergeSorted(hums, newHums);
+        }
+
+        /**
+         * @return the middle temperature
+         */
+        double middleTemperature(){
+            return Utility.quantile(temps, 0.5);
+        }
+    }
+
+    /**
+     * @return the bytes allocated so far by the current thread
+     */
+    private static long allocatedBytes(){
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Moves a frame of smallFrames forward so that frame i falls in hour i (spreading 24 frames over each day)
+     * @param frame a frame one second after the previous one
+     * @return a copy of the frame at the start of its hour
+     */
+    private static List<Double> shiftHours(List<Double> frame){
+        ArrayList<Double> shifted = new ArrayList<Double>(frame);
+        long start = Utility.toEpochSecond(20231106000000.0);
+        shifted.set(0, Utility.fromEpochSecond(start + (Utility.toEpochSecond(frame.get(0)) - start) * 60 * 60));
+        return shifted;
+    }
+
+    /**
+     * Prints the throughput of one export
+     * @param name the export
+     * @param days the number of days exported
+     * @param bytes the size of the file
+     * @param nanos the time taken
+     */
+    private static void reportExport(String name, int days, long bytes, long nanos){
+        System.out.printf("  %-25s %,12.0f days/s %8.1f MB/s (%,d bytes)%n",
+                name, days / (nanos / 1e9), bytes / (nanos / 1e3), bytes);
+    }
+
+    /**
+     * Measures roughly how much heap the object built by a supplier keeps alive
+     * @param build builds the object
+     * @return the growth in used heap after garbage collection while the object is alive
+     */
+    private static long retainedBytes(Supplier<Object> build){
+        long before = usedHeap();
+        Object kept = build.get();
+        long after = usedHeap();
+        Reference.reachabilityFence(kept);
+        return after - before;
+    }
+
+    /**
+     * @return the used heap after asking for garbage collection
+     */
+    private static long usedHeap(){
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++)
+            System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    /**
+     * Generates frames one second apart starting 2023-11-06 00:00:00
+     * @param frames the number of frames
+     * @param pairs the number of temperature humidity pairs in each frame
+     * @param seed the random seed
+     * @return the frames
+     */
+    private static List<List<Double>> smallFrames(int frames, int pairs, long seed){
+        Random random = new Random(seed);
+        long start = Utility.toEpochSecond(20231106000000.0);
+        ArrayList<List<Double>> workload = new ArrayList<List<Double>>();
+        for (int i = 0; i < frames; i++){
+            ArrayList<Double> frame = new ArrayList<Double>();
+            frame.add(Utility.fromEpochSecond(start + i));
+            for (int p = 0; p < pairs; p++){
+                frame.add(50 + random.nextInt(400) / 10.0);
+                frame.add(random.nextInt(1001) / 10.0);
+            }
+            workload.add(frame);
+        }
+        return workload;
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+
+/**
+ * The layout of a reading frame: a datetime followed, for each sensor, by one value per channel in schema order.
+ * Temperature and humidity pairs are the two channel schema TEMP_HUMIDITY.
+ */
+public final class ChannelSchema {
+
+    /**
+     * The name of the temperature channel
+     */
+    public static final String TEMPERATURE = "temperature";
+
+    /**
+     * The name of the humidity channel
+     */
+    public static final String HUMIDITY = "humidity";
+
+    /**
+     * The schema of temperature humidity pairs
+     */
+    public static final ChannelSchema TEMP_HUMIDITY = new ChannelSchema(TEMPERATURE, HUMIDITY);
+
+    /**
+     * The channel names, in frame order
+     */
+    private final String[] names;
+
+    /**
+     * Constructs a schema
+     * @param names the channel names, in the order each sensor's values appear in a frame
+     * @throws IllegalArgumentException if there are no names or a name repeats
+     */
+    public ChannelSchema(String... names){
+        if (names.length == 0)
+            throw new IllegalArgumentException("a schema needs at least one channel");
+        for (int i = 0; i < names.length; i++)
+            for (int j = 0; j < i; j++)
+                if (names[i].equals(names[j]))
+                    throw new IllegalArgumentException("channel " + names[i] + " is repeated");
+        this.names = names.clone();
+    }
+
+    /**
+     * @return the number of channels
+     */
+    public int channels(){
+        return names.length;
+    }
+
+    /**
+     * @param channel a channel, from 0 to channels() - 1
+     * @return its name
+     */
+    public String name(int channel){
+        return names[channel];
+    }
+
+    /**
+     * @param name a channel name
+     * @return the channel with that name, or -1 if there is none
+     */
+    public int indexOf(String name){
+        for (int i = 0; i < names.length; i++)
+            if (names[i].equals(name))
+                return i;
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o){
+        return o instanceof ChannelSchema && Arrays.equals(names, ((ChannelSchema) o).names);
+    }
+
+    @Override
+    public int hashCode(){
+        return Arrays.hashCode(names);
+    }
+
+    @Override
+    public String toString(){
+        return String.join(",", names);
+    }
+}
@@ -0,0 +1,334 @@
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Stores reading frames of any ChannelSchema as one primitive column per channel per day, with error counts per channel.
+ * New values are appended to their columns unsorted; a column is only sorted (its new tail sorted and merged in)
+ * when a query reads that channel, so channels a query does not touch cost nothing beyond their storage.
+ * Each column's values are also bucketed by hour (see HourBuckets) for ranges of time that start or end within a day.
+ */
+public class ChannelStore {
+
+    /**
+     * The schema of the frames
+     */
+    private ChannelSchema schema;
+
+    /**
+     * The days, indexed by date
+     */
+    private DateIndex<Day> days;
+
+    /**
+     * The number of valid values in each channel
+     */
+    private long[] counts;
+
+    /**
+     * The number of errors (-999) in each channel
+     */
+    private long[] errors;
+
+    /**
+     * A view of every day's sorted column of each channel, or null until a query needs it
+     */
+    private SortedRuns[] runs;
+
+    /**
+     * Scratch space for merging a sorted tail into a column
+     */
+    private double[] scratch;
+
+    /**
+     * The raw data of the last batch added as a list, unboxed
+     */
+    private double[] buffer;
+
+    /**
+     * The index of each frame's datetime in the last batch, then the index after the batch
+     */
+    private int[] starts;
+
+    /**
+     * The columns of one day
+     */
+    private static class Day {
+
+        /**
+         * The values of each channel; the first sorted[c] values of channel c are sorted
+         */
+        double[][] columns;
+
+        /**
+         * The number of values in each column
+         */
+        int[] sizes;
+
+        /**
+         * The length of the sorted prefix of each column
+         */
+        int[] sorted;
+
+        /**
+         * The number of errors in each channel
+         */
+        int[] errors;
+
+        /**
+         * The values of each channel by hour
+         */
+        HourBuckets[] hours;
+
+        /**
+         * Constructs an empty day
+         * @param channels the number of channels
+         */
+        Day(int channels){
+            columns = new double[channels][16];
+            sizes = new int[channels];
+            sorted = new int[channels];
+            errors = new int[channels];
+            hours = new HourBuckets[channels];
+            for (int c = 0; c < channels; c++)
+                hours[c] = new HourBuckets();
+        }
+
+        /**
+         * Makes room in a column for more values
+         * @param c the channel
+         * @param more the number of values to make room for
+         */
+        void reserve(int c, int more){
+            if (sizes[c] + more > columns[c].length)
+                columns[c] = Arrays.copyOf(columns[c], Math.max(sizes[c] + more, columns[c].length * 2));
+        }
+    }
+
+    /**
+     * Constructs an empty store
+     * @param schema the schema of the frames to be added
+     */
+    public ChannelStore(ChannelSchema schema){
+        this.schema = schema;
+        days = new DateIndex<Day>();
+        counts = new long[schema.channels()];
+        errors = new long[schema.channels()];
+        runs = new SortedRuns[schema.channels()];
+        scratch = new double[0];
+        buffer = new double[0];
+        starts = new int[0];
+    }
+
+    /**
+     * @return the schema of the frames
+     */
+    public ChannelSchema getSchema(){
+        return schema;
+    }
+
+    /**
+     * Adds raw data in one pass: each frame is a datetime followed by one value per channel for each sensor.
+     * Errors (-999) are counted against their channel. The data is unboxed once and scanned as a primitive array.
+     * @param data raw data
+     */
+    public void add(List<Double> data){
+        if (buffer.length < data.size())
+            buffer = new double[Math.max(data.size(), buffer.length * 2)];
+        for (int i = 0; i < data.size(); i++)
+            buffer[i] = data.get(i);
+        add(buffer, 0, data.size());
+    }
+
+    /**
+     * Adds raw data held in a primitive array: each frame is a datetime followed by one value per channel for each sensor.
+     * Frame boundaries are found and each frame's channels are appended to their columns with branch-free scans
+     * (see ScanKernels), the errors (-999) of a channel being the values its scan skipped.
+     * Values before the first datetime belong to no frame and are ignored. Recorded as a parseData ingest event.
+     * @param data raw data
+     * @param from the index of the first value
+     * @param to the index after the last value
+     */
+    public void add(double[] data, int from, int to){
+        IngestEvent parse = new IngestEvent();
+        parse.begin();
+        if (starts.length < to - from + 1)
+            starts = new int[Math.max(to - from + 1, starts.length * 2)];
+        int frames = ScanKernels.dateTimes(data, from, to, starts);
+        starts[frames] = to;
+        int channels = schema.channels();
+        Day day = null;
+        double date = 0;
+        int touched = 0;
+        for (int f = 0; f < frames; f++){
+            double d = Utility.toDate(data[starts[f]]);
+            if (day == null || !Utility.sameDate(date, d)){
+                date = d;
+                touched++;
+                day = days.get(d);
+                if (day == null){
+                    day = new Day(channels);
+                    days.put(d, day);
+                }
+            }
+            int first = starts[f] + 1;
+            int end = starts[f + 1];
+            int second = HourlyIndex.secondOfDay(data[starts[f]]);
+            for (int c = 0; c < channels && first + c < end; c++){
+                int read = (end - first - c + channels - 1) / channels;
+                day.reserve(c, read);
+                int valid = ScanKernels.removeErrors(data, first + c, end, channels, day.columns[c], day.sizes[c]);
+                for (int i = day.sizes[c]; i < day.sizes[c] + valid; i++)
+                    day.hours[c].add(second, day.columns[c][i]);
+                day.sizes[c] += valid;
+                day.errors[c] += read - valid;
+                counts[c] += valid;
+                errors[c] += read - valid;
+            }
+        }
+        Arrays.fill(runs, null);
+        parse.record("parseData", this, to - from, frames, touched);
+    }
+
+    /**
+     * Gets the value at a quantile of a channel's values over every day, sorting only that channel's new values
+     * @param channel the channel
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at index (q * count) of the channel's sorted values (capped at the last one), or -999 if there are none
+     */
+    public double quantile(int channel, double q){
+        if (runs[channel] == null){
+            SortedRuns r = new SortedRuns();
+            for (double date : days.sortedDates()){
+                Day d = days.get(date);
+                sort(d, channel);
+                r.add(DoubleBuffer.wrap(d.columns[channel], 0, d.sizes[channel]));
+            }
+            runs[channel] = r;
+        }
+        return runs[channel].quantile(q);
+    }
+
+    /**
+     * Gets the value at a quantile of a channel's values on a date, sorting only that channel's new values on that date
+     * @param channel the channel
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate a date formatted as a double
+     * @return the value at index (q * count) of the channel's sorted values on the date (capped at the last one), or -999 if there are none
+     */
+    public double quantile(int channel, double q, double onDate){
+        Day d = days.get(onDate);
+        if (d == null || d.sizes[channel] == 0)
+            return -999.0;
+        sort(d, channel);
+        return d.columns[channel][Utility.quantileIndex(q, d.sizes[channel])];
+    }
+
+    /**
+     * Adds a channel's values in a range of time to a view of sorted runs: the sorted column of each day the range covers
+     * whole, and the hour buckets of the (at most two) days it covers in part
+     * @param channel the channel
+     * @param runs the view
+     * @param start the first datetime, inclusive, YYYYMMDDhhmmss.0
+     * @param end the last datetime, inclusive, YYYYMMDDhhmmss.0
+     */
+    public void addTo(int channel, SortedRuns runs, double start, double end){
+        for (double date : days.sortedDates()){
+            if (date < Utility.toDate(start) || date > Utility.toDate(end))
+                continue;
+            Day d = days.get(date);
+            int fromSecond = Utility.firstSecondOn(start, date);
+            int toSecond = Utility.lastSecondOn(end, date);
+            if (fromSecond == 0 && toSecond == HourBuckets.DAY - 1){
+                sort(d, channel);
+                runs.add(DoubleBuffer.wrap(d.columns[channel], 0, d.sizes[channel]));
+            } else
+                d.hours[channel].addTo(runs, fromSecond, toSecond);
+        }
+    }
+
+    /**
+     * @param channel the channel
+     * @return the number of valid values in the channel
+     */
+    public long count(int channel){
+        return counts[channel];
+    }
+
+    /**
+     * @param channel the channel
+     * @param onDate a date formatted as a double
+     * @return the number of valid values in the channel on the date
+     */
+    public int count(int channel, double onDate){
+        Day d = days.get(onDate);
+        return d == null ? 0 : d.sizes[channel];
+    }
+
+    /**
+     * @param channel the channel
+     * @return the number of errors (-999) in the channel
+     */
+    public long errors(int channel){
+        return errors[channel];
+    }
+
+    /**
+     * @param channel the channel
+     * @param onDate a date formatted as a double
+     * @return the number of errors (-999) in the channel on the date
+     */
+    public int errors(int channel, double onDate){
+        Day d = days.get(onDate);
+        return d == null ? 0 : d.errors[channel];
+    }
+
+    /**
+     * @return every date with frames, in ascending order
+     */
+    public double[] sortedDates(){
+        return days.sortedDates();
+    }
+
+    /**
+     * Gives every valid value of a channel to a consumer, in date order (not sorted within a day)
+     * @param channel the channel
+     * @param action receives each value
+     */
+    public void forEachValue(int channel, DoubleConsumer action){
+        for (double date : days.sortedDates()){
+            Day d = days.get(date);
+            for (int i = 0; i < d.sizes[channel]; i++)
+                action.accept(d.columns[channel][i]);
+        }
+    }
+
+    //helpers
+    /**
+     * Sorts the new tail of a day's column and merges it into the sorted prefix
+     * @param d the day
+     * @param c the channel
+     */
+    private void sort(Day d, int c){
+        int n = d.sizes[c];
+        int s = d.sorted[c];
+        if (s == n)
+            return;
+        double[] col = d.columns[c];
+        Arrays.sort(col, s, n);
+        if (s > 0 && col[s - 1] > col[s]){
+            if (scratch.length < s)
+                scratch = new double[Math.max(s, scratch.length * 2)];
+            System.arraycopy(col, 0, scratch, 0, s);
+            int i = 0;
+            int j = s;
+            int k = 0;
+            while (i < s && j < n)
+                col[k++] = Double.compare(scratch[i], col[j]) <= 0 ? scratch[i++] : col[j++];
+            while (i < s)
+                col[k++] = scratch[i++];
+        }
+        d.sorted[c] = n;
+    }
+}
@@ -0,0 +1,316 @@
+import java.util.List;
+
+/**
+ * A strategy which stores frames of any ChannelSchema in a ChannelStore, one primitive column per channel per day.
+ * Temperature and humidity queries read the schema's "temperature" and "humidity" channels (-999 if it has none),
+ * so with ChannelSchema.TEMP_HUMIDITY it is a drop-in strategy; other channels are queried by index.
+ */
+public class ChannelStrategy implements ParsedDataStrategy{
+
+    /**
+     * The stored frames
+     */
+    private ChannelStore store;
+
+    /**
+     * The temperature channel, or -1
+     */
+    private int temp;
+
+    /**
+     * The humidity channel, or -1
+     */
+    private int hum;
+
+    /**
+     * Constructs a new ChannelStrategy for temperature humidity pairs
+     */
+    public ChannelStrategy(){
+        this(ChannelSchema.TEMP_HUMIDITY);
+    }
+
+    /**
+     * Constructs a new ChannelStrategy
+     * @param schema the schema of the frames to be processed
+     */
+    public ChannelStrategy(ChannelSchema schema){
+        store = new ChannelStore(schema);
+        temp = schema.indexOf(ChannelSchema.TEMPERATURE);
+        hum = schema.indexOf(ChannelSchema.HUMIDITY);
+    }
+
+    /**
+     * @return the schema of the frames
+     */
+    public ChannelSchema getSchema(){
+        return store.getSchema();
+    }
+
+    /**
+     * Processes data whose frames follow the schema
+     *
+     * @param data raw data
+     */
+    @Override
+    public void processData(List<Double> data) {
+        store.add(data);
+    }
+
+    /**
+     * Processes data held in a primitive array, whose frames follow the schema, without boxing it
+     *
+     * @param data raw data
+     * @param from the index of the first value
+     * @param to the index after the last value
+     */
+    public void processData(double[] data, int from, int to) {
+        store.add(data, from, to);
+    }
+
+    /**
+     * produces the middle value of a channel ignoring error values (-999s)
+     *
+     * @param channel the channel, from 0 to getSchema().channels() - 1
+     * @return the value at index (size() / 2) of the channel's sorted values, or -999 if there are none
+     */
+    public double middleValue(int channel) {
+        return store.quantile(channel, 0.5);
+    }
+
+    /**
+     * produces the middle value of a channel on a date ignoring error values (-999s)
+     *
+     * @param channel the channel, from 0 to getSchema().channels() - 1
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the channel's sorted values on that date, or -999 if there are none
+     */
+    public double middleValue(int channel, double onDate) {
+        return store.quantile(channel, 0.5, onDate);
+    }
+
+    /**
+     * produces the middle value of a channel in a range of time ignoring error values (-999s)
+     *
+     * @param channel the channel, from 0 to getSchema().channels() - 1, or -1 for none
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return the value at index (size() / 2) of the channel's sorted values in the range, or -999 if there are none
+     */
+    public double middleValue(int channel, double from, double to) {
+        if (channel < 0)
+            return -999.0;
+        SortedRuns runs = new SortedRuns();
+        store.addTo(channel, runs, Utility.rangeStart(from), Utility.rangeEnd(to));
+        return runs.quantile(0.5);
+    }
+
+    /**
+     * produces the value at quantile q of a channel ignoring error values (-999s)
+     *
+     * @param channel the channel, from 0 to getSchema().channels() - 1
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at index (q * size()) of the channel's sorted values (capped at the last one), or -999 if there are none
+     */
+    public double channelQuantile(int channel, double q) {
+        return store.quantile(channel, q);
+    }
+
+    /**
+     * computes the percentage of a channel's values that are -999.0s
+     *
+     * @param channel the channel, from 0 to getSchema().channels() - 1
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    public double percentError(int channel) {
+        return (store.errors(channel) / (double)(store.count(channel) + store.errors(channel))) * 100.0;
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading() {
+        return quantile(0.5);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @param onDate the date which to consider medianReadings for (inclusive) with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading(double onDate) {
+        return quantile(0.5, onDate);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time ignoring
+     * error values (-999s), selecting across the sorted columns of the days the range covers whole and the hour buckets
+     * of the days it covers in part, without merging them
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none (or the schema has no such channel)
+     */
+    @Override
+    public TempHumidReading middleReading(double from, double to) {
+        return new SuperTempHumidReading(middleValue(temp, from, to), middleValue(hum, from, to));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     * once the temperature column has been sorted after a batch
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature() {
+        return temp < 0 ? -999.0 : store.quantile(temp, 0.5);
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     * once the humidity column has been sorted after a batch
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity() {
+        return hum < 0 ? -999.0 : store.quantile(hum, 0.5);
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature(double onDate) {
+        return temp < 0 ? -999.0 : store.quantile(temp, 0.5, onDate);
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity(double onDate) {
+        return hum < 0 ? -999.0 : store.quantile(hum, 0.5, onDate);
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q) {
+        return new SuperTempHumidReading(temp < 0 ? -999.0 : store.quantile(temp, q), hum < 0 ? -999.0 : store.quantile(hum, q));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q, double onDate) {
+        return new SuperTempHumidReading(temp < 0 ? -999.0 : store.quantile(temp, q, onDate),
+                hum < 0 ? -999.0 : store.quantile(hum, q, onDate));
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public TempHumidReading[] quantiles(double[] qs) {
+        TempHumidReading[] readings = new TempHumidReading[qs.length];
+        for (int i = 0; i < qs.length; i++)
+            readings[i] = quantile(qs[i]);
+        return readings;
+    }
+
+    /**
+     * produces the middle temperature and humidity on each of several dates
+     *
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    @Override
+    public void middleReadings(double[] dates, double[] out) {
+        Utility.checkReadingsOut(dates, out);
+        for (int i = 0; i < dates.length; i++){
+            out[2 * i] = middleTemperature(dates[i]);
+            out[2 * i + 1] = middleHumidity(dates[i]);
+        }
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order. Errors are those of the
+     * temperature and humidity channels.
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public void forEachDay(DailySummaryVisitor visitor) {
+        for (double date : store.sortedDates())
+            visitor.visitDay(date, middleTemperature(date), middleHumidity(date),
+                    temp < 0 ? 0 : store.count(temp, date), hum < 0 ? 0 : store.count(hum, date),
+                    (temp < 0 ? 0 : store.errors(temp, date)) + (hum < 0 ? 0 : store.errors(hum, date)));
+    }
+
+    /**
+     * adds every stored temperature and humidity and their number of errors to a mergeable summary
+     *
+     * @param summary the summary to add to
+     */
+    @Override
+    public void summarizeInto(ReadingSummary summary) {
+        if (temp >= 0){
+            store.forEachValue(temp, summary::addTemp);
+            summary.addErrors(store.errors(temp));
+        }
+        if (hum >= 0){
+            store.forEachValue(hum, summary::addHum);
+            summary.addErrors(store.errors(hum));
+        }
+    }
+
+    /**
+     * computes the current percentage of non-datetime sensor values that are -999.0s, over every channel
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError(){
+        long values = 0;
+        long errors = 0;
+        for (int c = 0; c < store.getSchema().channels(); c++){
+            values += store.count(c);
+            errors += store.errors(c);
+        }
+        return (errors / (double)(values + errors)) * 100.0;
+    }
+}
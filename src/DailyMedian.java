@@ -0,0 +1,39 @@
+/**
+ * A DTO for the middle reading of a day that has closed
+ */
+public class DailyMedian {
+
+    /**
+     * The date in the format yyyymmdd
+     */
+    private double date;
+
+    /**
+     * The middle temperature and humidity of the day
+     */
+    private TempHumidReading reading;
+
+    /**
+     * Constructs a daily median
+     * @param date the date in the format yyyymmdd
+     * @param reading the middle temperature and humidity of the day
+     */
+    public DailyMedian(double date, TempHumidReading reading){
+        this.date = date;
+        this.reading = reading;
+    }
+
+    /**
+     * @return the date in format yyyymmdd
+     */
+    public double getDate() {
+        return date;
+    }
+
+    /**
+     * @return the middle temperature and humidity of the day
+     */
+    public TempHumidReading getReading() {
+        return reading;
+    }
+}
@@ -0,0 +1,349 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the summary of each visited day to a file, either as a binary columnar file or as CSV.
+ * Values go straight from visitDay into a direct buffer which is written through a FileChannel,
+ * so exporting creates no objects per day.
+ *
+ * The columnar file is the int MAGIC followed by row groups. Each row group is an int row count n followed by the columns
+ * date, middle temperature and middle humidity (n doubles each) and temperatures, humidities and errors (n ints each).
+ *
+ * The CSV file has a header line and one line per day: date,temperature,humidity,temperatures,humidities,errors,percentError,
+ * with the middle readings to 0.1 (the sensors' resolution) and the percent error to 0.01.
+ */
+public class DailySummaryExporter implements DailySummaryVisitor, AutoCloseable {
+
+    /**
+     * The first int of a columnar file
+     */
+    public static final int MAGIC = 0x47484453;
+
+    /**
+     * The default number of days in a row group
+     */
+    public static final int ROW_GROUP_DAYS = 4096;
+
+    /**
+     * The bytes taken by one day in a row group
+     */
+    private static final int ROW_BYTES = 3 * Double.BYTES + 3 * Integer.BYTES;
+
+    /**
+     * The header line of a CSV file
+     */
+    private static final String CSV_HEADER = "date,temperature,humidity,temperatures,humidities,errors,percentError\n";
+
+    /**
+     * The most bytes one CSV line can take
+     */
+    private static final int MAX_LINE = 128;
+
+    /**
+     * The file being written
+     */
+    private FileChannel channel;
+
+    /**
+     * True for CSV, false for columnar
+     */
+    private boolean csv;
+
+    /**
+     * The direct buffer days are written into
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Views of the row count and each column of buffer, written together once a row group is full (columnar only)
+     */
+    private ByteBuffer[] columns;
+
+    /**
+     * The number of days in a row group (columnar only)
+     */
+    private int rowGroupDays;
+
+    /**
+     * The number of days in the current row group (columnar only)
+     */
+    private int rows;
+
+    /**
+     * The number of days visited
+     */
+    private long days;
+
+    /**
+     * Scratch space for the digits of a number (CSV only)
+     */
+    private byte[] digits;
+
+    /**
+     * Opens a columnar file with the default row group size
+     * @param path the file, which is created or replaced
+     * @return an exporter to visit days with
+     * @throws IOException if the file cannot be opened
+     */
+    public static DailySummaryExporter columnar(Path path) throws IOException {
+        return columnar(path, ROW_GROUP_DAYS);
+    }
+
+    /**
+     * Opens a columnar file
+     * @param path the file, which is created or replaced
+     * @param rowGroupDays the number of days in each row group, at least 1
+     * @return an exporter to visit days with
+     * @throws IOException if the file cannot be opened
+     */
+    public static DailySummaryExporter columnar(Path path, int rowGroupDays) throws IOException {
+        if (rowGroupDays < 1)
+            throw new IllegalArgumentException("rowGroupDays must be at least 1");
+        DailySummaryExporter e = new DailySummaryExporter(path, false);
+        e.rowGroupDays = rowGroupDays;
+        e.buffer = ByteBuffer.allocateDirect(Integer.BYTES + rowGroupDays * ROW_BYTES);
+        e.columns = new ByteBuffer[7];
+        for (int i = 0; i < e.columns.length; i++)
+            e.columns[i] = e.buffer.duplicate();
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES).putInt(MAGIC).flip();
+        e.writeFully(header);
+        return e;
+    }
+
+    /**
+     * Opens a CSV file
+     * @param path the file, which is created or replaced
+     * @return an exporter to visit days with
+     * @throws IOException if the file cannot be opened
+     */
+    public static DailySummaryExporter csv(Path path) throws IOException {
+        DailySummaryExporter e = new DailySummaryExporter(path, true);
+        e.buffer = ByteBuffer.allocateDirect(64 * 1024);
+        e.digits = new byte[20];
+        for (int i = 0; i < CSV_HEADER.length(); i++)
+            e.buffer.put((byte) CSV_HEADER.charAt(i));
+        return e;
+    }
+
+    /**
+     * Opens the file
+     * @param path the file
+     * @param csv true for CSV, false for columnar
+     * @throws IOException if the file cannot be opened
+     */
+    private DailySummaryExporter(Path path, boolean csv) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.csv = csv;
+    }
+
+    /**
+     * Writes the summary of one day
+     * @throws UncheckedIOException if the file cannot be written
+     */
+    @Override
+    public void visitDay(double date, double middleTemp, double middleHum, int temps, int hums, int errors) {
+        try {
+            if (csv)
+                writeLine(date, middleTemp, middleHum, temps, hums, errors);
+            else {
+                int at = Integer.BYTES;
+                buffer.putDouble(at + rows * Double.BYTES, date);
+                at += rowGroupDays * Double.BYTES;
+                buffer.putDouble(at + rows * Double.BYTES, middleTemp);
+                at += rowGroupDays * Double.BYTES;
+                buffer.putDouble(at + rows * Double.BYTES, middleHum);
+                at += rowGroupDays * Double.BYTES;
+                buffer.putInt(at + rows * Integer.BYTES, temps);
+                at += rowGroupDays * Integer.BYTES;
+                buffer.putInt(at + rows * Integer.BYTES, hums);
+                at += rowGroupDays * Integer.BYTES;
+                buffer.putInt(at + rows * Integer.BYTES, errors);
+                rows++;
+                if (rows == rowGroupDays)
+                    writeRowGroup();
+            }
+            days++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return the number of days visited
+     */
+    public long getDays() {
+        return days;
+    }
+
+    /**
+     * Writes any buffered days and closes the file
+     * @throws IOException if the file cannot be written
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (csv){
+                buffer.flip();
+                writeFully(buffer);
+            } else if (rows > 0)
+                writeRowGroup();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Reads a columnar file back, giving each day to a visitor in file order
+     * @param path the file
+     * @param visitor receives each day
+     * @throws IOException if the file cannot be read or is not a columnar summary file
+     */
+    public static void readColumnar(Path path, DailySummaryVisitor visitor) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)){
+            ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+            if (!readFully(in, header) || header.getInt(0) != MAGIC)
+                throw new IOException(path + " is not a daily summary file");
+            ByteBuffer group = ByteBuffer.allocateDirect(ROW_GROUP_DAYS * ROW_BYTES);
+            while (true){
+                header.clear();
+                if (!readFully(in, header))
+                    return;
+                int n = header.getInt(0);
+                if (group.capacity() < n * ROW_BYTES)
+                    group = ByteBuffer.allocateDirect(n * ROW_BYTES);
+                group.clear().limit(n * ROW_BYTES);
+                if (!readFully(in, group))
+                    throw new EOFException(path + " ends inside a row group");
+                for (int r = 0; r < n; r++){
+                    int doubles = r * Double.BYTES;
+                    int ints = 3 * n * Double.BYTES + r * Integer.BYTES;
+                    visitor.visitDay(group.getDouble(doubles), group.getDouble(n * Double.BYTES + doubles),
+                            group.getDouble(2 * n * Double.BYTES + doubles), group.getInt(ints),
+                            group.getInt(n * Integer.BYTES + ints), group.getInt(2 * n * Integer.BYTES + ints));
+                }
+            }
+        }
+    }
+
+    //helpers
+    /**
+     * Writes the row count and the filled part of each column with one gathering write
+     * @throws IOException if the file cannot be written
+     */
+    private void writeRowGroup() throws IOException {
+        buffer.putInt(0, rows);
+        columns[0].limit(Integer.BYTES).position(0);
+        int at = Integer.BYTES;
+        for (int c = 1; c < columns.length; c++){
+            int width = c <= 3 ? Double.BYTES : Integer.BYTES;
+            columns[c].limit(at + rows * width).position(at);
+            at += rowGroupDays * width;
+        }
+        long remaining = Integer.BYTES + (long) rows * ROW_BYTES;
+        while (remaining > 0)
+            remaining -= channel.write(columns);
+        rows = 0;
+    }
+
+    /**
+     * Writes one CSV line, first writing out the buffer if the line might not fit
+     * @throws IOException if the file cannot be written
+     */
+    private void writeLine(double date, double middleTemp, double middleHum, int temps, int hums, int errors)
+            throws IOException {
+        if (buffer.remaining() < MAX_LINE){
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+        int total = temps + hums + errors;
+        putLong(Math.round(date));
+        buffer.put((byte) ',');
+        putFixed(middleTemp, 1);
+        buffer.put((byte) ',');
+        putFixed(middleHum, 1);
+        buffer.put((byte) ',');
+        putLong(temps);
+        buffer.put((byte) ',');
+        putLong(hums);
+        buffer.put((byte) ',');
+        putLong(errors);
+        buffer.put((byte) ',');
+        putFixed(total == 0 ? 0.0 : errors * 100.0 / total, 2);
+        buffer.put((byte) '\n');
+    }
+
+    /**
+     * Puts the decimal digits of a number
+     * @param value the number
+     */
+    private void putLong(long value){
+        if (value < 0){
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        while (n > 0)
+            buffer.put(digits[--n]);
+    }
+
+    /**
+     * Puts a number rounded to a fixed number of decimal places
+     * @param value the number
+     * @param decimals the number of decimal places, at least 1
+     */
+    private void putFixed(double value, int decimals){
+        long scale = 1;
+        for (int i = 0; i < decimals; i++)
+            scale *= 10;
+        long scaled = Math.round(value * scale);
+        if (scaled < 0){
+            buffer.put((byte) '-');
+            scaled = -scaled;
+        }
+        putLong(scaled / scale);
+        buffer.put((byte) '.');
+        for (long place = scale / 10; place > 0; place /= 10)
+            buffer.put((byte) ('0' + (scaled / place) % 10));
+    }
+
+    /**
+     * Writes everything remaining in a buffer
+     * @param src the buffer
+     * @throws IOException if the file cannot be written
+     */
+    private void writeFully(ByteBuffer src) throws IOException {
+        while (src.hasRemaining())
+            channel.write(src);
+    }
+
+    /**
+     * Fills the remainder of a buffer
+     * @param in the file
+     * @param dst the buffer
+     * @return false if the file ended before any byte was read
+     * @throws IOException if the file cannot be read, or ends part way through dst
+     */
+    private static boolean readFully(FileChannel in, ByteBuffer dst) throws IOException {
+        boolean started = false;
+        while (dst.hasRemaining()){
+            if (in.read(dst) < 0){
+                if (!started)
+                    return false;
+                throw new EOFException("file ends part way through a read");
+            }
+            started = true;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+/**
+ * Receives a summary of each day of stored readings, as primitives so that visiting creates no objects
+ */
+public interface DailySummaryVisitor {
+
+    /**
+     * Visits the summary of one day
+     * @param date the date with the format YYYYMMDD.0
+     * @param middleTemp the middle temperature of the day (value at index (size() / 2) of the sorted temperatures), or -999 if there are none
+     * @param middleHum the middle humidity of the day, or -999 if there are none
+     * @param temps the number of valid temperatures
+     * @param hums the number of valid humidities
+     * @param errors the number of error values (-999s)
+     */
+    public void visitDay(double date, double middleTemp, double middleHum, int temps, int hums, int errors);
+}
@@ -0,0 +1,145 @@
+import java.util.Arrays;
+
+/**
+ * A hash map from dates (YYYYMMDD.0) to values, keyed by primitive longs so that lookups do not box the date.
+ * Uses open addressing with linear probing and is kept at most half full.
+ * @param <V> the type of the values
+ */
+public class DateIndex<V> {
+
+    /**
+     * The keys, as rounded dates
+     */
+    private long[] keys;
+
+    /**
+     * The values, or null for an empty slot
+     */
+    private Object[] values;
+
+    /**
+     * The number of entries
+     */
+    private int size;
+
+    /**
+     * Constructs an empty index
+     */
+    public DateIndex(){
+        keys = new long[16];
+        values = new Object[16];
+        size = 0;
+    }
+
+    /**
+     * Gets the value for a date
+     * @param date a date formatted as a double
+     * @return the value, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public V get(double date){
+        long key = Math.round(date);
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); values[i] != null; i = (i + 1) & mask){
+            if (keys[i] == key)
+                return (V) values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Sets the value for a date
+     * @param date a date formatted as a double
+     * @param value the value, not null
+     */
+    public void put(double date, V value){
+        if (value == null)
+            throw new IllegalArgumentException("value must not be null");
+        if (2 * (size + 1) > keys.length)
+            grow();
+        long key = Math.round(date);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null && keys[i] != key)
+            i = (i + 1) & mask;
+        if (values[i] == null)
+            size++;
+        keys[i] = key;
+        values[i] = value;
+    }
+
+    /**
+     * Removes the value for a date, shifting back any entries probed past its slot
+     * @param date a date formatted as a double
+     * @return the removed value, or null if there was none
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(double date){
+        long key = Math.round(date);
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (values[i] != null && keys[i] != key)
+            i = (i + 1) & mask;
+        if (values[i] == null)
+            return null;
+        V removed = (V) values[i];
+        values[i] = null;
+        size--;
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask){
+            int home = slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - i) & mask)){
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * @return the number of dates
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * @return every date, in ascending order
+     */
+    public double[] sortedDates(){
+        double[] dates = new double[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++)
+            if (values[i] != null)
+                dates[n++] = keys[i];
+        Arrays.sort(dates);
+        return dates;
+    }
+
+    //helpers
+    /**
+     * Finds the first slot to probe for a key
+     * @param key the key
+     * @param mask the table length less one
+     * @return the slot
+     */
+    private static int slot(long key, int mask){
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    /**
+     * Doubles the table, reinserting every entry
+     */
+    @SuppressWarnings("unchecked")
+    private void grow(){
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new Object[oldValues.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldValues[i] != null)
+                put(oldKeys[i], (V) oldValues[i]);
+    }
+}
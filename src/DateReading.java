@@ -1,12 +1,25 @@
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
 
 /**
- * A DTO for readings on a specific date
+ * A DTO for readings on a specific date.
+ * Readings merged in from later batches are kept as a small set of sorted runs beside the day's sorted lists, so a merge
+ * costs nothing up front; the runs are compacted into the lists by linear merges, in the background (see compact),
+ * when getTemps or getHums is called, or once there are MAX_RUNS of them. Quantiles select across the runs without compacting,
+ * through views of the runs that are kept and rebuilt only when the runs change, so repeated queries do not allocate.
+ * Compaction may run on another thread than the one merging and reading.
  */
 public class DateReading {
 
+    /**
+     * The most runs kept beside the sorted lists before a merge compacts them
+     */
+    public static final int MAX_RUNS = 8;
+
     /**
      * The given date in the format yyyymmdd
      */
@@ -15,12 +28,72 @@ public class DateReading {
     /**
      * A list of temperature readings
      */
-    private ArrayList<Double> temps;
+    private volatile ArrayList<Double> temps;
 
     /**
      * A list of humidity readings
      */
-    private ArrayList<Double> hums;
+    private volatile ArrayList<Double> hums;
+
+    /**
+     * The number of error readings (-999) removed on this date
+     */
+    private int errors;
+
+    /**
+     * Sorted runs of temperatures merged in since the last compaction, oldest first, or null for none
+     */
+    private ArrayList<ArrayList<Double>> tempRuns;
+
+    /**
+     * Sorted runs of humidities merged in since the last compaction, oldest first, or null for none
+     */
+    private ArrayList<ArrayList<Double>> humRuns;
+
+    /**
+     * The number of runs of each kind waiting to be compacted
+     */
+    private volatile int pendingRuns;
+
+    /**
+     * Whether a background compaction has been asked for and not yet started
+     */
+    private boolean scheduled;
+
+    /**
+     * Held for the whole of a compaction, so that compactions do not overlap
+     */
+    private final Object compacting = new Object();
+
+    /**
+     * The readings bucketed by hour, or null if they were not kept
+     */
+    private HourlyIndex hourly;
+
+    /**
+     * Counts the changes to the lists and runs, so views of them know when to be rebuilt
+     */
+    private int version;
+
+    /**
+     * A view of the temperatures and their runs for quantiles, or null until one is needed
+     */
+    private SortedRuns tempView;
+
+    /**
+     * The version tempView was built at
+     */
+    private int tempViewVersion = -1;
+
+    /**
+     * A view of the humidities and their runs for quantiles, or null until one is needed
+     */
+    private SortedRuns humView;
+
+    /**
+     * The version humView was built at
+     */
+    private int humViewVersion = -1;
 
     /**
      * Constructs a date reading
@@ -29,9 +102,21 @@ public class DateReading {
      * @param hums the humidities to go in
      */
     public DateReading(double date, ArrayList<Double> temps, ArrayList<Double> hums){
+        this(date, temps, hums, 0);
+    }
+
+    /**
+     * Constructs a date reading
+     * @param date the date
+     * @param temps the temperatures to go in
+     * @param hums the humidities to go in
+     * @param errors the number of error readings (-999) removed on this date
+     */
+    public DateReading(double date, ArrayList<Double> temps, ArrayList<Double> hums, int errors){
         this.date = date;
         this.temps = temps;
         this.hums = hums;
+        this.errors = errors;
     }
 
     /**
@@ -43,18 +128,22 @@ public class DateReading {
 
 
     /**
-     * @return the temperatures
+     * @return the temperatures, sorted once merged, after compacting any runs into them
      */
     public ArrayList<Double> getTemps() {
+        if (pendingRuns > 0)
+            compact();
         return temps;
     }
 
 
     /**
      * Gets the humidities
-     * @return the humidity readings
+     * @return the humidity readings, sorted once merged, after compacting any runs into them
      */
     public ArrayList<Double> getHums() {
+        if (pendingRuns > 0)
+            compact();
         return hums;
     }
 
@@ -74,4 +163,264 @@ public class DateReading {
         this.hums.add(h);
     }
 
-}
\ No newline at end of file
+    /**
+     * Counts an error reading (-999) on this date
+     */
+    public void addError() {
+        this.errors++;
+    }
+
+    /**
+     * @return the number of error readings (-999) on this date
+     */
+    public int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the readings bucketed by hour, or null if they were not kept
+     */
+    public HourlyIndex getHourly() {
+        return hourly;
+    }
+
+    /**
+     * Sets the readings bucketed by hour
+     * @param hourly the index, holding the same readings as this date reading, or null
+     */
+    public void setHourly(HourlyIndex hourly) {
+        this.hourly = hourly;
+    }
+
+    /**
+     * Merges the (sorted) readings of another date reading into this one's by keeping them as a new run,
+     * compacting if there are then more than MAX_RUNS runs. The hourly index is kept only if both have one.
+     * @param other readings for the same date, whose lists are not changed afterwards
+     */
+    public void merge(DateReading other){
+        boolean full;
+        synchronized (this){
+            if (tempRuns == null){
+                tempRuns = new ArrayList<ArrayList<Double>>();
+                humRuns = new ArrayList<ArrayList<Double>>();
+            }
+            tempRuns.add(other.getTemps());
+            humRuns.add(other.getHums());
+            pendingRuns = tempRuns.size();
+            version++;
+            full = pendingRuns > MAX_RUNS;
+            this.errors += other.errors;
+            if (this.hourly != null && other.hourly != null)
+                this.hourly.merge(other.hourly);
+            else
+                this.hourly = null;
+        }
+        if (full)
+            compact();
+    }
+
+    /**
+     * @return the number of runs waiting to be compacted
+     */
+    public int getPendingRuns() {
+        return pendingRuns;
+    }
+
+    /**
+     * Asks for a background compaction, unless one has already been asked for and not started
+     * @return true if the caller should run compact (e.g. on an executor)
+     */
+    public synchronized boolean scheduleCompaction() {
+        if (scheduled || pendingRuns == 0)
+            return false;
+        scheduled = true;
+        return true;
+    }
+
+    /**
+     * Merges the runs into the sorted lists, pairing runs of similar size so each value is copied O(log runs) times.
+     * The merging is done without holding this reading's lock, so merges and quantiles may go on meanwhile;
+     * runs merged in during a compaction are left for the next.
+     */
+    public void compact() {
+        synchronized (compacting){
+            ArrayList<ArrayList<Double>> t;
+            ArrayList<ArrayList<Double>> h;
+            synchronized (this){
+                scheduled = false;
+                if (pendingRuns == 0)
+                    return;
+                t = new ArrayList<ArrayList<Double>>(tempRuns);
+                h = new ArrayList<ArrayList<Double>>(humRuns);
+                t.add(0, temps);
+                h.add(0, hums);
+            }
+            ArrayList<Double> mergedTemps = mergeRuns(t);
+            ArrayList<Double> mergedHums = mergeRuns(h);
+            synchronized (this){
+                tempRuns.subList(0, t.size() - 1).clear();
+                humRuns.subList(0, h.size() - 1).clear();
+                temps = mergedTemps;
+                hums = mergedHums;
+                pendingRuns = tempRuns.size();
+                version++;
+            }
+        }
+    }
+
+    /**
+     * @return the number of temperatures, in the lists and the runs
+     */
+    public synchronized int tempCount() {
+        int n = temps.size();
+        for (int i = 0; i < pendingRuns; i++)
+            n += tempRuns.get(i).size();
+        return n;
+    }
+
+    /**
+     * @return the number of humidities, in the lists and the runs
+     */
+    public synchronized int humCount() {
+        int n = hums.size();
+        for (int i = 0; i < pendingRuns; i++)
+            n += humRuns.get(i).size();
+        return n;
+    }
+
+    /**
+     * Gets a quantile of the temperatures, selecting across the sorted list and the runs without compacting
+     * (without allocating unless the runs changed since the last quantile)
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at index (q * size) of the sorted temperatures (capped at the last one), or -999 if there are none
+     */
+    public double tempQuantile(double q) {
+        if (pendingRuns == 0)
+            return Utility.quantile(temps, q);
+        synchronized (this){
+            if (tempView == null)
+                tempView = new SortedRuns();
+            if (tempViewVersion != version){
+                tempView.clear();
+                addTempsTo(tempView);
+                tempViewVersion = version;
+            }
+            return tempView.quantile(q);
+        }
+    }
+
+    /**
+     * Gets a quantile of the humidities, selecting across the sorted list and the runs without compacting
+     * (without allocating unless the runs changed since the last quantile)
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at index (q * size) of the sorted humidities (capped at the last one), or -999 if there are none
+     */
+    public double humQuantile(double q) {
+        if (pendingRuns == 0)
+            return Utility.quantile(hums, q);
+        synchronized (this){
+            if (humView == null)
+                humView = new SortedRuns();
+            if (humViewVersion != version){
+                humView.clear();
+                addHumsTo(humView);
+                humViewVersion = version;
+            }
+            return humView.quantile(q);
+        }
+    }
+
+    /**
+     * Adds the sorted temperatures and each run of them to a view of sorted runs
+     * @param runs the view
+     */
+    public synchronized void addTempsTo(SortedRuns runs) {
+        runs.add(temps);
+        for (int i = 0; i < pendingRuns; i++)
+            runs.add(tempRuns.get(i));
+    }
+
+    /**
+     * Adds the sorted humidities and each run of them to a view of sorted runs
+     * @param runs the view
+     */
+    public synchronized void addHumsTo(SortedRuns runs) {
+        runs.add(hums);
+        for (int i = 0; i < pendingRuns; i++)
+            runs.add(humRuns.get(i));
+    }
+
+    /**
+     * Buckets raw data by date in one pass: each frame is a datetime followed by temperature, humidity pairs, and its
+     * values are added, unsorted, to the reading of its date, errors (-999) being counted rather than kept
+     * @param data raw data
+     * @param batch where the reading of each date in the data is added, in order of first appearance
+     * @param hourly true to also bucket each reading's values by hour in a new HourlyIndex
+     * @return the number of frames in the data
+     */
+    public static int parse(List<Double> data, ArrayList<DateReading> batch, boolean hourly){
+        DateReading day = null;
+        boolean isTemp = true;
+        int frames = 0;
+        double dateTime = 0;
+        for (int i = 0; i < data.size(); i++){
+            Double value = data.get(i);
+            if (Utility.isDateTime(value)){
+                dateTime = value;
+                double date = Utility.toDate(value);
+                if (day == null || !Utility.sameDate(day.getDate(), date))
+                    day = batchDay(batch, date, hourly);
+                isTemp = true;
+                frames++;
+                continue;
+            }
+            if (Utility.compareDoubles(value, -999.0))
+                day.addError();
+            else if (isTemp){
+                day.temps.add(value);
+                if (hourly)
+                    day.hourly.addTemp(dateTime, value);
+            } else {
+                day.hums.add(value);
+                if (hourly)
+                    day.hourly.addHum(dateTime, value);
+            }
+            isTemp = !isTemp;
+        }
+        return frames;
+    }
+
+    //helpers
+    /**
+     * Finds the reading of a date in a batch, adding an empty one if there is none
+     * @param batch the readings of the batch so far
+     * @param date the date
+     * @param hourly true to give a new reading an HourlyIndex
+     * @return the reading
+     */
+    private static DateReading batchDay(ArrayList<DateReading> batch, double date, boolean hourly){
+        for (int i = batch.size() - 1; i >= 0; i--)
+            if (Utility.sameDate(batch.get(i).getDate(), date))
+                return batch.get(i);
+        DateReading dr = new DateReading(date, new ArrayList<Double>(), new ArrayList<Double>());
+        if (hourly)
+            dr.setHourly(new HourlyIndex());
+        batch.add(dr);
+        return dr;
+    }
+
+    /**
+     * Merges sorted runs, always merging the two smallest
+     * @param runs the runs, at least two
+     * @return a new list of every value, sorted
+     */
+    private static ArrayList<Double> mergeRuns(ArrayList<ArrayList<Double>> runs){
+        PriorityQueue<ArrayList<Double>> smallest = new PriorityQueue<ArrayList<Double>>(
+                Comparator.comparingInt(ArrayList::size));
+        smallest.addAll(runs);
+        while (smallest.size() > 1)
+            smallest.add(Utility.mergeSorted(smallest.poll(), smallest.poll()));
+        return smallest.poll();
+    }
+
+}
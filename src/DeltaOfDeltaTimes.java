@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+/**
+ * A bit-packed sequence of times within a day (seconds since midnight).
+ * Each time is stored as the change in the gap since the previous one (delta of delta),
+ * zigzag encoded behind a short prefix, so evenly spaced sensor readings cost one bit each.
+ */
+public class DeltaOfDeltaTimes {
+
+    /**
+     * The number of bits used for the first time
+     */
+    private static final int FIRST_BITS = 19;
+
+    /**
+     * The packed bits
+     */
+    private long[] words;
+
+    /**
+     * The number of bits written
+     */
+    private int bitLength;
+
+    /**
+     * The number of times written
+     */
+    private int size;
+
+    /**
+     * The last time written
+     */
+    private long prevTime;
+
+    /**
+     * The gap between the last two times written
+     */
+    private long prevDelta;
+
+    /**
+     * Constructs an empty sequence
+     */
+    public DeltaOfDeltaTimes(){
+        words = new long[1];
+        bitLength = 0;
+        size = 0;
+    }
+
+    /**
+     * Appends a time
+     * @param secondOfDay seconds since midnight
+     */
+    public void append(int secondOfDay){
+        if (size == 0){
+            writeBits(secondOfDay, FIRST_BITS);
+            prevDelta = 0;
+        } else {
+            long delta = secondOfDay - prevTime;
+            long dod = delta - prevDelta;
+            long zigzag = (dod << 1) ^ (dod >> 63);
+            if (zigzag == 0)
+                writeBits(0b0, 1);
+            else if (zigzag < (1 << 7)){
+                writeBits(0b10, 2);
+                writeBits(zigzag, 7);
+            } else if (zigzag < (1 << 12)){
+                writeBits(0b110, 3);
+                writeBits(zigzag, 12);
+            } else {
+                writeBits(0b111, 3);
+                writeBits(zigzag, FIRST_BITS + 2);
+            }
+            prevDelta = delta;
+        }
+        prevTime = secondOfDay;
+        size++;
+    }
+
+    /**
+     * Decodes every time
+     * @return the times in the order they were appended
+     */
+    public int[] decode(){
+        int[] times = new int[size];
+        int pos = 0;
+        long time = 0;
+        long delta = 0;
+        for (int i = 0; i < size; i++){
+            if (i == 0){
+                time = readBits(pos, FIRST_BITS);
+                pos += FIRST_BITS;
+            } else {
+                long zigzag;
+                if (readBits(pos, 1) == 0){
+                    zigzag = 0;
+                    pos += 1;
+                } else if (readBits(pos, 2) == 0b10){
+                    zigzag = readBits(pos + 2, 7);
+                    pos += 2 + 7;
+                } else if (readBits(pos, 3) == 0b110){
+                    zigzag = readBits(pos + 3, 12);
+                    pos += 3 + 12;
+                } else {
+                    zigzag = readBits(pos + 3, FIRST_BITS + 2);
+                    pos += 3 + FIRST_BITS + 2;
+                }
+                delta += (zigzag >>> 1) ^ -(zigzag & 1);
+                time += delta;
+            }
+            times[i] = (int) time;
+        }
+        return times;
+    }
+
+    /**
+     * @return the number of times
+     */
+    public int size(){
+        return size;
+    }
+
+    //helpers
+    /**
+     * Writes the low n bits of value, most significant first
+     * @param value the bits
+     * @param n the number of bits, at most 64
+     */
+    private void writeBits(long value, int n){
+        for (int i = n - 1; i >= 0; i--){
+            if (bitLength == words.length * 64)
+                words = Arrays.copyOf(words, words.length * 2);
+            if (((value >>> i) & 1) != 0)
+                words[bitLength >>> 6] |= 1L << (63 - (bitLength & 63));
+            bitLength++;
+        }
+    }
+
+    /**
+     * Reads n bits, most significant first
+     * @param pos the index of the first bit
+     * @param n the number of bits, at most 64
+     * @return the bits
+     */
+    private long readBits(int pos, int n){
+        long value = 0;
+        for (int i = 0; i < n; i++){
+            int bit = pos + i;
+            value = (value << 1) | ((words[bit >>> 6] >>> (63 - (bit & 63))) & 1);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,253 @@
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * The readings of one day, encoded: temperatures and humidities are quantized to tenths, and kept sorted and bit-packed
+ * per hour with the index of their frame (see HourlyCodes), and the datetimes of the frames are bit-packed as deltas
+ * of deltas. The day's sorted values are found by counting across its hours, and the values of part of an hour through
+ * the times of their frames, so each value is kept once. New values are buffered until compact().
+ */
+public class EncodedDay {
+
+    /**
+     * The given date in the format yyyymmdd
+     */
+    private double date;
+
+    /**
+     * The temperatures by hour
+     */
+    private HourlyCodes temps;
+
+    /**
+     * The humidities by hour
+     */
+    private HourlyCodes hums;
+
+    /**
+     * The number of -999 values on this day
+     */
+    private int errors;
+
+    /**
+     * The times of the frames on this day, in arrival order
+     */
+    private DeltaOfDeltaTimes times;
+
+    /**
+     * The number of frames recorded in each hour
+     */
+    private int[] hourFrames;
+
+    /**
+     * The hour of the last frame recorded, which the values added after it belong to
+     */
+    private int frameHour;
+
+    /**
+     * The index of the last frame recorded among the frames of its hour
+     */
+    private int frameIndex;
+
+    /**
+     * Constructs an empty encoded day
+     * @param date the date in the format yyyymmdd
+     */
+    public EncodedDay(double date){
+        this.date = date;
+        temps = new HourlyCodes();
+        hums = new HourlyCodes();
+        times = new DeltaOfDeltaTimes();
+        hourFrames = new int[24];
+    }
+
+    /**
+     * Quantizes a value to tenths
+     * @param value a temperature or humidity
+     * @return the value in tenths
+     * @throws IllegalArgumentException if the value does not fit in 16 bits at 0.1 resolution
+     */
+    public static short quantize(double value){
+        long tenths = Math.round(value * 10.0);
+        if (tenths < Short.MIN_VALUE || tenths > Short.MAX_VALUE)
+            throw new IllegalArgumentException(value + " cannot be encoded at 0.1 resolution in 16 bits");
+        return (short) tenths;
+    }
+
+    /**
+     * Records the time of a frame
+     * @param secondOfDay seconds since midnight
+     */
+    public void addFrame(int secondOfDay){
+        times.append(secondOfDay);
+        frameHour = secondOfDay / HourBuckets.HOUR;
+        frameIndex = hourFrames[frameHour]++;
+    }
+
+    /**
+     * Adds a temperature of the last frame recorded
+     * @param t the temperature in tenths
+     */
+    public void addTemp(short t){
+        temps.add(frameHour, frameIndex, t);
+    }
+
+    /**
+     * Adds a humidity of the last frame recorded
+     * @param h the humidity in tenths
+     */
+    public void addHum(short h){
+        hums.add(frameHour, frameIndex, h);
+    }
+
+    /**
+     * Counts a -999 value
+     */
+    public void addError(){
+        errors++;
+    }
+
+    /**
+     * Sorts the values added since the last compact into their hours and packs those hours again,
+     * dropping the buffer they were added to
+     * @throws IllegalArgumentException if an hour has more than HourlyCodes.MAX_FRAMES frames
+     */
+    public void compact(){
+        temps.compact(hourFrames);
+        hums.compact(hourFrames);
+    }
+
+    /**
+     * @return the date in format yyyymmdd
+     */
+    public double getDate() {
+        return date;
+    }
+
+    /**
+     * @return the number of temperatures
+     */
+    public int getTempCount() {
+        return temps.size();
+    }
+
+    /**
+     * @return the number of humidities
+     */
+    public int getHumCount() {
+        return hums.size();
+    }
+
+    /**
+     * @return the bytes taken by the packed temperatures and humidities
+     */
+    public long packedBytes() {
+        return temps.packedBytes() + hums.packedBytes();
+    }
+
+    /**
+     * @return the number of -999 values on this day
+     */
+    public int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @return the times of the frames on this day, in seconds since midnight, in arrival order
+     */
+    public int[] getTimes() {
+        return times.decode();
+    }
+
+    /**
+     * Gets a sorted temperature, counting across the hours; the day must be compacted
+     * @param index the index in the sorted temperatures
+     * @return the temperature in tenths
+     */
+    public short getTemp(int index) {
+        return (short) temps.kth(index);
+    }
+
+    /**
+     * Gets a sorted humidity, counting across the hours; the day must be compacted
+     * @param index the index in the sorted humidities
+     * @return the humidity in tenths
+     */
+    public short getHum(int index) {
+        return (short) hums.kth(index);
+    }
+
+    /**
+     * Gives every temperature to an action; the day must be compacted
+     * @param action receives each temperature in tenths
+     */
+    public void forEachTemp(IntConsumer action) {
+        temps.forEach(action);
+    }
+
+    /**
+     * Gives every humidity to an action; the day must be compacted
+     * @param action receives each humidity in tenths
+     */
+    public void forEachHum(IntConsumer action) {
+        hums.forEach(action);
+    }
+
+    /**
+     * Counts the temperatures at or below a value; the day must be compacted
+     * @param tenths a temperature in tenths
+     * @return the number of temperatures &lt;= tenths
+     */
+    public int countTempsAtMost(int tenths) {
+        return temps.countAtMost(tenths);
+    }
+
+    /**
+     * Counts the humidities at or below a value; the day must be compacted
+     * @param tenths a humidity in tenths
+     * @return the number of humidities &lt;= tenths
+     */
+    public int countHumsAtMost(int tenths) {
+        return hums.countAtMost(tenths);
+    }
+
+    /**
+     * Adds counters of the temperatures between two times of the day to a list (see HourlyCodes.addTo);
+     * the day must be compacted
+     * @param counters the list
+     * @param fromSecond the first second of the day, inclusive
+     * @param toSecond the last second of the day, inclusive
+     */
+    public void addTempsTo(List<IntUnaryOperator> counters, int fromSecond, int toSecond) {
+        temps.addTo(counters, fromSecond, toSecond, frameSeconds());
+    }
+
+    /**
+     * Adds counters of the humidities between two times of the day to a list (see HourlyCodes.addTo);
+     * the day must be compacted
+     * @param counters the list
+     * @param fromSecond the first second of the day, inclusive
+     * @param toSecond the last second of the day, inclusive
+     */
+    public void addHumsTo(List<IntUnaryOperator> counters, int fromSecond, int toSecond) {
+        hums.addTo(counters, fromSecond, toSecond, frameSeconds());
+    }
+
+    //helpers
+    /**
+     * Decodes the frame times and groups them by hour
+     * @return the second of the day of each frame of each hour, in arrival order
+     */
+    private int[][] frameSeconds() {
+        int[][] seconds = new int[24][];
+        for (int h = 0; h < 24; h++)
+            seconds[h] = new int[hourFrames[h]];
+        int[] n = new int[24];
+        for (int second : times.decode()){
+            int h = second / HourBuckets.HOUR;
+            seconds[h][n[h]++] = second;
+        }
+        return seconds;
+    }
+}
@@ -0,0 +1,441 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A strategy which stores readings encoded per day (see EncodedDay):
+ * quantized 16 bit temperatures and humidities, sorted and packed by hour, and bit-packed frame times.
+ * Medians are computed directly on the encoded values. Readings are kept at the sensors' 0.1 resolution.
+ */
+public class EncodedStrategy implements ParsedDataStrategy{
+
+    /**
+     * The encoded days, in date order
+     */
+    private ArrayList<EncodedDay> days;
+
+    /**
+     * The number of temperatures across all days
+     */
+    private int numTemps;
+
+    /**
+     * The number of humidities across all days
+     */
+    private int numHums;
+
+    /**
+     * The number of errors (-999) encountered in the data
+     */
+    private int numErrs;
+
+    /**
+     * Constructs a new EncodedStrategy
+     */
+    public EncodedStrategy(){
+        days = new ArrayList<EncodedDay>();
+        numTemps = 0;
+        numHums = 0;
+        numErrs = 0;
+    }
+
+    /**
+     * Processes data
+     *
+     * @param data raw data
+     * @throws IllegalArgumentException if a value does not fit in 16 bits at 0.1 resolution
+     */
+    @Override
+    public void processData(List<Double> data) {
+        IngestEvent parse = new IngestEvent();
+        parse.begin();
+        ArrayList<EncodedDay> touched = new ArrayList<EncodedDay>();
+        EncodedDay day = null;
+        int frames = 0;
+        for (int i = 0; i < data.size(); i++){
+            double dateTime = data.get(i);
+            double date = Utility.toDate(dateTime);
+            if (day == null || !Utility.sameDate(day.getDate(), date)){
+                day = getOrAddDay(date);
+                if (!touched.contains(day))
+                    touched.add(day);
+            }
+            day.addFrame(secondOfDay(dateTime));
+            frames++;
+            while (i + 1 < data.size() && !Utility.isDateTime(data.get(i+1))){
+                i++;
+                addValue(day, data.get(i), true);
+                i++;
+                addValue(day, data.get(i), false);
+            }
+        }
+        parse.record("parseData", this, data.size(), frames, touched.size());
+
+        IngestEvent merge = new IngestEvent();
+        merge.begin();
+        for (EncodedDay d : touched)
+            d.compact();
+        merge.record("mergeData", this, data.size(), frames, touched.size());
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading() {
+        return quantile(0.5);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @param onDate the date which to consider medianReadings for (inclusive) with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading(double onDate) {
+        return quantile(0.5, onDate);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time ignoring
+     * error values (-999s), counting the sorted values of the days the range covers whole and the hours of the (at most
+     * two) days it covers in part, by binary searching the 16 bit value range as the other medians do
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none
+     */
+    @Override
+    public TempHumidReading middleReading(double from, double to) {
+        double start = Utility.rangeStart(from);
+        double end = Utility.rangeEnd(to);
+        ArrayList<IntUnaryOperator> temps = new ArrayList<IntUnaryOperator>();
+        ArrayList<IntUnaryOperator> hums = new ArrayList<IntUnaryOperator>();
+        for (EncodedDay d : days){
+            if (d.getDate() < Utility.toDate(start) || d.getDate() > Utility.toDate(end))
+                continue;
+            int fromSecond = Utility.firstSecondOn(start, d.getDate());
+            int toSecond = Utility.lastSecondOn(end, d.getDate());
+            if (fromSecond == 0 && toSecond == HourBuckets.DAY - 1){
+                temps.add(d::countTempsAtMost);
+                hums.add(d::countHumsAtMost);
+            } else {
+                d.addTempsTo(temps, fromSecond, toSecond);
+                d.addHumsTo(hums, fromSecond, toSecond);
+            }
+        }
+        return new SuperTempHumidReading(middle(temps), middle(hums));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature() {
+        return numTemps == 0 ? -999.0 : kth(Utility.quantileIndex(0.5, numTemps), true) / 10.0;
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity() {
+        return numHums == 0 ? -999.0 : kth(Utility.quantileIndex(0.5, numHums), false) / 10.0;
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature(double onDate) {
+        EncodedDay d = getDay(onDate);
+        return d == null || d.getTempCount() == 0 ? -999.0 : d.getTemp(d.getTempCount() / 2) / 10.0;
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity(double onDate) {
+        EncodedDay d = getDay(onDate);
+        return d == null || d.getHumCount() == 0 ? -999.0 : d.getHum(d.getHumCount() / 2) / 10.0;
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q) {
+        double temp = -999.0;
+        double hum = -999.0;
+        if (numTemps > 0)
+            temp = kth(Utility.quantileIndex(q, numTemps), true) / 10.0;
+        if (numHums > 0)
+            hum = kth(Utility.quantileIndex(q, numHums), false) / 10.0;
+        return new SuperTempHumidReading(temp, hum);
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q, double onDate) {
+        EncodedDay d = getDay(onDate);
+        double temp = -999.0;
+        double hum = -999.0;
+        if (d != null && d.getTempCount() > 0)
+            temp = d.getTemp(Utility.quantileIndex(q, d.getTempCount())) / 10.0;
+        if (d != null && d.getHumCount() > 0)
+            hum = d.getHum(Utility.quantileIndex(q, d.getHumCount())) / 10.0;
+        return new SuperTempHumidReading(temp, hum);
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public TempHumidReading[] quantiles(double[] qs) {
+        TempHumidReading[] readings = new TempHumidReading[qs.length];
+        for (int i = 0; i < qs.length; i++)
+            readings[i] = quantile(qs[i]);
+        return readings;
+    }
+
+    /**
+     * produces the middle temperature and humidity on each of several dates, looking the dates up in date order
+     *
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    @Override
+    public void middleReadings(double[] dates, double[] out) {
+        Utility.checkReadingsOut(dates, out);
+        int j = 0;
+        for (int i : Utility.dateOrder(dates)){
+            while (j < days.size() && days.get(j).getDate() < dates[i] - 0.001)
+                j++;
+            double temp = -999.0;
+            double hum = -999.0;
+            if (j < days.size() && Utility.sameDate(days.get(j).getDate(), dates[i])){
+                EncodedDay d = days.get(j);
+                if (d.getTempCount() > 0)
+                    temp = d.getTemp(d.getTempCount() / 2) / 10.0;
+                if (d.getHumCount() > 0)
+                    hum = d.getHum(d.getHumCount() / 2) / 10.0;
+            }
+            out[2 * i] = temp;
+            out[2 * i + 1] = hum;
+        }
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public void forEachDay(DailySummaryVisitor visitor) {
+        for (EncodedDay d : days){
+            double temp = d.getTempCount() > 0 ? d.getTemp(d.getTempCount() / 2) / 10.0 : -999.0;
+            double hum = d.getHumCount() > 0 ? d.getHum(d.getHumCount() / 2) / 10.0 : -999.0;
+            visitor.visitDay(d.getDate(), temp, hum, d.getTempCount(), d.getHumCount(), d.getErrors());
+        }
+    }
+
+    /**
+     * adds every stored reading and the number of errors to a mergeable summary
+     *
+     * @param summary the summary to add to
+     */
+    @Override
+    public void summarizeInto(ReadingSummary summary) {
+        for (EncodedDay d : days){
+            d.forEachTemp(t -> summary.addTemp(t / 10.0));
+            d.forEachHum(h -> summary.addHum(h / 10.0));
+        }
+        summary.addErrors(numErrs);
+    }
+
+    /**
+     * computes the current percentage of non-datetime sensor values that are -999.0s
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError() {
+        return (numErrs / (double)(numTemps + numHums + numErrs)) * 100.0;
+    }
+
+    /**
+     * Gets the frame times recorded on a date
+     * @param onDate a date formatted as a double
+     * @return the times in seconds since midnight in arrival order, or an empty array if there are none
+     */
+    public int[] timesOn(double onDate) {
+        EncodedDay d = getDay(onDate);
+        if (d == null)
+            return new int[0];
+        return d.getTimes();
+    }
+
+    //helpers
+    /**
+     * Adds a temperature or humidity to a day, counting it as an error if it is -999
+     * @param day the day
+     * @param value the value
+     * @param isTemp true for a temperature, false for a humidity
+     */
+    private void addValue(EncodedDay day, double value, boolean isTemp){
+        if (Utility.compareDoubles(value, -999.0)){
+            day.addError();
+            numErrs++;
+        } else if (isTemp){
+            day.addTemp(EncodedDay.quantize(value));
+            numTemps++;
+        } else {
+            day.addHum(EncodedDay.quantize(value));
+            numHums++;
+        }
+    }
+
+    /**
+     * Finds the k-th smallest temperature or humidity across every day, by binary searching the 16 bit value range
+     * for the smallest value with more than k values at or below it
+     * @param k the index in the sorted values
+     * @param isTemp true for temperatures, false for humidities
+     * @return the value in tenths
+     */
+    private int kth(int k, boolean isTemp){
+        int lo = Short.MIN_VALUE;
+        int hi = Short.MAX_VALUE;
+        while (lo < hi){
+            int mid = Math.floorDiv(lo + hi, 2);
+            long atMost = 0;
+            for (int i = 0; i < days.size(); i++)
+                atMost += isTemp ? days.get(i).countTempsAtMost(mid) : days.get(i).countHumsAtMost(mid);
+            if (atMost > k)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the middle of the values some counters count, by binary searching the 16 bit value range
+     * for the smallest value with more than size / 2 values at or below it
+     * @param counters each counts its values at or below a value in tenths
+     * @return the value at index (size / 2) of the counted values, or -999 if there are none
+     */
+    private static double middle(List<IntUnaryOperator> counters){
+        long size = 0;
+        for (IntUnaryOperator c : counters)
+            size += c.applyAsInt(Short.MAX_VALUE);
+        if (size == 0)
+            return -999.0;
+        long k = size / 2;
+        int lo = Short.MIN_VALUE;
+        int hi = Short.MAX_VALUE;
+        while (lo < hi){
+            int mid = Math.floorDiv(lo + hi, 2);
+            long atMost = 0;
+            for (IntUnaryOperator c : counters)
+                atMost += c.applyAsInt(mid);
+            if (atMost > k)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo / 10.0;
+    }
+
+    /**
+     * Binary searches days for a date
+     * @param date a date formatted as a double
+     * @return the index of the day, or -(insertion point) - 1 if there is none
+     */
+    private int findDay(double date){
+        int lo = 0;
+        int hi = days.size() - 1;
+        while (lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            double d = days.get(mid).getDate();
+            if (Utility.sameDate(d, date))
+                return mid;
+            if (d < date)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return -lo - 1;
+    }
+
+    /**
+     * Gets the day for a date
+     * @param onDate a date formatted as a double
+     * @return the day, or null if there is none
+     */
+    private EncodedDay getDay(double onDate){
+        int i = findDay(onDate);
+        if (i < 0)
+            return null;
+        return days.get(i);
+    }
+
+    /**
+     * Gets the day for a date, adding an empty one in date order if there is none
+     * @param date a date formatted as a double
+     * @return the day
+     */
+    private EncodedDay getOrAddDay(double date){
+        int i = findDay(date);
+        if (i >= 0)
+            return days.get(i);
+        EncodedDay d = new EncodedDay(date);
+        days.add(-i - 1, d);
+        return d;
+    }
+
+    /**
+     * Gets the time part of a datetime
+     * @param dateTime YYYYMMDDhhmmss.0
+     * @return hh * 3600 + mm * 60 + ss
+     */
+    private static int secondOfDay(double dateTime){
+        long hhmmss = (long) dateTime % 1000000;
+        return (int) ((hhmmss / 10000) * 3600 + ((hhmmss / 100) % 100) * 60 + hhmmss % 100);
+    }
+}
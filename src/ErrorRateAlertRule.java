@@ -0,0 +1,57 @@
+import java.time.Duration;
+
+/**
+ * A rule which triggers while the percentage of -999 values in the last N readings is above a threshold
+ */
+public class ErrorRateAlertRule extends AbsAlertRule {
+
+    /**
+     * How many of the most recent non-datetime values to consider
+     */
+    private int lastN;
+
+    /**
+     * Constructs an error rate alert rule
+     * @param name a name to identify the rule in alerts
+     * @param lastN how many of the most recent non-datetime values to consider
+     * @param percent the error percentage (0.0 to 100.0) above which the rule is triggered
+     */
+    public ErrorRateAlertRule(String name, int lastN, double percent){
+        super(name, percent);
+        this.lastN = lastN;
+    }
+
+    /**
+     * Constructs an error rate alert rule which must hold for a while before it is triggered or cleared
+     * @param name a name to identify the rule in alerts
+     * @param lastN how many of the most recent non-datetime values to consider
+     * @param percent the error percentage (0.0 to 100.0) above which the rule is triggered
+     * @param sustain how long the percentage must be above percent before the rule is triggered, and not above before it is cleared
+     * @throws IllegalArgumentException if sustain is negative
+     */
+    public ErrorRateAlertRule(String name, int lastN, double percent, Duration sustain){
+        super(name, percent, false, sustain);
+        this.lastN = lastN;
+    }
+
+    /**
+     * Makes sure the error window is maintained, so that rules over the same N share it
+     * @param engine the engine the rule is being added to
+     */
+    @Override
+    protected void register(AlertEngine engine) {
+        engine.getErrorWindow(lastN);
+    }
+
+    /**
+     * @param engine the engine holding the shared aggregates
+     * @return the percentage of errors in the last N values, or -999.0 if no values were seen yet
+     */
+    @Override
+    protected double measure(AlertEngine engine) {
+        ErrorRateWindow w = engine.getErrorWindow(lastN);
+        if (w.size() == 0)
+            return -999.0;
+        return w.percentError();
+    }
+}
@@ -0,0 +1,81 @@
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Counts the -999 values among the last N non-datetime sensor values, using a ring of flags
+ */
+public class ErrorRateWindow implements QualityControlable {
+
+    /**
+     * Whether each of the last N values was an error, as a ring
+     */
+    private boolean[] errors;
+
+    /**
+     * Where the next value goes in the ring
+     */
+    private int next;
+
+    /**
+     * How many values are in the ring
+     */
+    private int size;
+
+    /**
+     * How many values in the ring are errors
+     */
+    private int numErrs;
+
+    /**
+     * Constructs an empty error window
+     * @param lastN how many of the most recent values to consider
+     */
+    public ErrorRateWindow(int lastN){
+        if (lastN <= 0)
+            throw new IllegalArgumentException("lastN must be positive");
+        errors = new boolean[lastN];
+        next = 0;
+        size = 0;
+        numErrs = 0;
+    }
+
+    /**
+     * Adds a value, pushing out the oldest one once the window is full
+     * @param error true if the value was a -999
+     */
+    public void add(boolean error){
+        if (size == errors.length){
+            if (errors[next])
+                numErrs--;
+        } else
+            size++;
+        errors[next] = error;
+        if (error)
+            numErrs++;
+        next = (next + 1) % errors.length;
+    }
+
+    /**
+     * @return the number of values in the window
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * computes the percentage of the last N non-datetime sensor values that are -999.0s
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError() {
+        return (numErrs / (double) size) * 100.0;
+    }
+
+    /**
+     * computes percentError(), which reads a count kept as values arrive, so the future is already complete
+     * @return a completed future for the percentage
+     */
+    @Override
+    public CompletableFuture<Double> percentErrorAsync() {
+        return CompletableFuture.completedFuture(percentError());
+    }
+}
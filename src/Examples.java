@@ -1,6 +1,10 @@
 import org.junit.Test;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.junit.Assert.*;
 
@@ -384,5 +388,1419 @@ public class Examples {
     }
     */
 
+    @Test
+    public void testMiddleReadingWindowProduce(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+
+        g.pollSensorData(List.of(20231106010000.0, 10.0, 40.0));
+        g.pollSensorData(List.of(20231106012000.0, 20.0, -999.0));
+        g.pollSensorData(List.of(20231106014000.0, 30.0, 60.0));
+
+        assertEquals(new SuperTempHumidReading(30.0, 60.0), g.middleReading(Duration.ofMinutes(15)));
+        assertEquals(new SuperTempHumidReading(30.0, 60.0), g.middleReading(Duration.ofMinutes(30)));
+        assertEquals(new SuperTempHumidReading(20.0, 60.0), g.middleReading(Duration.ofMinutes(50)));
+
+        g.pollSensorData(List.of(20231106015500.0, 5.0, 50.0));
+
+        assertEquals(new SuperTempHumidReading(20.0, 60.0), g.middleReading(Duration.ofMinutes(50)));
+        assertEquals(new SuperTempHumidReading(30.0, 60.0), g.middleReading(Duration.ofMinutes(30)));
+    }
+
+    @Test
+    public void testSlidingWindowMedianMatchesSort(){
+        SlidingWindowMedian w = new SlidingWindowMedian(100);
+        Random random = new Random(26);
+        LinkedList<Long> times = new LinkedList<>();
+        LinkedList<Double> values = new LinkedList<>();
+
+        for (long t = 0; t < 2000; t += random.nextInt(5)){
+            double v = random.nextInt(50) / 2.0;
+            w.add(t, v);
+            w.advanceTo(t);
+            times.add(t);
+            values.add(v);
+            while (times.getFirst() <= t - 100){
+                times.removeFirst();
+                values.removeFirst();
+            }
+            ArrayList<Double> sorted = new ArrayList<>(values);
+            sorted.sort(Double::compare);
+            assertEquals(sorted.get(sorted.size() / 2), w.median(), 0.0);
+        }
+    }
+
+    @Test
+    public void testAlertRulesProduce(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        ArrayList<String> alerts = new ArrayList<>();
+        g.addAlertRule(new MedianAlertRule("mold", true, Duration.ofMinutes(30), 80.0));
+        g.addAlertRule(new ErrorRateAlertRule("sensors", 4, 25.0));
+        g.addAlertListener(new AlertListener() {
+            @Override
+            public void alertRaised(AbsAlertRule rule, double datetime, double value) {
+                alerts.add("+" + rule.getName());
+            }
+
+            @Override
+            public void alertCleared(AbsAlertRule rule, double datetime, double value) {
+                alerts.add("-" + rule.getName());
+            }
+        });
+
+        g.pollSensorData(List.of(20231106010000.0, 70.0, 75.0, 71.0, 78.0));
+        assertEquals(List.of(), alerts);
+
+        g.pollSensorData(List.of(20231106011000.0, 72.0, 90.0, -999.0, 95.0));
+        assertEquals(List.of("+mold"), alerts);
+
+        g.pollSensorData(List.of(20231106011500.0, -999.0, 91.0));
+        assertEquals(List.of("+mold", "+sensors"), alerts);
+
+        g.pollSensorData(List.of(20231106015000.0, 70.0, 60.0, 71.0, 61.0));
+        assertEquals(List.of("+mold", "+sensors", "-mold", "-sensors"), alerts);
+    }
+
+    @Test
+    public void testErrorRateWindow(){
+        ErrorRateWindow w = new ErrorRateWindow(4);
+        w.add(true);
+        w.add(false);
+        assertEquals(50.0, w.percentError(), 0.0001);
+        w.add(false);
+        w.add(false);
+        w.add(false);
+        assertEquals(0.0, w.percentError(), 0.0001);
+        assertEquals(4, w.size());
+    }
+
+    @Test
+    public void testSensorSubscriberBatchesFrames() throws Exception {
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        SensorFrameSubscriber subscriber = g.sensorSubscriber(2, 6);
+        SubmissionPublisher<List<Double>> publisher = new SubmissionPublisher<>();
+        publisher.subscribe(subscriber);
+
+        publisher.submit(List.of(20231106010101.0, 49.0, 32.0));
+        publisher.submit(List.of(20231106010102.0, 45.0, 67.0));
+        publisher.submit(List.of(20231106010103.0, 43.0, 57.0));
+        publisher.close();
+        subscriber.getCompletion().get(5, TimeUnit.SECONDS);
+
+        assertEquals(new SuperTempHumidReading(45.0, 57.0), g.middleReading());
+    }
+
+    @Test
+    public void testDailyMediansPublisher() throws Exception {
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        ArrayList<Double> dates = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        g.dailyMedians().subscribe(new Flow.Subscriber<DailyMedian>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                s.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(DailyMedian m) {
+                dates.add(m.getDate());
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                done.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                done.countDown();
+            }
+        });
+
+        g.pollSensorData(List.of(20231106010101.0, 49.0, 32.0, 20231107010101.0, 45.0, 67.0));
+        g.pollSensorData(List.of(20231108010101.0, 43.0, 57.0));
+        g.closeDailyMedians();
+        done.await(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(20231106.0, 20231107.0), dates);
+    }
+
+    @Test
+    public void testSensorFrameCodecRoundTrip(){
+        List<Double> frame = List.of(20231106010101.0, 49.5, 32.1, -999.0, 100.0);
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(SensorFrameCodec.frameSize(2) + 4);
+        SensorFrameCodec.encode(frame, buffer);
+        buffer.flip();
+
+        ArrayList<Double> decoded = new ArrayList<>();
+        assertTrue(SensorFrameCodec.decode(buffer, decoded));
+        assertEquals(frame, decoded);
+        assertFalse(SensorFrameCodec.decode(buffer, decoded));
+    }
+
+    @Test
+    public void testSensorIngestServerLoopback() throws Exception {
+        GreenHouseNursery served = new GreenHouseNursery(cal);
+        GreenHouseNursery direct = new GreenHouseNursery(cal);
+
+        try (SensorIngestServer server = new SensorIngestServer(served,
+                new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            SensorLoadGenerator generator = new SensorLoadGenerator(
+                    new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), server.getPort()), 1, 200, 3, 7);
+            assertEquals(200, generator.run());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (server.getFramesReceived() < 200 && System.currentTimeMillis() < deadline)
+                Thread.sleep(1);
+            assertEquals(200, server.getFramesReceived());
+
+            for (int i = 0; i < 200; i++)
+                direct.pollSensorData(generator.frame(0, i));
+        }
+
+        assertEquals(direct.middleReading(), served.middleReading());
+        assertEquals(direct.percentError(), served.percentError(), 0.0001);
+    }
+
+    @Test
+    public void testMicroBatchingMatchesUnbatched(){
+        GreenHouseProduce batched = new GreenHouseProduce(cal);
+        GreenHouseProduce unbatched = new GreenHouseProduce(cal);
+        batched.enableMicroBatching(1000, Duration.ofSeconds(10));
+
+        Random random = new Random(30);
+        for (int i = 0; i < 100; i++){
+            List<Double> frame = List.of(20231106010100.0 + i, random.nextInt(1000) / 10.0, random.nextInt(1000) / 10.0);
+            batched.pollSensorData(frame);
+            unbatched.pollSensorData(frame);
+        }
+
+        assertEquals(0, batched.getMicroBatcher().getBatches());
+        assertEquals(unbatched.middleReading(), batched.middleReading());
+        assertEquals(1, batched.getMicroBatcher().getBatches());
+        assertEquals(unbatched.middleReading(), batched.middleReading(20231106));
+    }
+
+    @Test
+    public void testMicroBatchingDeadline() throws Exception {
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        g.enableMicroBatching(1000, Duration.ofMillis(5));
+        g.pollSensorData(List.of(20231106010101.0, 49.0, 32.0));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (g.getMicroBatcher().getBatches() == 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(1);
+
+        assertEquals(1, g.getMicroBatcher().getBatches());
+        assertEquals(new SuperTempHumidReading(49.0, 32.0), g.middleReading());
+    }
+
+    @Test
+    public void testLateFramesWithinLateness(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        g.setAllowedLateness(Duration.ofMinutes(5));
+
+        g.pollSensorData(List.of(20231106010000.0, 10.0, 10.0, 20231106010300.0, 30.0, 30.0));
+        g.pollSensorData(List.of(20231106010100.0, 20.0, 20.0, 20231106005000.0, 5.0, 5.0));
+
+        assertEquals(1, g.getLateFrames());
+        assertEquals(1, g.getDroppedFrames());
+        assertEquals(new SuperTempHumidReading(20.0, 20.0), g.middleReading());
+        assertEquals(new SuperTempHumidReading(20.0, 20.0), g.middleReading(20231106));
+        assertEquals(new SuperTempHumidReading(30.0, 30.0), g.middleReading(Duration.ofSeconds(150)));
+    }
+
+    @Test
+    public void testFilterDataReordersLateFrames(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        g.setAllowedLateness(Duration.ofMinutes(5));
+
+        List<Double> data = List.of(20231106010300.0, 30.0, 30.0, 20231106010100.0, 20.0, 21.0, 20231106010400.0, 40.0, 40.0);
+
+        assertEquals(List.of(20231106010100.0, 20.0, 21.0, 20231106010300.0, 30.0, 30.0, 20231106010400.0, 40.0, 40.0),
+                g.filterData(data));
+    }
+
+    @Test
+    public void testNurseryQueriesDoNotRecountEarlierPolls(){
+        for (ParsedDataStrategy strategy : List.of(new ArrayListStrategy(), new HashMapStrategy())){
+            GreenHouseNursery g = new GreenHouseNursery(cal);
+            g.setStrategy(strategy);
+
+            g.pollSensorData(List.of(20231106010101.0, 12.0, 12.0));
+            assertEquals(new SuperTempHumidReading(12.0, 12.0), g.middleReading());
+            g.pollSensorData(List.of(20231106020202.0, 50.0, 50.0));
+
+            assertEquals(new SuperTempHumidReading(50.0, 50.0), g.middleReading());
+            assertEquals(new SuperTempHumidReading(50.0, 50.0), g.middleReading(20231106));
+        }
+    }
+
+    @Test
+    public void testSecondBatchSameDateMergesHashMap(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        g.setStrategy(new HashMapStrategy());
+
+        g.pollSensorData(List.of(20231106010101.0, 49.0, 32.0, 45.0, 67.0));
+        g.pollSensorData(List.of(20231106020202.0, 43.0, 57.0));
+
+        assertEquals(new SuperTempHumidReading(45.0, 57.0), g.middleReading(20231106));
+    }
+
+    @Test
+    public void testEncodedStrategyMatchesArrayList(){
+        EncodedStrategy encoded = new EncodedStrategy();
+        ArrayListStrategy plain = new ArrayListStrategy();
+        Random random = new Random(32);
+
+        for (int poll = 0; poll < 5; poll++){
+            List<Double> data = new ArrayList<>();
+            for (int f = 0; f < 40; f++){
+                data.add(20231106000000.0 + poll * 1000000 + f * 100);
+                for (int p = 0; p < 3; p++){
+                    data.add(random.nextInt(20) == 0 ? -999.0 : random.nextInt(1500) / 10.0 - 20);
+                    data.add(random.nextInt(20) == 0 ? -999.0 : random.nextInt(1001) / 10.0);
+                }
+            }
+            encoded.processData(data);
+            plain.processData(data);
+        }
+
+        assertEquals(plain.middleReading(), encoded.middleReading());
+        assertEquals(plain.middleReading(20231108), encoded.middleReading(20231108));
+        assertEquals(plain.middleReading(20231201), encoded.middleReading(20231201));
+        assertEquals(plain.percentError(), encoded.percentError(), 0.0001);
+    }
+
+    @Test
+    public void testDeltaOfDeltaTimesRoundTrip(){
+        DeltaOfDeltaTimes times = new DeltaOfDeltaTimes();
+        int[] expected = {3600, 3660, 3720, 3780, 3781, 7000, 6000, 86399, 0};
+        for (int t : expected)
+            times.append(t);
+
+        assertEquals(expected.length, times.size());
+        assertTrue(Arrays.equals(expected, times.decode()));
+    }
+
+    @Test
+    public void testQuantilesProduce(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        g.pollSensorData(List.of(20231106010101.0, 10.0, 1.0, 20.0, 2.0, 30.0, 3.0, 40.0, 4.0, 50.0, -999.0));
+
+        assertEquals(new SuperTempHumidReading(10.0, 1.0), g.quantile(0.0));
+        assertEquals(g.middleReading(), g.quantile(0.5));
+        assertEquals(new SuperTempHumidReading(50.0, 4.0), g.quantile(1.0));
+        assertEquals(new SuperTempHumidReading(20.0, 2.0), g.quantile(0.25, 20231106));
+        assertEquals(new SuperTempHumidReading(-999.0, -999.0), g.quantile(0.25, 20231107));
+
+        TempHumidReading[] qs = g.quantiles(new double[]{0.05, 0.95});
+        assertEquals(new SuperTempHumidReading(10.0, 1.0), qs[0]);
+        assertEquals(new SuperTempHumidReading(50.0, 4.0), qs[1]);
+    }
+
+    @Test
+    public void testQuantilesMatchAcrossStrategies(){
+        List<Double> data = new ArrayList<>();
+        Random random = new Random(33);
+        data.add(20231106010101.0);
+        for (int i = 0; i < 500; i++)
+            data.add(random.nextInt(1000) / 10.0);
+        double[] qs = {0.05, 0.25, 0.5, 0.75, 0.95};
+
+        ParsedDataStrategy[] strategies = {new ArrayListStrategy(), new HashMapStrategy(), new EncodedStrategy(), new HistogramStrategy()};
+        for (ParsedDataStrategy s : strategies)
+            s.processData(data);
+
+        for (ParsedDataStrategy s : strategies){
+            assertTrue(Arrays.equals(strategies[0].quantiles(qs), s.quantiles(qs)));
+            assertEquals(strategies[0].quantile(0.75, 20231106), s.quantile(0.75, 20231106));
+        }
+    }
+
+    @Test
+    public void testHistogramStrategyMatchesArrayList(){
+        HistogramStrategy histogram = new HistogramStrategy();
+        ArrayListStrategy plain = new ArrayListStrategy();
+        Random random = new Random(34);
+
+        for (int poll = 0; poll < 5; poll++){
+            List<Double> data = new ArrayList<>();
+            for (int f = 0; f < 40; f++){
+                data.add(20231106000000.0 + poll * 1000000 + f * 100);
+                for (int p = 0; p < 3; p++){
+                    data.add(random.nextInt(20) == 0 ? -999.0 : (random.nextInt(1500) - 200) / 10.0);
+                    data.add(random.nextInt(20) == 0 ? -999.0 : random.nextInt(1001) / 10.0);
+                }
+            }
+            //out of range and off grid values go to the overflow list
+            data.add(20231106000000.0 + poll * 1000000 + 5959);
+            data.add(-60.0 + poll);
+            data.add(50.05 + poll);
+            data.add(20231106000000.0 + poll * 1000000 + 5959);
+            data.add(200.0);
+            data.add(0.1 + 0.2);
+            histogram.processData(data);
+            plain.processData(data);
+        }
+
+        assertEquals(20, histogram.overflowSize());
+        double[] qs = {0.0, 0.01, 0.25, 0.5, 0.75, 0.99, 1.0};
+        assertTrue(Arrays.equals(plain.quantiles(qs), histogram.quantiles(qs)));
+        for (double q : qs)
+            assertEquals(plain.quantile(q, 20231108), histogram.quantile(q, 20231108));
+        assertEquals(plain.middleReading(), histogram.middleReading());
+        assertEquals(plain.middleReading(20231201), histogram.middleReading(20231201));
+        assertEquals(plain.percentError(), histogram.percentError(), 0.0001);
+    }
+
+    @Test
+    public void testFenwickHistogramKth(){
+        FenwickHistogram h = new FenwickHistogram(0.0, 10.0);
+        double[] values = {5.0, -1.0, 2.5, 10.0, 10.5, 2.5, 0.0, 3.33};
+        for (double v : values)
+            h.add(v);
+        Arrays.sort(values);
+
+        assertEquals(values.length, h.size());
+        assertEquals(3, h.overflowSize());
+        for (int k = 0; k < values.length; k++)
+            assertEquals(values[k], h.kth(k), 0.0);
+    }
+
+    @Test
+    public void testMiddleReadingsMatchesMiddleReading(){
+        List<Double> data = new ArrayList<>();
+        Random random = new Random(35);
+        for (int day = 0; day < 6; day++){
+            data.add(20231106000000.0 + day * 1000000);
+            for (int i = 0; i < 21; i++){
+                data.add(random.nextInt(10) == 0 ? -999.0 : random.nextInt(1000) / 10.0);
+                data.add(random.nextInt(1001) / 10.0);
+            }
+        }
+        double[] dates = {20231110, 20231106, 20231201, 20231108, 20231106};
+
+        ParsedDataStrategy[] strategies = {new ArrayListStrategy(), new HashMapStrategy(), new EncodedStrategy(), new HistogramStrategy()};
+        for (ParsedDataStrategy s : strategies){
+            s.processData(data);
+            double[] out = new double[2 * dates.length];
+            s.middleReadings(dates, out);
+            for (int i = 0; i < dates.length; i++)
+                assertEquals(s.middleReading(dates[i]), new SuperTempHumidReading(out[2 * i], out[2 * i + 1]));
+        }
+    }
+
+    @Test
+    public void testNurseryProcessesEachPollOnce(){
+        GreenHouseNursery g = new GreenHouseNursery(cal);
+        g.pollSensorData(List.of(20231106010101.0, 10.0, 10.0));
+        assertEquals(new SuperTempHumidReading(10.0, 10.0), g.middleReading());
+
+        g.pollSensorData(List.of(20231106020202.0, 20.0, 20.0));
+        assertEquals(new SuperTempHumidReading(20.0, 20.0), g.middleReading());
+
+        double[] out = new double[4];
+        g.middleReadings(new double[]{20231107, 20231106}, out);
+        assertTrue(Arrays.equals(new double[]{-999.0, -999.0, 20.0, 20.0}, out));
+    }
+
+    @Test
+    public void testDailySummaryColumnarRoundTrip() throws Exception {
+        HashMapStrategy s = new HashMapStrategy();
+        s.processData(List.of(20231107010101.0, 30.0, -999.0, 10.0, 40.0, 20.0, 50.0,
+                20231106010101.0, 15.0, 25.0, 20231108010101.0, -999.0, -999.0));
+
+        Path file = Files.createTempFile("daily", ".bin");
+        try {
+            try (DailySummaryExporter e = DailySummaryExporter.columnar(file, 2)){
+                s.forEachDay(e);
+                assertEquals(3L, e.getDays());
+            }
+            StringBuilder read = new StringBuilder();
+            DailySummaryExporter.readColumnar(file, (date, temp, hum, temps, hums, errors) ->
+                    read.append(date).append(' ').append(temp).append(' ').append(hum).append(' ')
+                            .append(temps).append(' ').append(hums).append(' ').append(errors).append(';'));
+            assertEquals("2.0231106E7 15.0 25.0 1 1 0;2.0231107E7 20.0 50.0 3 2 1;2.0231108E7 -999.0 -999.0 0 0 2;",
+                    read.toString());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testDailySummaryCsv() throws Exception {
+        GreenHouseNursery g = new GreenHouseNursery(cal);
+        g.pollSensorData(List.of(20231106010101.0, 15.25, -999.0, -3.0, 25.0, 20231107010101.0, 0.1, 99.9));
+
+        Path file = Files.createTempFile("daily", ".csv");
+        try {
+            try (DailySummaryExporter e = DailySummaryExporter.csv(file)){
+                g.forEachDay(e);
+            }
+            assertEquals("date,temperature,humidity,temperatures,humidities,errors,percentError\n"
+                    + "20231106,15.3,25.0,2,1,1,25.00\n"
+                    + "20231107,0.1,99.9,1,1,0,0.00\n", Files.readString(file));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testFleetSummaryExactForSmallData(){
+        List<AbsGreenHouse> fleet = new ArrayList<>();
+        ArrayListStrategy all = new ArrayListStrategy();
+        Random random = new Random(37);
+        ParsedDataStrategy[] kinds = {new ArrayListStrategy(), new HashMapStrategy(), new EncodedStrategy(), new HistogramStrategy()};
+        for (int g = 0; g < 8; g++){
+            GreenHouseProduce house = new GreenHouseProduce(cal);
+            house.setStrategy(g < 4 ? kinds[g] : new ArrayListStrategy());
+            List<Double> data = new ArrayList<>();
+            data.add(20231106010101.0 + g);
+            for (int i = 0; i < 50; i++){
+                data.add(random.nextInt(10) == 0 ? -999.0 : random.nextInt(1000) / 10.0);
+                data.add(random.nextInt(1001) / 10.0);
+            }
+            house.pollSensorData(data);
+            all.processData(data);
+            fleet.add(house);
+        }
+
+        ReadingSummary summary = ReadingSummary.of(fleet, ReadingSummary.DEFAULT_CAPACITY);
+        assertTrue(summary.isExact());
+        assertEquals(all.middleReading(), summary.middleReading());
+        assertEquals(all.quantile(0.9), summary.quantile(0.9));
+        assertEquals(all.percentError(), summary.percentError(), 0.0001);
+    }
+
+    @Test
+    public void testQuantileSketchMergedRankError(){
+        Random random = new Random(37);
+        ArrayList<Double> all = new ArrayList<>();
+        QuantileSketch merged = new QuantileSketch(200);
+        for (int part = 0; part < 100; part++){
+            QuantileSketch sketch = new QuantileSketch(200);
+            for (int i = 0; i < 1000; i++){
+                double v = random.nextGaussian();
+                sketch.add(v);
+                all.add(v);
+            }
+            merged.merge(sketch);
+        }
+        all.sort(Double::compare);
+
+        assertFalse(merged.isExact());
+        assertEquals(100000L, merged.size());
+        assertTrue(merged.retained() < 1000);
+        for (double q : new double[]{0.1, 0.5, 0.9}){
+            int rank = Collections.binarySearch(all, merged.quantile(q));
+            assertTrue(Math.abs(rank - q * all.size()) < 0.01 * all.size());
+        }
+    }
+
+    @Test
+    public void testPrimitiveMiddleReadingsMatchAndDoNotAllocate(){
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        ParsedDataStrategy[] strategies = {new ArrayListStrategy(), new HashMapStrategy(), new EncodedStrategy(), new HistogramStrategy()};
+        for (ParsedDataStrategy s : strategies){
+            s.processData(List.of(20231106010101.0, 30.0, -999.0, 10.0, 40.0, 20.0, 50.0, 20231107010101.0, -999.0, 60.0));
+            for (int batch = 0; batch < 3; batch++)
+                s.processData(List.of(20231106020101.0 + batch, 25.0 + batch, 45.0 - batch, 20231107020101.0 + batch, 15.0, 55.0));
+            if (s instanceof AbsParsedDataStrategy)
+                assertTrue(((AbsParsedDataStrategy) s).getDateReadings(20231106).getPendingRuns() > 0);
+
+            assertEquals(s.middleReading(), new SuperTempHumidReading(s.middleTemperature(), s.middleHumidity()));
+            for (double date : new double[]{20231106, 20231107, 20231108})
+                assertEquals(s.middleReading(date), new SuperTempHumidReading(s.middleTemperature(date), s.middleHumidity(date)));
+
+            double sum = 0;
+            long before = threads.getThreadAllocatedBytes(thread);
+            before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 10000; i++)
+                sum += s.middleTemperature() + s.middleHumidity() + s.middleTemperature(20231106 + i % 3) + s.middleHumidity(20231106 + i % 3);
+            long allocated = threads.getThreadAllocatedBytes(thread) - before;
+            assertTrue(allocated < 1024);
+            assertTrue(sum != 0);
+        }
+
+        GreenHouseNursery g = new GreenHouseNursery(cal);
+        g.pollSensorData(List.of(20231106010101.0, 30.0, -999.0, 10.0, 40.0));
+        assertEquals(30.0, g.middleTemperature(), 0.0);
+        assertEquals(40.0, g.middleHumidity(20231106), 0.0);
+        assertEquals(-999.0, g.middleTemperature(20231107), 0.0);
+    }
+
+    @Test
+    public void testSensorWorkloadIsDeterministicAndRealistic(){
+        SensorWorkload w = new SensorWorkload(39, 12, 20231106, 3);
+        w.setErrorStorms(0.01, 10);
+        List<List<Double>> polls = w.polls();
+        SensorWorkload same = new SensorWorkload(39, 12, 20231106, 3);
+        same.setErrorStorms(0.01, 10);
+        assertEquals(polls, same.polls());
+        assertFalse(polls.equals(new SensorWorkload(40, 12, 20231106, 3).polls()));
+
+        Set<Double> dates = new HashSet<>();
+        int storms = 0;
+        long gaps = 0;
+        double previous = 0;
+        for (List<Double> poll : polls){
+            for (int i = 0; i < poll.size(); i += 25){
+                double time = poll.get(i);
+                dates.add(Utility.toDate(time));
+                if (previous > 0 && Utility.toEpochSecond(time) - Utility.toEpochSecond(previous) > 60)
+                    gaps++;
+                boolean storm = true;
+                for (int v = 1; v <= 24; v++)
+                    storm &= Utility.compareDoubles(poll.get(i + v), -999.0);
+                if (storm)
+                    storms++;
+                previous = time;
+            }
+        }
+        assertEquals(Set.of(20231106.0, 20231107.0, 20231108.0), dates);
+        assertTrue(storms > 0);
+        assertTrue(gaps > 0);
+
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        SensorWorkload.replay(polls, g, 0);
+        assertTrue(g.percentError() > 1.0 && g.percentError() < 20.0);
+        assertTrue(g.middleTemperature() > 55 && g.middleTemperature() < 85);
+    }
+
+    @Test
+    public void testSensorWorkloadReplayFromDisk() throws Exception {
+        SensorWorkload w = new SensorWorkload(39, 5, 20231106, 2);
+        w.setFramesPerPoll(7);
+        Path file = Files.createTempFile("workload", ".bin");
+        try {
+            long written = w.writeTo(file);
+            List<List<Double>> read = new ArrayList<>();
+            assertEquals(written, SensorWorkload.readFrom(file, read::add));
+            assertEquals(w.polls(), read);
+
+            GreenHouseNursery fromDisk = new GreenHouseNursery(cal);
+            GreenHouseNursery direct = new GreenHouseNursery(cal);
+            long start = System.nanoTime();
+            assertEquals(written, SensorWorkload.replay(file, fromDisk, 20000));
+            assertTrue(System.nanoTime() - start >= (written - 1) * 1_000_000_000L / 20000);
+            for (List<Double> poll : w.polls())
+                direct.pollSensorData(poll);
+            assertEquals(direct.middleReading(), fromDisk.middleReading());
+            assertEquals(direct.percentError(), fromDisk.percentError(), 0.0);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testSortedRunsSelectsAcrossRuns(){
+        Random random = new Random(41);
+        ArrayList<Double> all = new ArrayList<>();
+        SortedRuns runs = new SortedRuns();
+        for (int r = 0; r < 7; r++){
+            double[] run = new double[r == 3 ? 0 : random.nextInt(200)];
+            for (int i = 0; i < run.length; i++){
+                run[i] = random.nextInt(50) / 10.0;
+                all.add(run[i]);
+            }
+            Arrays.sort(run);
+            if (r % 2 == 0)
+                runs.add(java.nio.DoubleBuffer.wrap(run));
+            else {
+                ArrayList<Double> list = new ArrayList<>();
+                for (double v : run)
+                    list.add(v);
+                runs.add(list);
+            }
+        }
+        all.sort(Double::compare);
+        assertEquals((long) all.size(), runs.size());
+        for (int k = 0; k < all.size(); k++)
+            assertEquals(all.get(k), runs.kth(k), 0.0);
+        assertEquals(Utility.quantile(all, 0.5), runs.quantile(0.5), 0.0);
+        assertEquals(-999.0, new SortedRuns().quantile(0.5), 0.0);
+
+        SortedRuns sequential = new SortedRuns();
+        SortedRuns parallel = new SortedRuns();
+        parallel.setParallel(true);
+        for (int r = 0; r < 2 * SortedRuns.PARALLEL_RUNS; r++){
+            double[] run = new double[random.nextInt(100)];
+            for (int i = 0; i < run.length; i++)
+                run[i] = random.nextGaussian();
+            Arrays.sort(run);
+            sequential.add(java.nio.DoubleBuffer.wrap(run));
+            parallel.add(java.nio.DoubleBuffer.wrap(run));
+        }
+        for (double q = 0; q <= 1.0; q += 0.125)
+            assertEquals(sequential.quantile(q), parallel.quantile(q), 0.0);
+    }
+
+    @Test
+    public void testSpillStoreNeverRewritesAMappedSegment() throws Exception {
+        Path dir = Files.createTempDirectory("spill");
+        try {
+            SpillStore store = new SpillStore(dir);
+            ArrayList<DateReading> days = new ArrayList<DateReading>();
+            DateReading.parse(List.of(20231106010101.0, 2.0, 3.0, 20231106020202.0, 1.0, -999.0), days, true);
+            ArrayList<DateReading> later = new ArrayList<DateReading>();
+            DateReading.parse(List.of(20231106030303.0, 5.0, 7.0, 20231106040404.0, -999.0, 6.0), later, true);
+            DateReading day = days.get(0);
+            day.getTemps().sort(Double::compare);
+            later.get(0).getHums().sort(Double::compare);
+            store.spill(day);
+            java.nio.DoubleBuffer first = store.temps(20231106);
+            day.merge(later.get(0));
+            store.spill(day);
+            assertEquals(2.0, first.get(1), 0);
+            assertEquals(List.of(1.0, 2.0, 5.0), day.getTemps());
+            assertEquals(1.0, store.temps(20231106).get(0), 0);
+            assertEquals(6, store.values());
+
+            SortedRuns temps = new SortedRuns();
+            SortedRuns hums = new SortedRuns();
+            store.addTo(20231106, temps, hums, 2 * 3600, 5 * 3600);
+            assertEquals(2, temps.size());
+            assertEquals(5.0, temps.kth(1), 0);
+            assertEquals(7.0, hums.kth(1), 0);
+
+            DateReading loaded = store.load(20231106);
+            assertEquals(List.of(3.0, 6.0, 7.0), loaded.getHums());
+            temps = new SortedRuns();
+            hums = new SortedRuns();
+            loaded.getHourly().addTo(temps, hums, 0, 4 * 3600);
+            assertEquals(3, temps.size());
+            assertEquals(2, hums.size());
+            assertEquals(0, store.size());
+            try (java.util.stream.Stream<Path> files = Files.list(dir)){
+                assertEquals(store.staleFiles(), files.count());
+            }
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)){
+                files.sorted(Collections.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryBudgetSpillsAndStaysCorrect() throws Exception {
+        SensorWorkload w = new SensorWorkload(41, 5, 20231106, 6);
+        w.setErrorRate(0.05);
+        List<List<Double>> polls = new ArrayList<>(w.polls());
+        polls.add(new SensorWorkload(42, 2, 20231106, 1).polls().get(0));
+
+        Path dir = Files.createTempDirectory("spill");
+        try {
+            AbsParsedDataStrategy[] budgeted = {new ArrayListStrategy(), new HashMapStrategy()};
+            ArrayListStrategy reference = new ArrayListStrategy();
+            long budget = 500_000;
+            for (AbsParsedDataStrategy s : budgeted)
+                s.setMemoryBudget(budget, dir.resolve(s.getClass().getSimpleName()));
+            for (List<Double> poll : polls){
+                reference.processData(poll);
+                for (AbsParsedDataStrategy s : budgeted){
+                    s.processData(poll);
+                    assertTrue(s.footprint() <= budget);
+                }
+            }
+            assertTrue(reference.footprint() > 3 * budget);
+
+            double[] dates = {20231111, 20231105, 20231106, 20231108};
+            double[] expected = new double[8];
+            reference.middleReadings(dates, expected);
+            StringBuilder expectedDays = new StringBuilder();
+            reference.forEachDay((date, temp, hum, temps, hums, errors) ->
+                    expectedDays.append(date).append(temp).append(hum).append(temps).append(hums).append(errors).append(';'));
+            for (AbsParsedDataStrategy s : budgeted){
+                assertTrue(s.spilledDays() > 0);
+                assertEquals(reference.middleReading(), s.middleReading());
+                assertEquals(reference.quantile(0.9), s.quantile(0.9));
+                assertEquals(reference.percentError(), s.percentError(), 0.0000001);
+                for (double date : dates)
+                    assertEquals(reference.middleReading(date), s.middleReading(date));
+                double[] out = new double[8];
+                s.middleReadings(dates, out);
+                assertTrue(Arrays.equals(expected, out));
+                StringBuilder days = new StringBuilder();
+                s.forEachDay((date, temp, hum, temps, hums, errors) ->
+                        days.append(date).append(temp).append(hum).append(temps).append(hums).append(errors).append(';'));
+                assertEquals(expectedDays.toString(), days.toString());
+                for (double[] range : new double[][]{{20231106093000.0, 20231107120000.0}, {20231106061500.0, 20231106181500.0},
+                        {20231108, 20231111}})
+                    assertEquals(reference.middleReading(range[0], range[1]), s.middleReading(range[0], range[1]));
+            }
+        } finally {
+            try (java.util.stream.Stream<Path> files = Files.walk(dir)){
+                files.sorted(Collections.reverseOrder()).forEach(f -> f.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    public void testSegmentedStrategyMatchesArrayListStrategy(){
+        SensorWorkload w = new SensorWorkload(42, 4, 20231104, 10);
+        w.setErrorRate(0.05);
+        List<List<Double>> polls = new ArrayList<>(w.polls());
+        List<Double> late = new SensorWorkload(43, 2, 20231105, 1).polls().get(0);
+        List<Double> lateNewDay = List.of(20231101120000.0, 10.0, 20.0, -999.0, 30.0);
+
+        for (int partitionDays : new int[]{SegmentedStrategy.DAILY, SegmentedStrategy.WEEKLY}){
+            SegmentedStrategy segmented = new SegmentedStrategy(partitionDays);
+            ArrayListStrategy reference = new ArrayListStrategy();
+            for (List<Double> poll : polls){
+                segmented.processData(poll);
+                reference.processData(poll);
+            }
+            List<SealedSegment> before = segmented.segments();
+            double firstMiddle = before.get(0).tempQuantile(0, 0.5);
+            int firstDays = before.get(0).days();
+            for (List<Double> poll : List.of(late, lateNewDay)){
+                segmented.processData(poll);
+                reference.processData(poll);
+            }
+            assertEquals(firstMiddle, before.get(0).tempQuantile(0, 0.5), 0.0);
+            assertEquals(firstDays, before.get(0).days());
+
+            assertEquals(reference.middleReading(), segmented.middleReading());
+            assertEquals(reference.quantile(0.1), segmented.quantile(0.1));
+            assertEquals(reference.percentError(), segmented.percentError(), 0.0000001);
+            double[] dates = {20231113, 20231101, 20231105, 20231110, 20231120};
+            double[] expected = new double[10];
+            double[] out = new double[10];
+            reference.middleReadings(dates, expected);
+            segmented.middleReadings(dates, out);
+            assertTrue(Arrays.equals(expected, out));
+            StringBuilder expectedDays = new StringBuilder();
+            StringBuilder days = new StringBuilder();
+            reference.forEachDay((date, temp, hum, temps, hums, errors) ->
+                    expectedDays.append(date).append(temp).append(hum).append(temps).append(hums).append(errors).append(';'));
+            segmented.forEachDay((date, temp, hum, temps, hums, errors) ->
+                    days.append(date).append(temp).append(hum).append(temps).append(hums).append(errors).append(';'));
+            assertEquals(expectedDays.toString(), days.toString());
+
+            ArrayListStrategy range = new ArrayListStrategy();
+            for (List<Double> poll : polls)
+                for (int i = 0; i < poll.size(); i += 9)
+                    if (poll.get(i) >= 20231106000000.0 && poll.get(i) < 20231109000000.0)
+                        range.processData(poll.subList(i, i + 9));
+            assertEquals(range.middleReading(), segmented.middleReading(20231106, 20231108));
+            assertEquals(new SuperTempHumidReading(-999.0, -999.0), segmented.middleReading(20230101, 20230102));
+        }
+    }
+
+    @Test
+    public void testDeduplicationDropsRedeliveredFrames(){
+        GreenHouseNursery g = new GreenHouseNursery(cal);
+        g.setDeduplication(Duration.ofMinutes(10), 100);
+        g.pollSensorData(List.of(20231106010000.0, 10.0, 20.0, 20231106010100.0, 30.0, 40.0));
+        g.pollSensorData(List.of(20231106010100.0, 30.0, 40.0, 20231106010100.0, 35.0, 45.0, 20231106010200.0, 50.0, 60.0));
+        assertEquals(1L, g.getDuplicateFrames());
+        assertEquals(new SuperTempHumidReading(35.0, 45.0), g.middleReading());
+
+        GreenHouseNursery plain = new GreenHouseNursery(cal);
+        plain.pollSensorData(List.of(20231106010000.0, 10.0, 20.0, 20231106010100.0, 30.0, 40.0));
+        plain.pollSensorData(List.of(20231106010100.0, 30.0, 40.0));
+        assertEquals(0L, plain.getDuplicateFrames());
+        assertEquals(new SuperTempHumidReading(30.0, 40.0), plain.middleReading());
+
+        FrameDedupIndex index = new FrameDedupIndex(60, 4);
+        List<Double> frame = List.of(20231106010000.0, 10.0, 20.0);
+        long fingerprint = FrameDedupIndex.fingerprint(frame, 0, 3);
+        assertTrue(index.add(fingerprint, 0));
+        assertFalse(index.add(fingerprint, 59));
+        assertFalse(index.add(fingerprint, 100));
+        assertTrue(index.add(fingerprint, 200));
+        for (long f = 1; f <= 20; f++)
+            assertTrue(index.add(f * 0x9E3779B97F4A7C15L, 200));
+        assertTrue(index.size() <= 8);
+        assertTrue(fingerprint != FrameDedupIndex.fingerprint(List.of(20231106010000.0, 10.0, 20.1), 0, 3));
+    }
+
+    @Test
+    public void testChannelStrategyMatchesForTempHumidity(){
+        SensorWorkload w = new SensorWorkload(44, 6, 20231106, 3);
+        w.setErrorRate(0.05);
+        ChannelStrategy channels = new ChannelStrategy();
+        ArrayListStrategy reference = new ArrayListStrategy();
+        for (List<Double> poll : w.polls()){
+            channels.processData(poll);
+            reference.processData(poll);
+            assertEquals(reference.middleTemperature(), channels.middleTemperature(), 0.0);
+        }
+        assertEquals(reference.middleReading(), channels.middleReading());
+        assertEquals(reference.quantile(0.75), channels.quantile(0.75));
+        assertEquals(reference.middleReading(20231107), channels.middleReading(20231107));
+        assertEquals(reference.percentError(), channels.percentError(), 0.0000001);
+        StringBuilder expected = new StringBuilder();
+        StringBuilder days = new StringBuilder();
+        reference.forEachDay((date, temp, hum, temps, hums, errors) ->
+                expected.append(date).append(temp).append(hum).append(temps).append(hums).append(errors).append(';'));
+        channels.forEachDay((date, temp, hum, temps, hums, errors) ->
+                days.append(date).append(temp).append(hum).append(temps).append(hums).append(errors).append(';'));
+        assertEquals(expected.toString(), days.toString());
+    }
+
+    @Test
+    public void testChannelStrategyWithMoreChannels(){
+        ChannelSchema schema = new ChannelSchema("temperature", "humidity", "co2", "soil", "light");
+        assertEquals(2, schema.indexOf("co2"));
+        assertEquals(-1, schema.indexOf("wind"));
+        ChannelStrategy s = new ChannelStrategy(schema);
+        s.processData(List.of(20231106010101.0, 70.0, 40.0, 400.0, 0.3, -999.0, 72.0, 42.0, 420.0, -999.0, 900.0,
+                20231107010101.0, 60.0, 50.0, 800.0, 0.5, 1000.0));
+        s.processData(List.of(20231107020202.0, 65.0, -999.0, 600.0, 0.4, 1100.0));
+
+        assertEquals(600.0, s.middleValue(2), 0.0);
+        assertEquals(420.0, s.middleValue(2, 20231106), 0.0);
+        assertEquals(0.4, s.middleValue(3), 0.0);
+        assertEquals(1000.0, s.middleValue(4), 0.0);
+        assertEquals(400.0, s.channelQuantile(2, 0.0), 0.0);
+        assertEquals(25.0, s.percentError(3), 0.0);
+        assertEquals(new SuperTempHumidReading(70.0, 42.0), s.middleReading());
+        assertEquals(15.0, s.percentError(), 0.0000001);
+
+        ChannelStrategy noTemps = new ChannelStrategy(new ChannelSchema("co2"));
+        noTemps.processData(List.of(20231106010101.0, 400.0, 500.0));
+        assertEquals(new SuperTempHumidReading(-999.0, -999.0), noTemps.middleReading());
+        assertEquals(500.0, noTemps.middleValue(0), 0.0);
+    }
+
+    @Test
+    public void testScanKernelsMatchScalarScans(){
+        Random random = new Random(45);
+        double[] a = new double[1001];
+        for (int i = 0; i < a.length; i++)
+            a[i] = random.nextInt(10) == 0 ? 20231106000000.0 + i : random.nextInt(4) == 0 ? -999.0 : random.nextInt(1000) / 10.0;
+        int[] starts = new int[a.length];
+        int[] scalarStarts = new int[a.length];
+        double[] out = new double[a.length];
+        double[] scalarOut = new double[a.length];
+
+        assertEquals(ScanKernels.countErrorsScalar(a, 3, 999), ScanKernels.countErrors(a, 3, 999));
+        int n = ScanKernels.dateTimes(a, 0, a.length, starts);
+        assertEquals(ScanKernels.dateTimesScalar(a, 0, a.length, scalarStarts), n);
+        assertTrue(Arrays.equals(Arrays.copyOf(scalarStarts, n), Arrays.copyOf(starts, n)));
+        n = ScanKernels.removeErrors(a, 0, a.length, out, 0);
+        assertEquals(ScanKernels.removeErrorsScalar(a, 0, a.length, scalarOut, 0), n);
+        assertArrayEquals(Arrays.copyOf(scalarOut, n), Arrays.copyOf(out, n), 0.0);
+        n = ScanKernels.filterRange(a, 0, a.length, 10.0, 50.0, out);
+        assertEquals(ScanKernels.filterRangeScalar(a, 0, a.length, 10.0, 50.0, scalarOut), n);
+        assertArrayEquals(Arrays.copyOf(scalarOut, n), Arrays.copyOf(out, n), 0.0);
+        ScanKernels.minMax(a, 5, 500, out);
+        ScanKernels.minMaxScalar(a, 5, 500, scalarOut);
+        assertArrayEquals(Arrays.copyOf(scalarOut, 2), Arrays.copyOf(out, 2), 0.0);
+
+        double[] frames = {20231106010101.0, 70.0, -999.0, 72.0, 42.0, 20231107010101.0, -999.0, 50.0, 20231107020202.0};
+        ChannelStrategy s = new ChannelStrategy();
+        s.processData(frames, 0, frames.length);
+        assertEquals(new SuperTempHumidReading(72.0, 50.0), s.middleReading());
+        assertEquals(new SuperTempHumidReading(72.0, 42.0), s.middleReading(20231106));
+        assertEquals(100.0 / 3, s.percentError(0), 0.0000001);
+    }
+
+    @Test
+    public void testFlightRecorderEventsCoverIngestAndQueries() throws Exception {
+        Path file = Files.createTempFile("greenhouse", ".jfr");
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()){
+            recording.enable(IngestEvent.class).withThreshold(Duration.ZERO);
+            recording.enable(QueryEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            GreenHouseNursery g = new GreenHouseNursery(new GregorianCalendar(2023, 0, 1));
+            g.pollSensorData(List.of(20231106010101.0, 70.0, 40.0, 20231107010101.0, 72.0, -999.0));
+            g.middleReading(20231106);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<String> stages = new ArrayList<String>();
+        List<String> queries = new ArrayList<String>();
+        for (jdk.jfr.consumer.RecordedEvent e : jdk.jfr.consumer.RecordingFile.readAllEvents(file)){
+            if (e.getEventType().getName().equals("greenhouse.Ingest")){
+                stages.add(e.getString("stage"));
+                if (e.getString("stage").equals("filterData")){
+                    assertEquals(6, e.getInt("values"));
+                    assertEquals(2, e.getInt("frames"));
+                    assertEquals(2, e.getInt("days"));
+                }
+            } else if (e.getEventType().getName().equals("greenhouse.Query")){
+                queries.add(e.getString("query"));
+                assertEquals("ArrayListStrategy", e.getString("strategy"));
+                assertEquals(20231106, e.getLong("date"));
+            }
+        }
+        Files.delete(file);
+        assertEquals(List.of("filterData", "parseData", "mergeData", "processData"), stages);
+        assertEquals(List.of("middleReading"), queries);
+    }
+
+    @Test
+    public void testFlightRecorderEventsCoverEveryStrategy() throws Exception {
+        Path file = Files.createTempFile("greenhouse", ".jfr");
+        try (jdk.jfr.Recording recording = new jdk.jfr.Recording()){
+            recording.enable(IngestEvent.class).withThreshold(Duration.ZERO);
+            recording.start();
+            ParsedDataStrategy[] strategies = {new HistogramStrategy(), new EncodedStrategy(), new SegmentedStrategy(),
+                    new ChannelStrategy()};
+            for (ParsedDataStrategy strategy : strategies)
+                strategy.processData(List.of(20231106010101.0, 70.0, 40.0, 20231107010101.0, 72.0, -999.0));
+            recording.stop();
+            recording.dump(file);
+        }
+        List<String> stages = new ArrayList<String>();
+        for (jdk.jfr.consumer.RecordedEvent e : jdk.jfr.consumer.RecordingFile.readAllEvents(file)){
+            stages.add(e.getString("source") + "." + e.getString("stage"));
+            assertEquals(2, e.getInt("frames"));
+            assertEquals(2, e.getInt("days"));
+        }
+        Files.delete(file);
+        assertEquals(List.of("HistogramStrategy.parseData", "EncodedStrategy.parseData", "EncodedStrategy.mergeData",
+                "SegmentedStrategy.parseData", "SegmentedStrategy.mergeData", "ChannelStore.parseData"), stages);
+    }
+
+    @Test
+    public void testRingHandoffMatchesInlineProcessing(){
+        List<List<Double>> polls = new SensorWorkload(47, 3, 20231106, 2).polls();
+        GreenHouseProduce inline = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+        GreenHouseProduce ringed = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+        ringed.enableRingHandoff(100, ReadingRing.PARK);
+        assertEquals(128, ringed.getReadingRing().capacity());
+        for (int i = 0; i < polls.size(); i++){
+            List<Double> poll = polls.get(i);
+            for (int start = 0; start < poll.size(); ){
+                int end = start + 1;
+                while (end < poll.size() && !Utility.isDateTime(poll.get(end)))
+                    end++;
+                inline.pollSensorData(poll.subList(start, end));
+                ringed.pollSensorData(poll.subList(start, end));
+                start = end;
+            }
+            if (i % 10 == 0)
+                assertEquals(inline.middleReading(), ringed.middleReading());
+        }
+        ArrayList<Double> large = new ArrayList<Double>();
+        for (int f = 0; f < 30; f++)
+            large.addAll(List.of(20231110000000.0 + f, 60.0 + f, 40.0, -999.0, 45.0));
+        inline.pollSensorData(large);
+        ringed.pollSensorData(large);
+
+        assertEquals(inline.middleReading(), ringed.middleReading());
+        assertEquals(inline.middleReading(20231106), ringed.middleReading(20231106));
+        assertEquals(inline.percentError(), ringed.percentError(), 0.0);
+        assertEquals(0, ringed.getReadingRing().size());
+        assertTrue(ringed.getReadingRing().getBatches() > 0);
+        ringed.disableRingHandoff();
+        assertNull(ringed.getReadingRing());
+    }
+
+    @Test
+    public void testPollsRacingRingHandoffSwitchesAreNotLost() throws Exception {
+        ArrayList<Double> sunk = new ArrayList<Double>();
+        Object lock = new Object();
+        ReadingRing closed = new ReadingRing(16, ReadingRing.PARK, sunk::addAll, lock);
+        closed.close();
+        closed.put(List.of(20231106010101.0, 70.0, 40.0));
+        assertEquals(List.of(20231106010101.0, 70.0, 40.0), sunk);
+
+        List<List<Double>> polls = new SensorWorkload(47, 3, 20231106, 2).polls();
+        GreenHouseProduce inline = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+        GreenHouseProduce switched = new GreenHouseProduce(new GregorianCalendar(2023, 0, 1));
+        for (List<Double> poll : polls)
+            inline.pollSensorData(poll);
+        switched.enableRingHandoff(64, ReadingRing.YIELD);
+        Thread poller = new Thread(() -> {
+            for (List<Double> poll : polls)
+                switched.pollSensorData(poll);
+        });
+        poller.start();
+        while (poller.isAlive()){
+            switched.disableRingHandoff();
+            switched.enableRingHandoff(64, ReadingRing.YIELD);
+        }
+        poller.join();
+        assertEquals(inline.middleReading(), switched.middleReading());
+        assertEquals(inline.percentError(), switched.percentError(), 0.0);
+        switched.disableRingHandoff();
+    }
+
+    @Test
+    public void testIntradayRangeMediansMatchAScan(){
+        Random random = new Random(48);
+        ArrayList<Double> data = new ArrayList<Double>();
+        List<double[]> frames = new ArrayList<double[]>();
+        for (int day = 6; day <= 7; day++){
+            for (int minute = 0; minute < 24 * 60; minute += 7){
+                double dateTime = 20231100000000.0 + day * 1000000.0 + minute / 60 * 10000 + minute % 60 * 100 + 30;
+                double temp = random.nextInt(8) == 0 ? -999.0 : 50 + random.nextInt(400) / 10.0;
+                double hum = random.nextInt(1000) / 10.0;
+                data.addAll(List.of(dateTime, temp, hum));
+                frames.add(new double[]{dateTime, temp, hum});
+            }
+        }
+        ArrayListStrategy list = new ArrayListStrategy();
+        ParsedDataStrategy[] strategies = {list, new HashMapStrategy(), new SegmentedStrategy(SegmentedStrategy.DAILY),
+                new EncodedStrategy(), new ChannelStrategy()};
+        for (ParsedDataStrategy s : strategies){
+            s.processData(data.subList(0, data.size() / 9 * 3));
+            s.processData(data.subList(data.size() / 9 * 3, data.size()));
+        }
+        EncodedStrategy encodedByFrame = new EncodedStrategy();
+        for (int i = 0; i < data.size(); i += 3)
+            encodedByFrame.processData(data.subList(i, i + 3));
+        HistogramStrategy histogram = new HistogramStrategy();
+        histogram.processData(data);
+
+        double[][] ranges = {{20231106180000.0, 20231107055959.0}, {20231106134512.0, 20231106134512.0},
+                {20231107101500.0, 20231107124459.0}, {20231106, 20231106}, {20231106, 20231107}, {20231108, 20231109},
+                {20231105120000.0, 20231107}, {20231106000000.0, 20231107}};
+        for (double[] range : ranges){
+            double start = Utility.rangeStart(range[0]);
+            double end = Utility.rangeEnd(range[1]);
+            //the exact range, then the whole hours it touches, which histograms count
+            double[][] windows = {{start, end}, {Math.floor(start / 10000) * 10000, Math.floor(end / 10000) * 10000 + 5959}};
+            TempHumidReading[] expected = new TempHumidReading[2];
+            for (int w = 0; w < 2; w++){
+                ArrayList<Double> temps = new ArrayList<Double>();
+                ArrayList<Double> hums = new ArrayList<Double>();
+                for (double[] f : frames){
+                    if (f[0] >= windows[w][0] && f[0] <= windows[w][1]){
+                        if (f[1] != -999.0)
+                            temps.add(f[1]);
+                        hums.add(f[2]);
+                    }
+                }
+                Collections.sort(temps);
+                Collections.sort(hums);
+                expected[w] = new SuperTempHumidReading(Utility.quantile(temps, 0.5), Utility.quantile(hums, 0.5));
+            }
+            for (ParsedDataStrategy s : strategies)
+                assertEquals(s.getClass().getSimpleName(), expected[0], s.middleReading(range[0], range[1]));
+            assertEquals(expected[0], encodedByFrame.middleReading(range[0], range[1]));
+            assertEquals(expected[1], histogram.middleReading(range[0], range[1]));
+        }
+        assertEquals(list.middleReading(20231107), list.middleReading(20231107, 20231107));
+    }
+
+    @Test
+    public void testAsyncQueriesCoalesceAndCancel() throws Exception {
+        GreenHouseNursery g = new GreenHouseNursery(new GregorianCalendar(2023, 0, 1));
+        g.pollSensorData(List.of(20231106010101.0, 70.0, 40.0, 72.0, -999.0, 20231107010101.0, 60.0, 50.0));
+        ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+        g.setQueryExecutor(tasks::add);
+
+        CompletableFuture<TempHumidReading> a = g.middleReadingAsync();
+        CompletableFuture<TempHumidReading> b = g.middleReadingAsync();
+        CompletableFuture<TempHumidReading> onDate = g.middleReadingAsync(20231106);
+        CompletableFuture<Double> cancelled = g.percentErrorAsync();
+        assertEquals(3, tasks.size());
+        assertEquals(1, g.getQueryCoalescer().getCoalesced());
+        assertTrue(cancelled.cancel(true));
+        while (!tasks.isEmpty())
+            tasks.poll().run();
+        assertEquals(g.middleReading(), a.get());
+        assertEquals(g.middleReading(), b.get());
+        assertEquals(g.middleReading(20231106), onDate.get());
+        assertEquals(2, g.getQueryCoalescer().getComputations());
+
+        CompletableFuture<Double> first = g.percentErrorAsync();
+        CompletableFuture<Double> second = g.percentErrorAsync();
+        first.cancel(true);
+        tasks.poll().run();
+        assertEquals(g.percentError(), second.get(), 0.0);
+        assertEquals(3, g.getQueryCoalescer().getComputations());
+
+        CompletableFuture<TempHumidReading> late = g.middleReadingAsync().orTimeout(10, TimeUnit.MILLISECONDS);
+        try {
+            late.join();
+            fail("nothing runs the query");
+        } catch (CompletionException e){
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+        tasks.clear();
+
+        ReadingSummary summary = g.summarize(16);
+        assertEquals(summary.percentError(), summary.percentErrorAsync().get(), 0.0);
+    }
+
+    @Test
+    public void testCloseStopsTheDefaultQueryThread() throws Exception {
+        GreenHouseNursery g = new GreenHouseNursery(new GregorianCalendar(2023, 0, 1));
+        g.pollSensorData(List.of(20231106010101.0, 70.0, 40.0));
+        assertEquals(g.middleReading(), g.middleReadingAsync().get());
+        g.close();
+        assertEquals(g.percentError(), g.percentErrorAsync().get(), 0.0);
+        g.close();
+        g.close();
+        ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+        g.setQueryExecutor(tasks::add);
+        CompletableFuture<TempHumidReading> queued = g.middleReadingAsync();
+        g.close();
+        tasks.poll().run();
+        assertEquals(g.middleReading(), queued.get());
+    }
+
+    @Test
+    public void testPollsConcurrentWithAsyncQueriesNeverFailAQuery() throws Exception {
+        AbsGreenHouse[] greenhouses = {new GreenHouseNursery(new GregorianCalendar(2023, 0, 1)),
+                new GreenHouseProduce(new GregorianCalendar(2023, 0, 1))};
+        for (AbsGreenHouse g : greenhouses){
+            Thread poller = new Thread(() -> {
+                for (int p = 0; p < 2000; p++){
+                    ArrayList<Double> poll = new ArrayList<Double>();
+                    for (int i = 0; i < 20; i++){
+                        int second = p * 20 + i;
+                        poll.addAll(List.of(20231106000000.0 + second / 3600 * 10000 + second / 60 % 60 * 100 + second % 60,
+                                (double) ((p + i) % 90), i % 5 == 0 ? -999.0 : 40.0));
+                    }
+                    g.pollSensorData(poll);
+                }
+            });
+            poller.start();
+            ArrayList<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>();
+            while (poller.isAlive()){
+                futures.add(g.middleReadingAsync());
+                futures.add(g.percentErrorAsync());
+                futures.add(g.middleReadingAsync(20231106));
+                Thread.yield();
+            }
+            poller.join();
+            for (CompletableFuture<?> f : futures)
+                f.get();
+            assertEquals(new SuperTempHumidReading(44.0, 40.0), g.middleReadingAsync().get());
+            assertEquals(10.0, g.percentErrorAsync().get(), 0.0);
+            g.close();
+        }
+    }
+
+    @Test
+    public void testLsmDayRunsCoverEveryBatch() {
+        ArrayList<Double> data = new ArrayList<Double>();
+        for (int i = 0; i < 40; i++)
+            data.addAll(List.of(20231106000000.0 + i * 100, (double) ((i * 37) % 41), i % 7 == 0 ? -999.0 : (double) ((i * 13) % 29)));
+        data.addAll(List.of(20231107000000.0, 80.0, 30.0));
+        ArrayListStrategy whole = new ArrayListStrategy();
+        whole.processData(data);
+
+        ArrayDeque<Runnable> tasks = new ArrayDeque<Runnable>();
+        HashMapStrategy background = new HashMapStrategy();
+        background.setCompactionExecutor(tasks::add);
+        ArrayListStrategy inline = new ArrayListStrategy();
+        for (int i = 0; i < data.size(); i += 3){
+            background.processData(data.subList(i, i + 3));
+            inline.processData(data.subList(i, i + 3));
+            assertTrue(inline.getDateReadings(20231106).getPendingRuns() <= DateReading.MAX_RUNS);
+            assertTrue(background.getDateReadings(20231106).getPendingRuns() <= DateReading.MAX_RUNS);
+        }
+        assertFalse(tasks.isEmpty());
+        DateReading day = background.getDateReadings(20231106);
+        assertTrue(day.getPendingRuns() > 0);
+        for (ParsedDataStrategy s : List.of(background, inline)){
+            assertEquals(whole.middleReading(20231106), s.middleReading(20231106));
+            assertEquals(whole.quantile(0.9, 20231106), s.quantile(0.9, 20231106));
+            assertEquals(whole.middleReading(20231106, 20231107), s.middleReading(20231106, 20231107));
+            assertEquals(whole.middleReading(20231106003000.0, 20231106005959.0), s.middleReading(20231106003000.0, 20231106005959.0));
+            assertEquals(whole.percentError(), s.percentError(), 0.001);
+        }
+
+        int pending = day.getPendingRuns();
+        while (!tasks.isEmpty())
+            tasks.poll().run();
+        assertTrue(day.getPendingRuns() < pending);
+        assertEquals(whole.middleReading(20231106), background.middleReading(20231106));
+        assertEquals(whole.getDateReadings(20231106).getTemps(), inline.getDateReadings(20231106).getTemps());
+        assertEquals(0, inline.getDateReadings(20231106).getPendingRuns());
+        assertEquals(whole.getDateReadings(20231106).getHums(), day.getHums());
+        assertEquals(0, day.getPendingRuns());
+    }
+
+    @Test
+    public void testRuleWindowsArePinnedPastTheCache() {
+        WindowedReadings w = new WindowedReadings(Duration.ofHours(1));
+        AlertEngine engine = new AlertEngine(w);
+        int rules = 2 * WindowedReadings.MAX_WINDOWS + 4;
+        for (int m = 1; m <= rules; m++)
+            engine.addRule(new MedianAlertRule("rule " + m, m % 2 == 0, Duration.ofMinutes(m), 50.0));
+        assertEquals(rules, w.windowCount());
+
+        WindowedReadings reference = new WindowedReadings(Duration.ofHours(1));
+        for (int i = 0; i < 120; i++){
+            List<Double> poll = List.of(20231106010000.0 + i / 60 * 100 + i % 60, (double) (i * 37 % 100), (double) (i * 53 % 100));
+            w.ingest(poll);
+            engine.ingest(poll);
+            reference.ingest(poll);
+            for (int s = 1; s <= 2 * WindowedReadings.MAX_WINDOWS; s++)
+                w.middleReading(Duration.ofSeconds(s * 7));
+        }
+        assertEquals(rules + WindowedReadings.MAX_WINDOWS, w.windowCount());
+        for (int m = 1; m <= rules; m++)
+            assertEquals(reference.middleReading(Duration.ofMinutes(m)), w.middleReading(Duration.ofMinutes(m)));
+        assertEquals(rules + WindowedReadings.MAX_WINDOWS, w.windowCount());
+    }
+
+    @Test
+    public void testWindowCacheIsBoundedAndRejectsSubSecondWindows() {
+        WindowedReadings w = new WindowedReadings(Duration.ofHours(1));
+        w.ingest(List.of(20231106010000.0, 10.0, 10.0, 20231106010100.0, 20.0, 30.0, 20231106010200.0, 30.0, 50.0));
+        for (int s = 1; s <= 3 * WindowedReadings.MAX_WINDOWS; s++)
+            w.middleReading(Duration.ofSeconds(s * 60));
+        assertEquals(WindowedReadings.MAX_WINDOWS, w.windowCount());
+        assertEquals(new SuperTempHumidReading(20.0, 30.0), w.middleReading(Duration.ofSeconds(150)));
+        w.ingest(List.of(20231106010300.0, 40.0, 70.0));
+        assertEquals(new SuperTempHumidReading(30.0, 50.0), w.middleReading(Duration.ofSeconds(150)));
+        assertEquals(new SuperTempHumidReading(30.0, 50.0), w.middleReading(Duration.ofSeconds(60 * 10)));
+        try {
+            w.middleReading(Duration.ofMillis(500));
+            fail("sub-second windows collapse to nothing");
+        } catch (IllegalArgumentException e){
+        }
+    }
+
+    @Test
+    public void testAlertRulesBelowThresholdAndSustained(){
+        GreenHouseProduce g = new GreenHouseProduce(cal);
+        ArrayList<String> alerts = new ArrayList<>();
+        g.addAlertRule(new MedianAlertRule("frost", false, Duration.ofMinutes(5), 40.0, true, Duration.ofMinutes(10)));
+        g.addAlertListener(new AlertListener() {
+            @Override
+            public void alertRaised(AbsAlertRule rule, double datetime, double value) {
+                alerts.add("+" + rule.getName() + "@" + (long) datetime);
+            }
+
+            @Override
+            public void alertCleared(AbsAlertRule rule, double datetime, double value) {
+                alerts.add("-" + rule.getName() + "@" + (long) datetime);
+            }
+        });
+
+        g.pollSensorData(List.of(20231106010000.0, 35.0, 50.0));
+        g.pollSensorData(List.of(20231106010600.0, 50.0, 50.0));
+        assertEquals(List.of(), alerts);
+
+        g.pollSensorData(List.of(20231106011200.0, 30.0, 50.0));
+        g.pollSensorData(List.of(20231106011800.0, 32.0, 50.0));
+        assertEquals(List.of(), alerts);
+        g.pollSensorData(List.of(20231106012200.0, 31.0, 50.0));
+        assertEquals(List.of("+frost@20231106012200"), alerts);
+
+        g.pollSensorData(List.of(20231106013000.0, 60.0, 50.0));
+        g.pollSensorData(List.of(20231106013500.0, 20.0, 50.0));
+        g.pollSensorData(List.of(20231106014100.0, 61.0, 50.0));
+        g.pollSensorData(List.of(20231106014700.0, 62.0, 50.0));
+        assertEquals(List.of("+frost@20231106012200"), alerts);
+        g.pollSensorData(List.of(20231106015200.0, 63.0, 50.0));
+        assertEquals(List.of("+frost@20231106012200", "-frost@20231106015200"), alerts);
+    }
+
+    @Test
+    public void testSensorIngestServerTakesTheLargestFrame() throws Exception {
+        new SensorIngestServer(new GreenHouseNursery(cal), new java.net.InetSocketAddress(0)).close();
+
+        GreenHouseNursery served = new GreenHouseNursery(cal);
+        ArrayList<Double> frame = new ArrayList<Double>();
+        frame.add(20231106010101.0);
+        for (int i = 0; i < Short.MAX_VALUE; i++){
+            frame.add((i % 900) / 10.0);
+            frame.add((i % 1000) / 10.0);
+        }
+        List<Double> small = List.of(20231106010100.0, 70.0, 40.0);
+        List<Double> after = List.of(20231106010102.0, 71.0, 41.0);
+        java.nio.ByteBuffer buffer = java.nio.ByteBuffer.allocate(SensorFrameCodec.MAX_FRAME_SIZE
+                + 2 * SensorFrameCodec.frameSize(1));
+        SensorFrameCodec.encode(small, buffer);
+        SensorFrameCodec.encode(frame, buffer);
+        SensorFrameCodec.encode(after, buffer);
+        assertFalse(buffer.hasRemaining());
+        buffer.flip();
+        assertEquals(SensorFrameCodec.frameSize(1), SensorFrameCodec.nextFrameSize(buffer));
+
+        try (SensorIngestServer server = new SensorIngestServer(served,
+                new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+            try (java.nio.channels.SocketChannel c = java.nio.channels.SocketChannel.open(
+                    new java.net.InetSocketAddress(java.net.InetAddress.getLoopbackAddress(), server.getPort()))) {
+                while (buffer.hasRemaining())
+                    c.write(buffer);
+                long deadline = System.currentTimeMillis() + 5000;
+                while (server.getFramesReceived() < 3 && System.currentTimeMillis() < deadline)
+                    Thread.sleep(1);
+            }
+            assertEquals(3, server.getFramesReceived());
+            assertNull(server.getAcceptFailure());
+        }
+
+        GreenHouseNursery direct = new GreenHouseNursery(cal);
+        direct.pollSensorData(small);
+        direct.pollSensorData(frame);
+        direct.pollSensorData(after);
+        assertEquals(direct.middleReading(), served.middleReading());
+    }
+
+    @Test
+    public void testPackedSortedValuesRoundTrip(){
+        Random random = new Random(32);
+        for (int n : new int[]{0, 1, 127, 128, 129, 1000}){
+            int[] values = new int[n];
+            for (int i = 0; i < n; i++)
+                values[i] = i % 97 == 0 ? (random.nextBoolean() ? Integer.MIN_VALUE : Integer.MAX_VALUE) : random.nextInt(1000);
+            Arrays.sort(values);
+            PackedSortedValues packed = new PackedSortedValues(values, n);
+            assertEquals(n, packed.size());
+            for (int i = 0; i < n; i++)
+                assertEquals(values[i], packed.get(i));
+            for (int probe : new int[]{Integer.MIN_VALUE, -1, 0, 500, 999, Integer.MAX_VALUE}){
+                int atMost = 0;
+                for (int v : values)
+                    atMost += v <= probe ? 1 : 0;
+                assertEquals(atMost, packed.upperBound(probe));
+            }
+            int[] more = {999, 0, 500};
+            PackedSortedValues merged = packed.with(more, 2);
+            assertEquals(n + 2, merged.size());
+            assertEquals(packed.upperBound(999) + 2, merged.upperBound(999));
+            assertEquals(packed.upperBound(0) + 1, merged.upperBound(0));
+        }
+
+        int[] close = new int[1000];
+        for (int i = 0; i < close.length; i++)
+            close[i] = 500 + i / 4;
+        assertTrue(new PackedSortedValues(close, close.length).packedBytes() < close.length);
+    }
+
+    @Test
+    public void testFenwickHistogramOverflowMergesInBatches(){
+        FenwickHistogram h = new FenwickHistogram(0.0, 100.0);
+        ArrayList<Double> all = new ArrayList<Double>();
+        Random random = new Random(34);
+        for (int i = 0; i < 5000; i++){
+            double v = random.nextInt(3) == 0 ? random.nextInt(1000) / 10.0 : random.nextDouble() * 200 - 50;
+            h.add(v);
+            all.add(v);
+            if (i % 700 == 0){
+                ArrayList<Double> sorted = new ArrayList<Double>(all);
+                sorted.sort(Double::compare);
+                assertEquals(sorted.get(sorted.size() / 2), h.kth(sorted.size() / 2), 0.0);
+                assertEquals(sorted.get(0), h.kth(0), 0.0);
+            }
+        }
+        all.sort(Double::compare);
+        ArrayList<Double> visited = new ArrayList<Double>();
+        h.forEach(visited::add);
+        assertEquals(all, visited);
+        assertEquals(all.size(), h.size());
+    }
+
+    @Test
+    public void testQuantileSketchMemoryDoesNotGrowWithLevels(){
+        Random random = new Random(37);
+        QuantileSketch small = new QuantileSketch(200);
+        QuantileSketch large = new QuantileSketch(200);
+        for (int i = 0; i < 10000; i++)
+            small.add(random.nextDouble());
+        for (int i = 0; i < 2000000; i++)
+            large.add(random.nextDouble());
+        assertTrue(small.retained() <= 3 * 200 + 64);
+        assertTrue(large.retained() <= 3 * 200 + 64);
+        assertTrue(large.retained() < 2 * small.retained());
+        assertEquals(0.5, large.quantile(0.5), 0.02);
+    }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.function.DoubleConsumer;
+
+/**
+ * An exact multiset of values, counted in 0.1 wide bins over a fixed range with a Fenwick tree.
+ * Adding a value is O(log B) and finding the k-th smallest is O(log B) for B bins.
+ * Values outside the range, or not exactly on the 0.1 grid, go to an overflow run so answers stay exact: they are appended
+ * to a buffer in O(1), which is sorted and merged into the sorted run in one pass when a query next needs it.
+ */
+public class FenwickHistogram {
+
+    /**
+     * The Fenwick tree of bin counts, 1-indexed
+     */
+    private int[] tree;
+
+    /**
+     * The lowest binned value in tenths
+     */
+    private int offset;
+
+    /**
+     * The number of values in the bins
+     */
+    private int binned;
+
+    /**
+     * Values that do not fall in a bin, sorted, up to overflowCount
+     */
+    private double[] overflow;
+
+    /**
+     * The number of values in overflow
+     */
+    private int overflowCount;
+
+    /**
+     * Values that do not fall in a bin added since the overflow run was last merged, unsorted, up to pendingCount
+     */
+    private double[] pending;
+
+    /**
+     * The number of values in pending
+     */
+    private int pendingCount;
+
+    /**
+     * Constructs an empty histogram
+     * @param min the lowest binned value
+     * @param max the highest binned value
+     */
+    public FenwickHistogram(double min, double max){
+        offset = (int) Math.round(min * 10.0);
+        tree = new int[(int) Math.round(max * 10.0) - offset + 2];
+        binned = 0;
+        overflow = new double[0];
+        pending = new double[8];
+    }
+
+    /**
+     * Adds a value
+     * @param value the value
+     */
+    public void add(double value){
+        long tenths = Math.round(value * 10.0);
+        long bin = tenths - offset;
+        if (tenths / 10.0 == value && bin >= 0 && bin < tree.length - 1){
+            for (int i = (int) bin + 1; i < tree.length; i += i & -i)
+                tree[i]++;
+            binned++;
+        } else
+            addOverflow(value);
+    }
+
+    /**
+     * Adds every value of another histogram over the same bins, in O(B) for B bins: Fenwick trees add bin by bin
+     * @param other the other histogram
+     * @throws IllegalArgumentException if the other histogram's bins are not these
+     */
+    public void addAll(FenwickHistogram other){
+        if (other.offset != offset || other.tree.length != tree.length)
+            throw new IllegalArgumentException("the histograms have different bins");
+        for (int i = 1; i < tree.length; i++)
+            tree[i] += other.tree[i];
+        binned += other.binned;
+        for (int i = 0; i < other.overflowCount; i++)
+            addOverflow(other.overflow[i]);
+        for (int i = 0; i < other.pendingCount; i++)
+            addOverflow(other.pending[i]);
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size(){
+        return binned + overflowCount + pendingCount;
+    }
+
+    /**
+     * @return the number of values that did not fall in a bin
+     */
+    public int overflowSize(){
+        return overflowCount + pendingCount;
+    }
+
+    /**
+     * Finds the k-th smallest value, by binary searching how many of the k + 1 smallest values are in the overflow list
+     * @param k the index in the sorted values, less than size()
+     * @return the value
+     */
+    public double kth(int k){
+        mergePending();
+        int lo = Math.max(0, k + 1 - binned);
+        int hi = Math.min(k + 1, overflowCount);
+        while (lo < hi){
+            int j = (lo + hi) >>> 1;
+            int i = k + 1 - j;
+            if (i > 0 && binnedKth(i - 1) > overflow[j])
+                lo = j + 1;
+            else
+                hi = j;
+        }
+        int i = k + 1 - lo;
+        if (i == 0)
+            return overflow[lo - 1];
+        if (lo == 0)
+            return binnedKth(i - 1);
+        return Math.max(binnedKth(i - 1), overflow[lo - 1]);
+    }
+
+    /**
+     * Gives every value to an action in ascending order
+     * @param action receives each value
+     */
+    public void forEach(DoubleConsumer action){
+        mergePending();
+        int[] counts = tree.clone();
+        for (int i = counts.length - 1; i > 0; i--){
+            int parent = i + (i & -i);
+            if (parent < counts.length)
+                counts[parent] -= counts[i];
+        }
+        int j = 0;
+        for (int i = 1; i < counts.length; i++){
+            double value = (i - 1 + offset) / 10.0;
+            while (j < overflowCount && overflow[j] < value)
+                action.accept(overflow[j++]);
+            for (int c = 0; c < counts[i]; c++)
+                action.accept(value);
+        }
+        while (j < overflowCount)
+            action.accept(overflow[j++]);
+    }
+
+    //helpers
+    /**
+     * Appends a value that does not fall in a bin to the overflow buffer
+     * @param value the value
+     */
+    private void addOverflow(double value){
+        if (pendingCount == pending.length)
+            pending = Arrays.copyOf(pending, pendingCount * 2);
+        pending[pendingCount++] = value;
+    }
+
+    /**
+     * Sorts the values added to the overflow since the last merge and merges them into the sorted run
+     */
+    private void mergePending(){
+        if (pendingCount == 0)
+            return;
+        Arrays.sort(pending, 0, pendingCount);
+        double[] merged = new double[overflowCount + pendingCount];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < overflowCount && j < pendingCount)
+            merged[k++] = Double.compare(overflow[i], pending[j]) <= 0 ? overflow[i++] : pending[j++];
+        while (i < overflowCount)
+            merged[k++] = overflow[i++];
+        while (j < pendingCount)
+            merged[k++] = pending[j++];
+        overflow = merged;
+        overflowCount = merged.length;
+        pendingCount = 0;
+    }
+
+    /**
+     * Finds the k-th smallest binned value by descending the Fenwick tree
+     * @param k the index in the sorted binned values, less than binned
+     * @return the value
+     */
+    private double binnedKth(int k){
+        int pos = 0;
+        int remaining = k;
+        for (int step = Integer.highestOneBit(tree.length - 1); step > 0; step >>= 1){
+            int next = pos + step;
+            if (next < tree.length && tree[next] <= remaining){
+                pos = next;
+                remaining -= tree[next];
+            }
+        }
+        return (pos + offset) / 10.0;
+    }
+}
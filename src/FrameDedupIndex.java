@@ -0,0 +1,170 @@
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A bounded set of recently seen frames, for dropping frames delivered more than once.
+ * Frames are identified by a 64 bit fingerprint of their datetime and values, kept in two generations of open addressing
+ * tables of primitive longs. Each generation covers a window of time; once a frame's time passes the end of the newer
+ * generation, the older one is cleared and reused, so fingerprints expire with the clock after one to two windows.
+ * A generation that fills up early is rotated early, so memory stays fixed at the cost of forgetting frames sooner.
+ */
+public class FrameDedupIndex {
+
+    /**
+     * The fingerprint slots of the newer and older generations, 0 for empty
+     */
+    private long[][] tables;
+
+    /**
+     * The number of fingerprints in each generation
+     */
+    private int[] sizes;
+
+    /**
+     * The index in tables of the newer generation
+     */
+    private int newer;
+
+    /**
+     * The most fingerprints one generation holds
+     */
+    private int maxFrames;
+
+    /**
+     * The time covered by a generation, in seconds
+     */
+    private long windowSeconds;
+
+    /**
+     * The epoch second at which the newer generation started
+     */
+    private long generationStart;
+
+    /**
+     * The date (YYYYMMDD) of the last frame added, so that its epoch day is only worked out once
+     */
+    private long lastDate;
+
+    /**
+     * The epoch day of lastDate
+     */
+    private long lastEpochDay;
+
+    /**
+     * Constructs an empty index
+     * @param windowSeconds the time covered by a generation, at least 1; a frame is remembered for at least this long
+     * @param maxFrames the most frames remembered per generation, at least 1
+     * @throws IllegalArgumentException if either is less than 1
+     */
+    public FrameDedupIndex(long windowSeconds, int maxFrames){
+        if (windowSeconds < 1 || maxFrames < 1)
+            throw new IllegalArgumentException("window and frames must be at least 1");
+        this.windowSeconds = windowSeconds;
+        this.maxFrames = maxFrames;
+        int slots = Integer.highestOneBit(Math.max(8, maxFrames * 2 - 1)) * 2;
+        tables = new long[][]{new long[slots], new long[slots]};
+        sizes = new int[2];
+        newer = 0;
+        generationStart = Long.MIN_VALUE;
+    }
+
+    /**
+     * Fingerprints a frame
+     * @param data raw data
+     * @param start the index of the frame's datetime
+     * @param end the index after the frame's last value
+     * @return a non-zero 64 bit fingerprint of the datetime and values
+     */
+    public static long fingerprint(List<Double> data, int start, int end){
+        long h = 0x243F6A8885A308D3L;
+        for (int i = start; i < end; i++)
+            h = (h ^ Double.doubleToLongBits(data.get(i))) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * Adds a frame's fingerprint unless it was seen recently
+     * @param fingerprint the frame's fingerprint (see fingerprint())
+     * @param dateTime the frame's datetime, YYYYMMDDhhmmss.0
+     * @return true if the frame is new, false if it is a duplicate
+     */
+    public boolean add(long fingerprint, double dateTime){
+        long dt = (long) dateTime;
+        if (dt / 1000000 != lastDate){
+            lastDate = dt / 1000000;
+            lastEpochDay = Math.floorDiv(Utility.toEpochSecond(lastDate * 1000000.0), 24L * 60 * 60);
+        }
+        long time = dt % 1000000;
+        return add(fingerprint, lastEpochDay * 24 * 60 * 60 + (time / 10000) * 60 * 60 + (time / 100 % 100) * 60 + time % 100);
+    }
+
+    /**
+     * Adds a frame's fingerprint unless it was seen recently
+     * @param fingerprint the frame's fingerprint (see fingerprint())
+     * @param epochSecond the frame's time, as seconds since the epoch
+     * @return true if the frame is new, false if it is a duplicate
+     */
+    public boolean add(long fingerprint, long epochSecond){
+        if (generationStart == Long.MIN_VALUE)
+            generationStart = epochSecond;
+        else if (epochSecond - generationStart >= windowSeconds){
+            if (epochSecond - generationStart >= 2 * windowSeconds)
+                rotate(epochSecond);
+            rotate(epochSecond);
+        }
+        if (contains(tables[1 - newer], fingerprint))
+            return false;
+        long[] table = tables[newer];
+        int mask = table.length - 1;
+        int i = (int) fingerprint & mask;
+        while (table[i] != 0){
+            if (table[i] == fingerprint)
+                return false;
+            i = (i + 1) & mask;
+        }
+        if (sizes[newer] == maxFrames){
+            rotate(epochSecond);
+            table = tables[newer];
+            i = (int) fingerprint & mask;
+        }
+        table[i] = fingerprint;
+        sizes[newer]++;
+        return true;
+    }
+
+    /**
+     * @return the number of fingerprints remembered
+     */
+    public int size(){
+        return sizes[0] + sizes[1];
+    }
+
+    //helpers
+    /**
+     * Clears the older generation and makes it the newer one, starting at a time
+     * (rotating twice clears both, once neither generation's window is still open)
+     * @param epochSecond the start of the new generation
+     */
+    private void rotate(long epochSecond){
+        newer = 1 - newer;
+        Arrays.fill(tables[newer], 0L);
+        sizes[newer] = 0;
+        generationStart = epochSecond;
+    }
+
+    /**
+     * @param table a generation's slots
+     * @param fingerprint a fingerprint
+     * @return true if the generation has the fingerprint
+     */
+    private static boolean contains(long[] table, long fingerprint){
+        int mask = table.length - 1;
+        for (int i = (int) fingerprint & mask; table[i] != 0; i = (i + 1) & mask)
+            if (table[i] == fingerprint)
+                return true;
+        return false;
+    }
+}
@@ -7,6 +7,11 @@ import java.util.GregorianCalendar;
  */
 public class GreenHouseNursery extends AbsGreenHouse implements Sensible{
 
+    /**
+     * The number of values of data already given to the strategy
+     */
+    private int processed;
+
     /**
      * Constructs a greenhouse nursery
      */
@@ -38,8 +43,9 @@ public class GreenHouseNursery extends AbsGreenHouse implements Sensible{
      *               You *may* assume that the datetimes will be in ascending order
      */
     @Override
-    public void pollSensorData(List<Double> values) {
-            data.addAll(filterData(values));
+    public synchronized void pollSensorData(List<Double> values) {
+        data.addAll(filterData(values));
+        publishClosedDays();
     }
 
     /**
@@ -50,10 +56,8 @@ public class GreenHouseNursery extends AbsGreenHouse implements Sensible{
      * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
      */
     @Override
-    public TempHumidReading middleReading() {
-        parsedDataStrategy.processData(data);
-
-        return parsedDataStrategy.middleReading();
+    public synchronized TempHumidReading middleReading() {
+        return query("middleReading", 0, strategy -> strategy.middleReading());
     }
 
     /**
@@ -65,19 +69,159 @@ public class GreenHouseNursery extends AbsGreenHouse implements Sensible{
      * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
      */
     @Override
-    public TempHumidReading middleReading(double onDate) {
-        parsedDataStrategy.processData(data);
+    public synchronized TempHumidReading middleReading(double onDate) {
+        return query("middleReading", onDate, strategy -> strategy.middleReading(onDate));
+    }
 
-        return parsedDataStrategy.middleReading(onDate);
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time ignoring error values (-999s),
+     * e.g. one hour or the night
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none
+     */
+    public synchronized TempHumidReading middleReading(double from, double to) {
+        return query("middleReadingRange", Utility.toDate(Utility.rangeStart(from)), strategy -> strategy.middleReading(from, to));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleTemperature() {
+        return queryValue("middleTemperature", 0, strategy -> strategy.middleTemperature());
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleHumidity() {
+        return queryValue("middleHumidity", 0, strategy -> strategy.middleHumidity());
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleTemperature(double onDate) {
+        return queryValue("middleTemperature", onDate, strategy -> strategy.middleTemperature(onDate));
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleHumidity(double onDate) {
+        return queryValue("middleHumidity", onDate, strategy -> strategy.middleHumidity(onDate));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public synchronized TempHumidReading quantile(double q) {
+        return query("quantile", 0, strategy -> strategy.quantile(q));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public synchronized TempHumidReading quantile(double q, double onDate) {
+        return query("quantile", onDate, strategy -> strategy.quantile(q, onDate));
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public synchronized TempHumidReading[] quantiles(double[] qs) {
+        return query("quantiles", 0, strategy -> strategy.quantiles(qs));
+    }
+
+    /**
+     * produces the middle temperature and humidity on each of several dates, looking the dates up in date order.
+     * Data polled since the last query is processed once for the whole batch.
+     *
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    @Override
+    public synchronized void middleReadings(double[] dates, double[] out) {
+        query("middleReadings", 0, strategy -> {
+            strategy.middleReadings(dates, out);
+            return null;
+        });
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public synchronized void forEachDay(DailySummaryVisitor visitor) {
+        query("forEachDay", 0, strategy -> {
+            strategy.forEachDay(visitor);
+            return null;
+        });
     }
 
     /**
      * computes the current percentage of non-datetime sensor values that are -999.0s
      * @return a percent value between 0.0 and 100.0 inclusive
      */
-    public double percentError(){
-        parsedDataStrategy.processData(data);
+    public synchronized double percentError(){
+        return queryValue("percentError", 0, strategy -> strategy.percentError());
+    }
 
-        return parsedDataStrategy.percentError();
+    /**
+     * Sets the strategy, forgetting the data polled so far
+     * @param otherStrategy the new strategy
+     */
+    @Override
+    public synchronized void setStrategy(ParsedDataStrategy otherStrategy){
+        super.setStrategy(otherStrategy);
+        processed = 0;
+    }
+
+    /**
+     * Gives the strategy the data polled since the last query, so each value is processed once
+     */
+    @Override
+    protected synchronized void flushPending(){
+        if (processed < data.size()){
+            processBatch(data.subList(processed, data.size()));
+            processed = data.size();
+        }
     }
 }
@@ -1,3 +1,4 @@
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -7,11 +8,35 @@ import java.util.List;
  */
 public class GreenHouseProduce extends AbsGreenHouse implements Sensible{
 
+    /**
+     * Running medians of the most recent readings
+     */
+    private WindowedReadings recentReadings;
+
+    /**
+     * Evaluates alert rules as data arrives
+     */
+    private AlertEngine alertEngine;
+
+    /**
+     * Coalesces polls into larger batches before processing, or null to process every poll;
+     * switched while holding this greenhouse's monitor and read by pollers that may not hold it
+     */
+    private volatile MicroBatcher microBatcher;
+
+    /**
+     * Hands polls to a processing thread, or null to process polls on the polling thread;
+     * switched while holding this greenhouse's monitor and read by pollers that may not hold it
+     */
+    private volatile ReadingRing ring;
+
     /**
      * Constructs a green house produce
      */
     public GreenHouseProduce(){
         super();
+        recentReadings = new WindowedReadings(Duration.ofHours(1));
+        alertEngine = new AlertEngine(recentReadings);
     }
 
     /**
@@ -20,6 +45,8 @@ public class GreenHouseProduce extends AbsGreenHouse implements Sensible{
      */
     public GreenHouseProduce(GregorianCalendar calendar){
         super(calendar);
+        recentReadings = new WindowedReadings(Duration.ofHours(1));
+        alertEngine = new AlertEngine(recentReadings);
     }
 
     /**
@@ -36,8 +63,19 @@ public class GreenHouseProduce extends AbsGreenHouse implements Sensible{
      *               You *may* assume that the datetimes will be in ascending order
      */
     @Override
-    public void pollSensorData(List<Double> values) {
-        parsedDataStrategy.processData(filterData(values));
+    public synchronized void pollSensorData(List<Double> values) {
+        ArrayList<Double> filtered = filterData(values);
+        recentReadings.ingest(filtered);
+        alertEngine.ingest(filtered);
+        ReadingRing r = ring;
+        MicroBatcher batcher = microBatcher;
+        if (r != null)
+            r.put(filtered);
+        else if (batcher != null)
+            batcher.add(filtered);
+        else
+            processBatch(filtered);
+        publishClosedDays();
     }
 
     /**
@@ -48,8 +86,8 @@ public class GreenHouseProduce extends AbsGreenHouse implements Sensible{
      * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
      */
     @Override
-    public TempHumidReading middleReading() {
-        return parsedDataStrategy.middleReading();
+    public synchronized TempHumidReading middleReading() {
+        return query("middleReading", 0, strategy -> strategy.middleReading());
     }
 
     /**
@@ -61,15 +99,254 @@ public class GreenHouseProduce extends AbsGreenHouse implements Sensible{
      * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
      */
     @Override
-    public TempHumidReading middleReading(double onDate) {
-        return parsedDataStrategy.middleReading(onDate);
+    public synchronized TempHumidReading middleReading(double onDate) {
+        return query("middleReading", onDate, strategy -> strategy.middleReading(onDate));
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time ignoring error values (-999s),
+     * e.g. one hour or the night
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none
+     */
+    public synchronized TempHumidReading middleReading(double from, double to) {
+        return query("middleReadingRange", Utility.toDate(Utility.rangeStart(from)), strategy -> strategy.middleReading(from, to));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleTemperature() {
+        return queryValue("middleTemperature", 0, strategy -> strategy.middleTemperature());
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleHumidity() {
+        return queryValue("middleHumidity", 0, strategy -> strategy.middleHumidity());
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleTemperature(double onDate) {
+        return queryValue("middleTemperature", onDate, strategy -> strategy.middleTemperature(onDate));
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public synchronized double middleHumidity(double onDate) {
+        return queryValue("middleHumidity", onDate, strategy -> strategy.middleHumidity(onDate));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public synchronized TempHumidReading quantile(double q) {
+        return query("quantile", 0, strategy -> strategy.quantile(q));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public synchronized TempHumidReading quantile(double q, double onDate) {
+        return query("quantile", onDate, strategy -> strategy.quantile(q, onDate));
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public synchronized TempHumidReading[] quantiles(double[] qs) {
+        return query("quantiles", 0, strategy -> strategy.quantiles(qs));
+    }
+
+    /**
+     * produces the middle temperature and humidity on each of several dates, looking the dates up in date order
+     *
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    @Override
+    public synchronized void middleReadings(double[] dates, double[] out) {
+        query("middleReadings", 0, strategy -> {
+            strategy.middleReadings(dates, out);
+            return null;
+        });
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public synchronized void forEachDay(DailySummaryVisitor visitor) {
+        query("forEachDay", 0, strategy -> {
+            strategy.forEachDay(visitor);
+            return null;
+        });
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the most recent readings ignoring error values (-999s)
+     *
+     * @param window how far back from the newest reading to look (exclusive), from one second to the retention period
+     *               (1 hour by default), in whole seconds
+     * @return a new SensorReading object that has the middle temperature of the readings in the window
+     * and the middle humidity of the readings in the window
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     * @throws IllegalArgumentException if the window is shorter than one second or longer than the retention period
+     */
+    public synchronized TempHumidReading middleReading(Duration window) {
+        return recentReadings.middleReading(window);
+    }
+
+    /**
+     * Sets the longest window that middleReading(Duration) may be asked for,
+     * discarding the recent readings retained so far
+     * @param retention the retention period
+     */
+    public synchronized void setWindowRetention(Duration retention){
+        recentReadings = new WindowedReadings(retention);
+        alertEngine.setWindows(recentReadings);
+    }
+
+    /**
+     * Adds a rule to be evaluated after every poll
+     * @param rule the rule
+     */
+    public synchronized void addAlertRule(AbsAlertRule rule){
+        alertEngine.addRule(rule);
+    }
+
+    /**
+     * Adds a listener to be told when rules are triggered and cleared
+     * @param listener the listener
+     */
+    public synchronized void addAlertListener(AlertListener listener){
+        alertEngine.addListener(listener);
     }
 
     /**
      * computes the current percentage of non-datetime sensor values that are -999.0s
      * @return a percent value between 0.0 and 100.0 inclusive
      */
-    public double percentError(){
-        return parsedDataStrategy.percentError();
+    public synchronized double percentError(){
+        return queryValue("percentError", 0, strategy -> strategy.percentError());
+    }
+
+    /**
+     * Starts coalescing polls: polled data is processed in batches of at least maxValues values,
+     * or maxLatency after the first poll of a batch, whichever comes first.
+     * Queries process whatever is waiting before answering.
+     * Batches that hit their deadline are processed on a timer thread while holding this greenhouse's monitor,
+     * which polls and queries hold too.
+     * @param maxValues the number of values at which a batch is processed
+     * @param maxLatency the longest polled data may wait before being processed, e.g. 5ms
+     */
+    public synchronized void enableMicroBatching(int maxValues, Duration maxLatency){
+        disableRingHandoff();
+        disableMicroBatching();
+        microBatcher = new MicroBatcher(maxValues, maxLatency.toNanos(),
+                this::processBatch, this);
+    }
+
+    /**
+     * Processes whatever is waiting and goes back to processing every poll
+     */
+    public synchronized void disableMicroBatching(){
+        if (microBatcher != null){
+            microBatcher.close();
+            microBatcher = null;
+        }
+    }
+
+    /**
+     * @return the micro batcher, or null if polls are not being coalesced
+     */
+    public MicroBatcher getMicroBatcher(){
+        return microBatcher;
+    }
+
+    /**
+     * Starts processing polls on a dedicated thread: pollSensorData filters a poll, updates the recent readings and alerts,
+     * then copies it into a preallocated ring and returns, so its latency does not depend on the cost of processData.
+     * The processing thread hands everything in the ring to the strategy while holding this greenhouse's monitor, which
+     * queries also hold; a query first processes whatever is still in the ring, so it sees every poll made before it.
+     * Polls hold the monitor too, so a poll made while the processing thread is handing a batch on waits for it, and
+     * a poll that finds the ring full drains it itself. Stops micro batching.
+     * @param capacity the number of values the ring holds (rounded up to a power of two); polling waits while it is full
+     * @param waitStrategy how the threads wait for each other: ReadingRing.BUSY_SPIN, YIELD or PARK
+     */
+    public synchronized void enableRingHandoff(int capacity, int waitStrategy){
+        disableMicroBatching();
+        disableRingHandoff();
+        ring = new ReadingRing(capacity, waitStrategy, this::processBatch, this);
+    }
+
+    /**
+     * Processes whatever is in the ring, stops the processing thread and goes back to processing every poll
+     */
+    public synchronized void disableRingHandoff(){
+        if (ring != null){
+            ring.close();
+            ring = null;
+        }
+    }
+
+    /**
+     * @return the ring polls are handed to the processing thread through, or null if polls are processed as they arrive
+     */
+    public ReadingRing getReadingRing(){
+        return ring;
+    }
+
+    /**
+     * Processes any polled data still waiting in a micro batch or in the ring
+     */
+    @Override
+    protected synchronized void flushPending(){
+        if (microBatcher != null)
+            microBatcher.flush();
+        if (ring != null)
+            ring.flush();
     }
 }
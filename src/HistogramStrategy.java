@@ -0,0 +1,366 @@
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A strategy which counts readings in fixed 0.1 resolution histograms (see FenwickHistogram),
+ * one for all readings and one per day. Inserts and medians are O(log B) for B bins and the answers are exact:
+ * values outside -40..150 (temperature) or 0..100 (humidity), or off the 0.1 grid, are kept in a sorted overflow list.
+ * Histograms keep no time of day, so each day also has a histogram per hour with readings, and ranges of time are
+ * answered at hour resolution; memory per day stays bounded by the number of bins.
+ */
+public class HistogramStrategy implements ParsedDataStrategy{
+
+    /**
+     * The lowest and highest binned temperatures
+     */
+    private static final double MIN_TEMP = -40.0;
+    private static final double MAX_TEMP = 150.0;
+
+    /**
+     * The lowest and highest binned humidities
+     */
+    private static final double MIN_HUM = 0.0;
+    private static final double MAX_HUM = 100.0;
+
+    /**
+     * Every temperature
+     */
+    private FenwickHistogram temps;
+
+    /**
+     * Every humidity
+     */
+    private FenwickHistogram hums;
+
+    /**
+     * The temperatures of each date
+     */
+    private DateIndex<FenwickHistogram> dayTemps;
+
+    /**
+     * The humidities of each date
+     */
+    private DateIndex<FenwickHistogram> dayHums;
+
+    /**
+     * The temperatures of each hour of each date, null for an hour without any
+     */
+    private DateIndex<FenwickHistogram[]> hourTemps;
+
+    /**
+     * The humidities of each hour of each date, null for an hour without any
+     */
+    private DateIndex<FenwickHistogram[]> hourHums;
+
+    /**
+     * The number of errors (-999) on each date that has any
+     */
+    private HashMap<Double, Integer> dayErrs;
+
+    /**
+     * The number of errors (-999) encountered in the data
+     */
+    private int numErrs;
+
+    /**
+     * Constructs a new HistogramStrategy
+     */
+    public HistogramStrategy(){
+        temps = new FenwickHistogram(MIN_TEMP, MAX_TEMP);
+        hums = new FenwickHistogram(MIN_HUM, MAX_HUM);
+        dayTemps = new DateIndex<FenwickHistogram>();
+        dayHums = new DateIndex<FenwickHistogram>();
+        hourTemps = new DateIndex<FenwickHistogram[]>();
+        hourHums = new DateIndex<FenwickHistogram[]>();
+        dayErrs = new HashMap<Double, Integer>();
+        numErrs = 0;
+    }
+
+    /**
+     * Processes data, counting each value into its histograms in one pass, recorded as a parseData ingest event
+     *
+     * @param data raw data
+     */
+    @Override
+    public void processData(List<Double> data) {
+        IngestEvent parse = new IngestEvent();
+        parse.begin();
+        boolean timed = parse.isEnabled();
+        int frames = 0;
+        int days = 0;
+        double lastDate = 0;
+        for (int i = 0; i < data.size(); i++){
+            double date = Utility.toDate(data.get(i));
+            int hour = HourlyIndex.secondOfDay(data.get(i)) / HourBuckets.HOUR;
+            frames++;
+            if (timed && !Utility.sameDate(lastDate, date)){
+                lastDate = date;
+                days++;
+            }
+            FenwickHistogram dayTemp = dayTemps.get(date);
+            FenwickHistogram dayHum = dayHums.get(date);
+            FenwickHistogram[] dayHourTemps = hourTemps.get(date);
+            FenwickHistogram[] dayHourHums = hourHums.get(date);
+            if (dayTemp == null){
+                dayTemp = new FenwickHistogram(MIN_TEMP, MAX_TEMP);
+                dayHum = new FenwickHistogram(MIN_HUM, MAX_HUM);
+                dayHourTemps = new FenwickHistogram[24];
+                dayHourHums = new FenwickHistogram[24];
+                dayTemps.put(date, dayTemp);
+                dayHums.put(date, dayHum);
+                hourTemps.put(date, dayHourTemps);
+                hourHums.put(date, dayHourHums);
+            }
+            if (dayHourTemps[hour] == null){
+                dayHourTemps[hour] = new FenwickHistogram(MIN_TEMP, MAX_TEMP);
+                dayHourHums[hour] = new FenwickHistogram(MIN_HUM, MAX_HUM);
+            }
+            while (i + 1 < data.size() && !Utility.isDateTime(data.get(i+1))){
+                i++;
+                addValue(temps, dayTemp, dayHourTemps[hour], date, data.get(i));
+                i++;
+                addValue(hums, dayHum, dayHourHums[hour], date, data.get(i));
+            }
+        }
+        parse.record("parseData", this, data.size(), frames, days);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading() {
+        return quantile(0.5);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @param onDate the date which to consider medianReadings for (inclusive) with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading(double onDate) {
+        return quantile(0.5, onDate);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time ignoring
+     * error values (-999s), at hour resolution: the readings of every hour the range touches count, including those of
+     * an hour it covers only in part. The histograms of the days the range covers whole and of the hours of the other
+     * days are added into one, bin by bin.
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none
+     */
+    @Override
+    public TempHumidReading middleReading(double from, double to) {
+        double start = Utility.rangeStart(from);
+        double end = Utility.rangeEnd(to);
+        FenwickHistogram tempRange = new FenwickHistogram(MIN_TEMP, MAX_TEMP);
+        FenwickHistogram humRange = new FenwickHistogram(MIN_HUM, MAX_HUM);
+        for (double date : dayTemps.sortedDates()){
+            if (date < Utility.toDate(start) || date > Utility.toDate(end))
+                continue;
+            int firstHour = Utility.firstSecondOn(start, date) / HourBuckets.HOUR;
+            int lastHour = Utility.lastSecondOn(end, date) / HourBuckets.HOUR;
+            if (firstHour == 0 && lastHour == 23){
+                tempRange.addAll(dayTemps.get(date));
+                humRange.addAll(dayHums.get(date));
+                continue;
+            }
+            FenwickHistogram[] dayHourTemps = hourTemps.get(date);
+            FenwickHistogram[] dayHourHums = hourHums.get(date);
+            for (int h = firstHour; h <= lastHour; h++){
+                if (dayHourTemps[h] != null){
+                    tempRange.addAll(dayHourTemps[h]);
+                    humRange.addAll(dayHourHums[h]);
+                }
+            }
+        }
+        return new SuperTempHumidReading(quantile(tempRange, 0.5), quantile(humRange, 0.5));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature() {
+        return quantile(temps, 0.5);
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity() {
+        return quantile(hums, 0.5);
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature(double onDate) {
+        return quantile(dayTemps.get(onDate), 0.5);
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity(double onDate) {
+        return quantile(dayHums.get(onDate), 0.5);
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q) {
+        return new SuperTempHumidReading(quantile(temps, q), quantile(hums, q));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q, double onDate) {
+        return new SuperTempHumidReading(quantile(dayTemps.get(onDate), q), quantile(dayHums.get(onDate), q));
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public TempHumidReading[] quantiles(double[] qs) {
+        TempHumidReading[] readings = new TempHumidReading[qs.length];
+        for (int i = 0; i < qs.length; i++)
+            readings[i] = quantile(qs[i]);
+        return readings;
+    }
+
+    /**
+     * produces the middle temperature and humidity on each of several dates, looking the dates up in date order
+     *
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    @Override
+    public void middleReadings(double[] dates, double[] out) {
+        Utility.checkReadingsOut(dates, out);
+        for (int i : Utility.dateOrder(dates)){
+            out[2 * i] = quantile(dayTemps.get(dates[i]), 0.5);
+            out[2 * i + 1] = quantile(dayHums.get(dates[i]), 0.5);
+        }
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public void forEachDay(DailySummaryVisitor visitor) {
+        for (double date : dayTemps.sortedDates()){
+            FenwickHistogram dayTemp = dayTemps.get(date);
+            FenwickHistogram dayHum = dayHums.get(date);
+            visitor.visitDay(date, quantile(dayTemp, 0.5), quantile(dayHum, 0.5),
+                    dayTemp.size(), dayHum.size(), dayErrs.getOrDefault(date, 0));
+        }
+    }
+
+    /**
+     * adds every stored reading and the number of errors to a mergeable summary
+     *
+     * @param summary the summary to add to
+     */
+    @Override
+    public void summarizeInto(ReadingSummary summary) {
+        temps.forEach(summary::addTemp);
+        hums.forEach(summary::addHum);
+        summary.addErrors(numErrs);
+    }
+
+    /**
+     * computes the current percentage of non-datetime sensor values that are -999.0s
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError() {
+        return (numErrs / (double)(temps.size() + hums.size() + numErrs)) * 100.0;
+    }
+
+    /**
+     * @return the number of values kept outside the histogram bins
+     */
+    public int overflowSize() {
+        return temps.overflowSize() + hums.overflowSize();
+    }
+
+    //helpers
+    /**
+     * Adds a value to the global, daily and hourly histograms, counting it as an error if it is -999
+     * @param all the global histogram
+     * @param day the daily histogram
+     * @param hour the histogram of the value's hour
+     * @param date the date of the value
+     * @param value the value
+     */
+    private void addValue(FenwickHistogram all, FenwickHistogram day, FenwickHistogram hour, double date, double value){
+        if (Utility.compareDoubles(value, -999.0)){
+            numErrs++;
+            dayErrs.merge(date, 1, Integer::sum);
+        } else {
+            all.add(value);
+            day.add(value);
+            hour.add(value);
+        }
+    }
+
+    /**
+     * Gets the value at a quantile of a histogram
+     * @param h the histogram, or null if there is none
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value, or -999.0 if the histogram is empty
+     */
+    private static double quantile(FenwickHistogram h, double q){
+        if (h == null || h.size() == 0)
+            return -999.0;
+        return h.kth(Utility.quantileIndex(q, h.size()));
+    }
+}
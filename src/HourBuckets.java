@@ -0,0 +1,181 @@
+import java.nio.DoubleBuffer;
+import java.util.Arrays;
+
+/**
+ * One day's values of one kind bucketed by hour, so that medians over part of a day can be answered from at most 24
+ * sorted buckets plus a scan of the (at most two) hours the range only partly covers. Each bucket keeps its values in
+ * arrival order with their second within the hour, and a sorted copy made when a query first needs it.
+ */
+public class HourBuckets {
+
+    /**
+     * The seconds in an hour
+     */
+    public static final int HOUR = 60 * 60;
+
+    /**
+     * The seconds in a day
+     */
+    public static final int DAY = 24 * HOUR;
+
+    /**
+     * The values of each hour, or null for an hour with none
+     */
+    private Bucket[] buckets;
+
+    /**
+     * The number of values
+     */
+    private int size;
+
+    /**
+     * The values of one hour
+     */
+    private static class Bucket {
+
+        /**
+         * The values, in arrival order
+         */
+        double[] values;
+
+        /**
+         * The second within the hour of each value
+         */
+        short[] seconds;
+
+        /**
+         * The number of values
+         */
+        int size;
+
+        /**
+         * The values sorted, or null if values were added since they were last sorted
+         */
+        double[] sorted;
+
+        /**
+         * Constructs an empty bucket
+         */
+        Bucket(){
+            values = new double[8];
+            seconds = new short[8];
+        }
+
+        /**
+         * Appends a value
+         * @param second its second within the hour
+         * @param value the value
+         */
+        void add(int second, double value){
+            if (size == values.length){
+                values = Arrays.copyOf(values, size * 2);
+                seconds = Arrays.copyOf(seconds, size * 2);
+            }
+            values[size] = value;
+            seconds[size++] = (short) second;
+            sorted = null;
+        }
+
+        /**
+         * @return the values, sorted
+         */
+        double[] sorted(){
+            if (sorted == null){
+                sorted = Arrays.copyOf(values, size);
+                Arrays.sort(sorted);
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * Constructs empty buckets
+     */
+    public HourBuckets(){
+        buckets = new Bucket[24];
+    }
+
+    /**
+     * Appends a value to its hour's bucket
+     * @param secondOfDay the second of the day of the value's frame, from 0 to DAY - 1
+     * @param value the value
+     */
+    public void add(int secondOfDay, double value){
+        int h = secondOfDay / HOUR;
+        if (buckets[h] == null)
+            buckets[h] = new Bucket();
+        buckets[h].add(secondOfDay - h * HOUR, value);
+        size++;
+    }
+
+    /**
+     * Appends the values of other buckets of the same day, hour by hour
+     * @param other the other buckets
+     */
+    public void merge(HourBuckets other){
+        for (int h = 0; h < 24; h++){
+            Bucket b = other.buckets[h];
+            if (b == null)
+                continue;
+            if (buckets[h] == null)
+                buckets[h] = new Bucket();
+            for (int i = 0; i < b.size; i++)
+                buckets[h].add(b.seconds[i], b.values[i]);
+        }
+        size += other.size;
+    }
+
+    /**
+     * Adds the values between two times of the day to a view of sorted runs: one run per hour the range covers
+     * whole, and one per hour it covers in part, made by scanning that hour
+     * @param runs the view
+     * @param fromSecond the first second of the day, inclusive, from 0
+     * @param toSecond the last second of the day, inclusive, up to DAY - 1
+     */
+    public void addTo(SortedRuns runs, int fromSecond, int toSecond){
+        for (int h = Math.max(fromSecond, 0) / HOUR; h <= toSecond / HOUR && h < 24; h++){
+            Bucket b = buckets[h];
+            int from = Math.max(fromSecond - h * HOUR, 0);
+            int to = Math.min(toSecond - h * HOUR, HOUR - 1);
+            if (b == null || from > to)
+                continue;
+            if (from == 0 && to == HOUR - 1){
+                runs.add(DoubleBuffer.wrap(b.sorted()));
+                continue;
+            }
+            double[] edge = new double[b.size];
+            int n = 0;
+            for (int i = 0; i < b.size; i++){
+                edge[n] = b.values[i];
+                n += b.seconds[i] >= from && b.seconds[i] <= to ? 1 : 0;
+            }
+            Arrays.sort(edge, 0, n);
+            runs.add(DoubleBuffer.wrap(edge, 0, n));
+        }
+    }
+
+    /**
+     * Copies every value with its second of the day, hour by hour and in arrival order within an hour
+     * @param values receives the values, at least size() long
+     * @param secondsOfDay receives the second of the day of each value, at least size() long
+     */
+    public void copyTo(double[] values, int[] secondsOfDay){
+        int n = 0;
+        for (int h = 0; h < 24; h++){
+            Bucket b = buckets[h];
+            if (b == null)
+                continue;
+            for (int i = 0; i < b.size; i++){
+                values[n] = b.values[i];
+                secondsOfDay[n++] = h * HOUR + b.seconds[i];
+            }
+        }
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size(){
+        return size;
+    }
+}
@@ -0,0 +1,272 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * One day's values of one kind, in tenths (see EncodedDay.quantize), bucketed by hour; these are the only copy of the
+ * day's values. Each hour keeps its values as the sorted keys tenths * frames + frame, bit-packed (see PackedSortedValues),
+ * where frames is the number of frames in the hour when it was last packed and frame is the index of the value's frame
+ * among them, in arrival order. Key order is value order, so an hour's keys count its values at or below any value
+ * with one search, and the frame of each key leads, through the day's frame times, to the value's time for a scan of
+ * part of the hour. Since frames is small, the keys cost only a few bits more than the values alone.
+ * New values are buffered unsorted until compact().
+ */
+public class HourlyCodes {
+
+    /**
+     * The most frames an hour may hold, so that keys fit in an int
+     */
+    public static final int MAX_FRAMES = 1 << 16;
+
+    /**
+     * The packed keys of each hour, or null for an hour with none
+     */
+    private PackedSortedValues[] hours;
+
+    /**
+     * The number of frames each hour's keys were made with
+     */
+    private int[] strides;
+
+    /**
+     * The number of values, packed or buffered
+     */
+    private int size;
+
+    /**
+     * The smallest value in tenths
+     */
+    private int min;
+
+    /**
+     * The largest value in tenths
+     */
+    private int max;
+
+    /**
+     * Values in tenths added since the last compact
+     */
+    private short[] newTenths;
+
+    /**
+     * The hour of each of newTenths
+     */
+    private byte[] newHours;
+
+    /**
+     * The index of the frame of each of newTenths within its hour
+     */
+    private int[] newFrames;
+
+    /**
+     * The number of values in newTenths
+     */
+    private int newCount;
+
+    /**
+     * Constructs empty buckets
+     */
+    public HourlyCodes(){
+        hours = new PackedSortedValues[24];
+        strides = new int[24];
+        min = Short.MAX_VALUE;
+        max = Short.MIN_VALUE;
+        newTenths = new short[8];
+        newHours = new byte[8];
+        newFrames = new int[8];
+    }
+
+    /**
+     * Adds a value
+     * @param hour the hour of the value's frame, from 0 to 23
+     * @param frame the index of the value's frame among the frames of that hour, in arrival order
+     * @param tenths the value in tenths
+     */
+    public void add(int hour, int frame, short tenths){
+        if (newCount == newTenths.length){
+            newTenths = Arrays.copyOf(newTenths, newCount * 2);
+            newHours = Arrays.copyOf(newHours, newCount * 2);
+            newFrames = Arrays.copyOf(newFrames, newCount * 2);
+        }
+        newTenths[newCount] = tenths;
+        newHours[newCount] = (byte) hour;
+        newFrames[newCount++] = frame;
+        size++;
+        min = Math.min(min, tenths);
+        max = Math.max(max, tenths);
+    }
+
+    /**
+     * Sorts the values added since the last compact into the keys of their hours and packs those hours again,
+     * dropping the buffer they were added to
+     * @param frames the number of frames in each hour so far
+     * @throws IllegalArgumentException if an hour has more than MAX_FRAMES frames
+     */
+    public void compact(int[] frames){
+        if (newCount == 0)
+            return;
+        int[] counts = new int[24];
+        for (int i = 0; i < newCount; i++)
+            counts[newHours[i]]++;
+        int[][] keys = new int[24][];
+        for (int h = 0; h < 24; h++){
+            if (counts[h] == 0)
+                continue;
+            if (frames[h] > MAX_FRAMES)
+                throw new IllegalArgumentException("more than " + MAX_FRAMES + " frames in hour " + h);
+            keys[h] = new int[counts[h]];
+            if (hours[h] != null && strides[h] != frames[h])
+                hours[h] = restride(hours[h], strides[h], frames[h]);
+            strides[h] = frames[h];
+        }
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < newCount; i++){
+            int h = newHours[i];
+            keys[h][counts[h]++] = newTenths[i] * strides[h] + newFrames[i];
+        }
+        for (int h = 0; h < 24; h++){
+            if (keys[h] == null)
+                continue;
+            if (hours[h] == null)
+                hours[h] = new PackedSortedValues();
+            hours[h] = hours[h].with(keys[h], keys[h].length);
+        }
+        newTenths = new short[8];
+        newHours = new byte[8];
+        newFrames = new int[8];
+        newCount = 0;
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Counts the values at or below a value; the buckets must be compacted
+     * @param tenths a value in tenths
+     * @return the number of values &lt;= tenths
+     */
+    public int countAtMost(int tenths){
+        int n = 0;
+        for (int h = 0; h < 24; h++)
+            if (hours[h] != null)
+                n += hours[h].upperBound(tenths * strides[h] + strides[h] - 1);
+        return n;
+    }
+
+    /**
+     * Finds the k-th smallest value, by binary searching the range of the values for the smallest with more than
+     * k values at or below it; the buckets must be compacted
+     * @param k the index in the sorted values, less than size()
+     * @return the value in tenths
+     */
+    public int kth(int k){
+        int lo = min;
+        int hi = max;
+        while (lo < hi){
+            int mid = Math.floorDiv(lo + hi, 2);
+            if (countAtMost(mid) > k)
+                hi = mid;
+            else
+                lo = mid + 1;
+        }
+        return lo;
+    }
+
+    /**
+     * Adds a counter of the values between two times of the day to a list, per hour the range covers: each counts the
+     * values of its hour (or part of it) at or below a value in tenths; the buckets must be compacted
+     * @param counters the list
+     * @param fromSecond the first second of the day, inclusive, from 0
+     * @param toSecond the last second of the day, inclusive, up to HourBuckets.DAY - 1
+     * @param frameSeconds the second of the day of each frame of each hour, in arrival order
+     */
+    public void addTo(List<IntUnaryOperator> counters, int fromSecond, int toSecond, int[][] frameSeconds){
+        int hour = HourBuckets.HOUR;
+        for (int h = Math.max(fromSecond, 0) / hour; h <= toSecond / hour && h < 24; h++){
+            PackedSortedValues keys = hours[h];
+            int stride = strides[h];
+            if (keys == null || fromSecond > (h + 1) * hour - 1)
+                continue;
+            if (fromSecond <= h * hour && toSecond >= (h + 1) * hour - 1){
+                counters.add(tenths -> keys.upperBound(tenths * stride + stride - 1));
+                continue;
+            }
+            int[] edge = new int[keys.size()];
+            int n = 0;
+            for (int i = 0; i < keys.size(); i++){
+                int key = keys.get(i);
+                int second = frameSeconds[h][Math.floorMod(key, stride)];
+                if (second >= fromSecond && second <= toSecond)
+                    edge[n++] = Math.floorDiv(key, stride);
+            }
+            int size = n;
+            counters.add(tenths -> upperBound(edge, size, tenths));
+        }
+    }
+
+    /**
+     * Gives every value to an action, hour by hour and in ascending order within an hour; the buckets must be compacted
+     * @param action receives each value in tenths
+     */
+    public void forEach(IntConsumer action){
+        for (int h = 0; h < 24; h++){
+            PackedSortedValues keys = hours[h];
+            if (keys == null)
+                continue;
+            for (int i = 0; i < keys.size(); i++)
+                action.accept(Math.floorDiv(keys.get(i), strides[h]));
+        }
+    }
+
+    /**
+     * @return the bytes taken by the packed keys and their block headers
+     */
+    public long packedBytes(){
+        long bytes = 0;
+        for (PackedSortedValues keys : hours)
+            if (keys != null)
+                bytes += keys.packedBytes();
+        return bytes;
+    }
+
+    //helpers
+    /**
+     * Makes an hour's keys again for more frames; the order of the keys does not change
+     * @param keys the keys
+     * @param from the number of frames they were made with
+     * @param to the number of frames to make them with
+     * @return the new keys
+     */
+    private static PackedSortedValues restride(PackedSortedValues keys, int from, int to){
+        int[] restrided = new int[keys.size()];
+        for (int i = 0; i < restrided.length; i++){
+            int key = keys.get(i);
+            restrided[i] = Math.floorDiv(key, from) * to + Math.floorMod(key, from);
+        }
+        return new PackedSortedValues(restrided, restrided.length);
+    }
+
+    /**
+     * @param sorted sorted values
+     * @param size the number of values
+     * @param value a value
+     * @return the number of values &lt;= value
+     */
+    private static int upperBound(int[] sorted, int size, int value){
+        int lo = 0;
+        int hi = size;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * The readings of one day bucketed by hour (see HourBuckets), so that medians over part of a day can be answered from
+ * at most 24 sorted buckets per kind plus a scan of the (at most two) hours the range only partly covers.
+ */
+public class HourlyIndex {
+
+    /**
+     * The temperatures
+     */
+    private HourBuckets temps;
+
+    /**
+     * The humidities
+     */
+    private HourBuckets hums;
+
+    /**
+     * Constructs an empty index
+     */
+    public HourlyIndex(){
+        temps = new HourBuckets();
+        hums = new HourBuckets();
+    }
+
+    /**
+     * Adds a temperature
+     * @param dateTime the datetime of its frame, YYYYMMDDhhmmss.0
+     * @param temp the temperature
+     */
+    public void addTemp(double dateTime, double temp){
+        temps.add(secondOfDay(dateTime), temp);
+    }
+
+    /**
+     * Adds a humidity
+     * @param dateTime the datetime of its frame, YYYYMMDDhhmmss.0
+     * @param hum the humidity
+     */
+    public void addHum(double dateTime, double hum){
+        hums.add(secondOfDay(dateTime), hum);
+    }
+
+    /**
+     * Adds the readings of another index of the same day
+     * @param other the other index
+     */
+    public void merge(HourlyIndex other){
+        temps.merge(other.temps);
+        hums.merge(other.hums);
+    }
+
+    /**
+     * Adds the readings between two times of the day to views of sorted runs: one run per hour the range covers
+     * whole, and one per hour it covers in part, made by scanning that hour
+     * @param tempRuns receives the temperatures
+     * @param humRuns receives the humidities
+     * @param fromSecond the first second of the day, inclusive, from 0
+     * @param toSecond the last second of the day, inclusive, up to 86399
+     */
+    public void addTo(SortedRuns tempRuns, SortedRuns humRuns, int fromSecond, int toSecond){
+        temps.addTo(tempRuns, fromSecond, toSecond);
+        hums.addTo(humRuns, fromSecond, toSecond);
+    }
+
+    /**
+     * @return the temperatures
+     */
+    public HourBuckets getTemps(){
+        return temps;
+    }
+
+    /**
+     * @return the humidities
+     */
+    public HourBuckets getHums(){
+        return hums;
+    }
+
+    /**
+     * @param dateTime a datetime, YYYYMMDDhhmmss.0
+     * @return its second of the day, from 0 to 86399
+     */
+    public static int secondOfDay(double dateTime){
+        int time = (int) ((long) dateTime % 1000000);
+        return time / 10000 * HourBuckets.HOUR + time / 100 % 100 * 60 + time % 100;
+    }
+}
@@ -0,0 +1,77 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event timing one stage of ingest: a greenhouse filtering a poll (filterData) or handing a batch
+ * to its strategy (processData), or a strategy parsing a batch into days (parseData) or merging it into what it
+ * stores (mergeData). Stages nest on the ingesting thread, so a recording shows where an ingest spike went.
+ * Stages begin the event, do their work, then call record, which only fills in and commits the event if the
+ * event is enabled and over its threshold; while no recording is running the event costs next to nothing.
+ */
+@Name("greenhouse.Ingest")
+@Label("Ingest Stage")
+@Category({"Greenhouse", "Ingest"})
+@Description("A stage of ingesting sensor data")
+@StackTrace(false)
+public class IngestEvent extends jdk.jfr.Event {
+
+    /**
+     * The stage
+     */
+    @Label("Stage")
+    String stage;
+
+    /**
+     * The class of the greenhouse or strategy
+     */
+    @Label("Source")
+    String source;
+
+    /**
+     * The number of raw values in the batch
+     */
+    @Label("Values")
+    int values;
+
+    /**
+     * The number of frames in the batch, or 0 if the stage does not count them
+     */
+    @Label("Frames")
+    int frames;
+
+    /**
+     * The number of days in the batch, or 0 if the stage does not count them
+     */
+    @Label("Days")
+    int days;
+
+    /**
+     * The time filterData spent setting the clock
+     */
+    @Label("Clock Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long clockTime;
+
+    /**
+     * Commits the event if it is enabled and over its threshold
+     * @param stage the stage
+     * @param source the greenhouse or strategy
+     * @param values the number of raw values in the batch
+     * @param frames the number of frames in the batch, or 0
+     * @param days the number of days in the batch, or 0
+     */
+    public void record(String stage, Object source, int values, int frames, int days){
+        if (!shouldCommit())
+            return;
+        this.stage = stage;
+        this.source = source.getClass().getSimpleName();
+        this.values = values;
+        this.frames = frames;
+        this.days = days;
+        commit();
+    }
+}
@@ -0,0 +1,69 @@
+import java.time.Duration;
+
+/**
+ * A rule which triggers while the median temperature or humidity over a recent window is above (or below) a threshold,
+ * e.g. humidity median &gt; 85% over the last 30 minutes, or temperature median &lt; 40F over the last 10 minutes
+ * for at least 15 minutes
+ */
+public class MedianAlertRule extends AbsAlertRule {
+
+    /**
+     * True to watch humidity, false to watch temperature
+     */
+    private boolean humidity;
+
+    /**
+     * How far back the median looks
+     */
+    private Duration window;
+
+    /**
+     * Constructs a median alert rule
+     * @param name a name to identify the rule in alerts
+     * @param humidity true to watch humidity, false to watch temperature
+     * @param window how far back the median looks, at most the greenhouse's retention period
+     * @param threshold the median above which the rule is triggered
+     */
+    public MedianAlertRule(String name, boolean humidity, Duration window, double threshold){
+        super(name, threshold);
+        this.humidity = humidity;
+        this.window = window;
+    }
+
+    /**
+     * Constructs a median alert rule with a direction and a duration it must hold for
+     * @param name a name to identify the rule in alerts
+     * @param humidity true to watch humidity, false to watch temperature
+     * @param window how far back the median looks, at most the greenhouse's retention period
+     * @param threshold the median above (or below) which the rule is triggered
+     * @param below true to trigger while the median is below the threshold, false for above
+     * @param sustain how long the median must be past the threshold before the rule is triggered, and back before it is cleared
+     * @throws IllegalArgumentException if sustain is negative
+     */
+    public MedianAlertRule(String name, boolean humidity, Duration window, double threshold, boolean below, Duration sustain){
+        super(name, threshold, below, sustain);
+        this.humidity = humidity;
+        this.window = window;
+    }
+
+    /**
+     * Pins the window, so that it is maintained for as long as the rule is and rules over the same window share it
+     * @param engine the engine the rule is being added to
+     */
+    @Override
+    protected void register(AlertEngine engine) {
+        engine.getWindows().pin(window);
+    }
+
+    /**
+     * @param engine the engine holding the shared aggregates
+     * @return the median over the window, or -999.0 if there are no valid readings in it
+     */
+    @Override
+    protected double measure(AlertEngine engine) {
+        TempHumidReading r = engine.getWindows().middleReading(window);
+        if (humidity)
+            return r.humidity;
+        return r.temperature;
+    }
+}
@@ -0,0 +1,159 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Coalesces small frames of filtered sensor data into larger batches.
+ * A batch is handed on once it holds maxValues values, or maxLatency after its first frame arrived,
+ * whichever comes first.
+ */
+public class MicroBatcher {
+
+    /**
+     * The number of values at which a batch is handed on
+     */
+    private int maxValues;
+
+    /**
+     * The longest a value may wait in a batch, in nanoseconds
+     */
+    private long maxLatencyNanos;
+
+    /**
+     * Where batches are handed on to
+     */
+    private Consumer<ArrayList<Double>> sink;
+
+    /**
+     * The lock the deadline flush takes before the batcher's own, so that it orders with callers that hold it
+     */
+    private Object lock;
+
+    /**
+     * The values waiting to be handed on
+     */
+    private ArrayList<Double> batch;
+
+    /**
+     * When the first frame of the batch arrived, from System.nanoTime()
+     */
+    private long batchStart;
+
+    /**
+     * Fires the deadline flush of the current batch
+     */
+    private ScheduledExecutorService timer;
+
+    /**
+     * The pending deadline flush, or null if the batch is empty
+     */
+    private ScheduledFuture<?> deadline;
+
+    /**
+     * The number of batches handed on
+     */
+    private long batches;
+
+    /**
+     * The longest any value waited in a batch, in nanoseconds
+     */
+    private long maxObservedLatencyNanos;
+
+    /**
+     * Whether the batcher is closed, after which added data is handed on at once
+     */
+    private boolean closed;
+
+    /**
+     * Constructs a micro batcher
+     * @param maxValues the number of values at which a batch is handed on
+     * @param maxLatencyNanos the longest a value may wait in a batch, in nanoseconds
+     * @param sink where batches are handed on to; called on the polling thread or on the batcher's timer thread
+     * @param lock a lock the timer thread holds while handing a batch on; callers of add and flush should hold it too
+     */
+    public MicroBatcher(int maxValues, long maxLatencyNanos, Consumer<ArrayList<Double>> sink, Object lock){
+        this.maxValues = maxValues;
+        this.maxLatencyNanos = maxLatencyNanos;
+        this.sink = sink;
+        this.lock = lock;
+        batch = new ArrayList<Double>();
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "micro-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Adds filtered data to the batch, handing the batch on if it is now full, or hands it on at once if the batcher is
+     * closed, so that a poll racing a close is not lost
+     * @param data an ordered sequence of [datetime, temperature, humidity, ..., datetime, temperature, humidity, ...]
+     */
+    public synchronized void add(List<Double> data){
+        if (data.isEmpty())
+            return;
+        if (closed){
+            sink.accept(new ArrayList<Double>(data));
+            return;
+        }
+        if (batch.isEmpty()){
+            batchStart = System.nanoTime();
+            deadline = timer.schedule(this::deadlineFlush, maxLatencyNanos, TimeUnit.NANOSECONDS);
+        }
+        batch.addAll(data);
+        if (batch.size() >= maxValues)
+            flush();
+    }
+
+    /**
+     * Hands on whatever is in the batch
+     */
+    public synchronized void flush(){
+        if (batch.isEmpty())
+            return;
+        deadline.cancel(false);
+        deadline = null;
+        maxObservedLatencyNanos = Math.max(maxObservedLatencyNanos, System.nanoTime() - batchStart);
+        ArrayList<Double> full = batch;
+        batch = new ArrayList<Double>();
+        batches++;
+        sink.accept(full);
+    }
+
+    /**
+     * Hands on whatever is in the batch and stops the timer thread
+     */
+    public synchronized void close(){
+        closed = true;
+        flush();
+        timer.shutdown();
+    }
+
+    /**
+     * @return the number of batches handed on
+     */
+    public synchronized long getBatches(){
+        return batches;
+    }
+
+    /**
+     * @return the longest any value waited in a batch, in nanoseconds
+     */
+    public synchronized long getMaxObservedLatencyNanos(){
+        return maxObservedLatencyNanos;
+    }
+
+    //helpers
+    /**
+     * Hands on the batch once its deadline has passed
+     */
+    private void deadlineFlush(){
+        synchronized (lock){
+            flush();
+        }
+    }
+}
@@ -0,0 +1,180 @@
+import java.util.Arrays;
+
+/**
+ * Sorted int values bit-packed in blocks of BLOCK values: each block keeps its smallest value and packs every value
+ * as its difference from that at the fewest bits the block's largest difference needs (frame of reference).
+ * Since the values are sorted, neighbouring values are close, so a block of readings at 0.1 resolution typically
+ * takes a few bits per value rather than 16. Any value is read in constant time.
+ */
+public class PackedSortedValues {
+
+    /**
+     * The number of values in a block
+     */
+    public static final int BLOCK = 128;
+
+    /**
+     * The number of values
+     */
+    private int size;
+
+    /**
+     * The smallest value of each block
+     */
+    private int[] mins;
+
+    /**
+     * The number of bits per value of each block, from 0 to 32
+     */
+    private byte[] widths;
+
+    /**
+     * The index of the first bit of each block in words
+     */
+    private int[] offsets;
+
+    /**
+     * The packed differences, least significant bit first
+     */
+    private long[] words;
+
+    /**
+     * Constructs an empty sequence
+     */
+    public PackedSortedValues(){
+        this(new int[0], 0);
+    }
+
+    /**
+     * Packs sorted values
+     * @param sorted the values, in ascending order
+     * @param count the number of values to pack from the start of sorted
+     */
+    public PackedSortedValues(int[] sorted, int count){
+        size = count;
+        int blocks = (count + BLOCK - 1) / BLOCK;
+        mins = new int[blocks];
+        widths = new byte[blocks];
+        offsets = new int[blocks];
+        int bits = 0;
+        for (int b = 0; b < blocks; b++){
+            int from = b * BLOCK;
+            int to = Math.min(from + BLOCK, count);
+            mins[b] = sorted[from];
+            widths[b] = (byte) (64 - Long.numberOfLeadingZeros((long) sorted[to - 1] - sorted[from]));
+            offsets[b] = bits;
+            bits += (to - from) * widths[b];
+        }
+        words = new long[(bits + 63) >>> 6];
+        for (int b = 0; b < blocks; b++){
+            int from = b * BLOCK;
+            int to = Math.min(from + BLOCK, count);
+            for (int i = from; i < to; i++)
+                writeBits(offsets[b] + (i - from) * widths[b], (long) sorted[i] - mins[b], widths[b]);
+        }
+    }
+
+    /**
+     * @return the number of values
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Gets a value
+     * @param index the index in the sorted values
+     * @return the value
+     */
+    public int get(int index){
+        int b = index / BLOCK;
+        int w = widths[b];
+        if (w == 0)
+            return mins[b];
+        return (int) (mins[b] + readBits(offsets[b] + (index - b * BLOCK) * w, w));
+    }
+
+    /**
+     * Finds how many values are at or below a value
+     * @param value the value
+     * @return the number of values &lt;= value
+     */
+    public int upperBound(int value){
+        int lo = 0;
+        int hi = size;
+        while (lo < hi){
+            int mid = (lo + hi) >>> 1;
+            if (get(mid) <= value)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Packs these values together with more
+     * @param added the values to add, sorted in place
+     * @param count the number of values to add from the start of added
+     * @return new packed sorted values of both
+     */
+    public PackedSortedValues with(int[] added, int count){
+        Arrays.sort(added, 0, count);
+        int[] merged = new int[size + count];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < size && j < count){
+            int head = get(i);
+            if (head <= added[j]){
+                merged[k++] = head;
+                i++;
+            } else
+                merged[k++] = added[j++];
+        }
+        while (i < size)
+            merged[k++] = get(i++);
+        while (j < count)
+            merged[k++] = added[j++];
+        return new PackedSortedValues(merged, merged.length);
+    }
+
+    /**
+     * @return the bytes taken by the packed differences and the block headers
+     */
+    public long packedBytes(){
+        return words.length * 8L + mins.length * (4L + 1 + 4);
+    }
+
+    //helpers
+    /**
+     * Writes the low n bits of value, which must be clear in words
+     * @param pos the index of the first bit
+     * @param value the bits
+     * @param n the number of bits, at most 32
+     */
+    private void writeBits(int pos, long value, int n){
+        if (n == 0)
+            return;
+        int word = pos >>> 6;
+        int shift = pos & 63;
+        words[word] |= value << shift;
+        if (shift + n > 64)
+            words[word + 1] |= value >>> (64 - shift);
+    }
+
+    /**
+     * Reads n bits
+     * @param pos the index of the first bit
+     * @param n the number of bits, from 1 to 32
+     * @return the bits
+     */
+    private long readBits(int pos, int n){
+        int word = pos >>> 6;
+        int shift = pos & 63;
+        long value = words[word] >>> shift;
+        if (shift + n > 64)
+            value |= words[word + 1] << (64 - shift);
+        return value & ((1L << n) - 1);
+    }
+}
@@ -1,3 +1,5 @@
+import java.util.concurrent.CompletableFuture;
+
 /** An interface asked for by the city civil engineers after too many people got bad quality vegetables due to mold (bad temp and humidity settings) */
 public interface QualityControlable {
 
@@ -6,5 +8,11 @@ public interface QualityControlable {
      * @return a percent value between 0.0 and 100.0 inclusive
      */
     double percentError();
+
+    /**
+     * computes percentError() asynchronously. Identical queries asked while one is waiting to run share its answer.
+     * @return a future for the percentage, which the caller may cancel or time out without affecting other callers
+     */
+    CompletableFuture<Double> percentErrorAsync();
     
 }
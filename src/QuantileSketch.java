@@ -0,0 +1,203 @@
+import java.util.Arrays;
+
+/**
+ * A mergeable summary of a multiset of values which answers quantiles in bounded memory (a KLL sketch).
+ * Values are kept in levels, a value at level h standing for 2^h values. The top level may hold capacity values and
+ * each level below it two thirds as many as the one above (at least 2), so the sketch keeps at most about 3 * capacity
+ * values however many it summarizes. When the sketch holds more than that, the lowest level over its own capacity is
+ * sorted and every other value of it is promoted to the next level, so the total weight always equals size().
+ * Until the first promotion every value is kept at level 0 and answers are exact.
+ */
+public class QuantileSketch {
+
+    /**
+     * The ratio between the capacities of a level and the level above it
+     */
+    private static final double SHRINK = 2.0 / 3.0;
+
+    /**
+     * The most values the top level holds
+     */
+    private int capacity;
+
+    /**
+     * The most values the sketch holds before a level is compacted: the sum of every level's capacity
+     */
+    private int totalCapacity;
+
+    /**
+     * The number of values kept, over every level
+     */
+    private int retained;
+
+    /**
+     * The values of each level
+     */
+    private double[][] levels;
+
+    /**
+     * The number of values in each level
+     */
+    private int[] sizes;
+
+    /**
+     * Which half of each level is promoted next, alternated so that compactions do not all round the same way
+     */
+    private boolean[] odd;
+
+    /**
+     * The number of values summarized
+     */
+    private long count;
+
+    /**
+     * Constructs an empty sketch
+     * @param capacity the most values the top level holds, and so the most values answered exactly
+     * @throws IllegalArgumentException if capacity is less than 2
+     */
+    public QuantileSketch(int capacity){
+        if (capacity < 2)
+            throw new IllegalArgumentException("capacity must be at least 2");
+        this.capacity = capacity;
+        levels = new double[][]{new double[16]};
+        sizes = new int[1];
+        odd = new boolean[1];
+        count = 0;
+        totalCapacity = capacity;
+    }
+
+    /**
+     * Adds a value
+     * @param value the value
+     */
+    public void add(double value){
+        push(0, value);
+        count++;
+        while (retained > totalCapacity)
+            compress();
+    }
+
+    /**
+     * Adds every value summarized by another sketch
+     * @param other the other sketch, which is not changed
+     */
+    public void merge(QuantileSketch other){
+        for (int h = 0; h < other.levels.length; h++)
+            for (int i = 0; i < other.sizes[h]; i++)
+                push(h, other.levels[h][i]);
+        count += other.count;
+        while (retained > totalCapacity)
+            compress();
+    }
+
+    /**
+     * Gets the value at a quantile, such that quantile 0.5 is the value at index size() / 2 of the sorted values
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value, exact if isExact(), or -999.0 if there are no values
+     */
+    public double quantile(double q){
+        if (count == 0)
+            return -999.0;
+        long rank = Utility.quantileRank(q, count);
+        for (int h = 0; h < levels.length; h++)
+            Arrays.sort(levels[h], 0, sizes[h]);
+        int[] next = new int[levels.length];
+        long seen = 0;
+        while (true){
+            int min = -1;
+            for (int h = 0; h < levels.length; h++)
+                if (next[h] < sizes[h] && (min < 0 || levels[h][next[h]] < levels[min][next[min]]))
+                    min = h;
+            double value = levels[min][next[min]++];
+            seen += 1L << min;
+            if (seen > rank)
+                return value;
+        }
+    }
+
+    /**
+     * @return the number of values summarized
+     */
+    public long size(){
+        return count;
+    }
+
+    /**
+     * @return the number of values kept
+     */
+    public int retained(){
+        return retained;
+    }
+
+    /**
+     * @return true if no values have been compacted, so every quantile is exact
+     */
+    public boolean isExact(){
+        return levels.length == 1;
+    }
+
+    //helpers
+    /**
+     * The capacity of a level, which shrinks geometrically with its depth below the top level
+     * @param h the level
+     * @return the most values it holds
+     */
+    private int capacity(int h){
+        return Math.max(2, (int) Math.ceil(capacity * Math.pow(SHRINK, levels.length - 1 - h)));
+    }
+
+    /**
+     * Appends a value to a level, adding the level if needed
+     * @param h the level
+     * @param value the value
+     */
+    private void push(int h, double value){
+        if (h == levels.length){
+            levels = Arrays.copyOf(levels, h + 1);
+            levels[h] = new double[16];
+            sizes = Arrays.copyOf(sizes, h + 1);
+            odd = Arrays.copyOf(odd, h + 1);
+            totalCapacity = 0;
+            for (int l = 0; l < levels.length; l++)
+                totalCapacity += capacity(l);
+        }
+        if (sizes[h] == levels[h].length)
+            levels[h] = Arrays.copyOf(levels[h], Math.max(16, sizes[h] * 2));
+        levels[h][sizes[h]++] = value;
+        retained++;
+    }
+
+    /**
+     * Compacts the lowest level holding more than its capacity; there is one while the sketch holds more than totalCapacity
+     */
+    private void compress(){
+        for (int h = 0; h < levels.length; h++){
+            if (sizes[h] > capacity(h)){
+                compact(h);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sorts a level and promotes every other value of it to the next level, keeping the largest value behind if there
+     * is an odd number of them
+     * @param h the level
+     */
+    private void compact(int h){
+        double[] level = levels[h];
+        int n = sizes[h];
+        Arrays.sort(level, 0, n);
+        int pairs = n / 2;
+        for (int i = odd[h] ? 1 : 0; i < 2 * pairs; i += 2)
+            push(h + 1, level[i]);
+        odd[h] = !odd[h];
+        level = levels[h];
+        if (n % 2 == 1){
+            level[0] = level[n - 1];
+            sizes[h] = 1;
+        } else
+            sizes[h] = 0;
+        retained -= n - sizes[h];
+    }
+}
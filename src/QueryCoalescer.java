@@ -0,0 +1,150 @@
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs queries on an executor, coalescing identical queries: a query asked for while an identical one is still
+ * waiting to start joins it, and they are answered by one computation. Once a computation has started, later callers
+ * start a new one, so every caller gets an answer computed after it asked. Each caller gets its own future, which it
+ * may cancel or time out (e.g. with orTimeout) without affecting the others; if every caller of a computation that has
+ * not started cancels, it is skipped.
+ */
+public class QueryCoalescer {
+
+    /**
+     * Runs the computations
+     */
+    private Executor executor;
+
+    /**
+     * The lock held while computing
+     */
+    private Object lock;
+
+    /**
+     * The computations waiting to start, by query
+     */
+    private ConcurrentHashMap<String, Pending<?>> waiting;
+
+    /**
+     * The number of computations run
+     */
+    private long computations;
+
+    /**
+     * The number of callers answered by joining a waiting computation
+     */
+    private long coalesced;
+
+    /**
+     * A computation waiting to start
+     * @param <T> the type of its answer
+     */
+    private static class Pending<T> {
+
+        /**
+         * The shared answer
+         */
+        final CompletableFuture<T> answer = new CompletableFuture<T>();
+
+        /**
+         * The number of callers who have not cancelled
+         */
+        final AtomicInteger callers = new AtomicInteger();
+    }
+
+    /**
+     * Constructs a coalescer
+     * @param executor runs the computations
+     * @param lock a lock held while computing, so that queries do not run during updates that hold it
+     */
+    public QueryCoalescer(Executor executor, Object lock){
+        this.executor = executor;
+        this.lock = lock;
+        waiting = new ConcurrentHashMap<String, Pending<?>>();
+    }
+
+    /**
+     * Asks a query, joining an identical one that has not started yet
+     * @param key identifies the query and its arguments
+     * @param query computes the answer
+     * @param <T> the type of the answer
+     * @return a future for this caller, completed with the answer or the query's exception
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> submit(String key, Supplier<T> query){
+        while (true){
+            Pending<T> fresh = new Pending<T>();
+            Pending<T> pending = (Pending<T>) waiting.putIfAbsent(key, fresh);
+            if (pending == null){
+                pending = fresh;
+                Pending<T> p = pending;
+                try {
+                    executor.execute(() -> run(key, p, query));
+                } catch (RuntimeException e){
+                    waiting.remove(key, p);
+                    throw e;
+                }
+            }
+            int callers = pending.callers.get();
+            if (callers < 0 || !pending.callers.compareAndSet(callers, callers + 1))
+                continue;
+            if (pending != fresh){
+                synchronized (this){
+                    coalesced++;
+                }
+            }
+            CompletableFuture<T> mine = pending.answer.copy();
+            Pending<T> p = pending;
+            mine.whenComplete((value, e) -> {
+                if (mine.isCancelled() && p.callers.decrementAndGet() == 0 && p.callers.compareAndSet(0, -1)){
+                    waiting.remove(key, p);
+                    p.answer.cancel(false);
+                }
+            });
+            return mine;
+        }
+    }
+
+    /**
+     * @return the number of computations run
+     */
+    public synchronized long getComputations(){
+        return computations;
+    }
+
+    /**
+     * @return the number of callers answered by joining a waiting computation
+     */
+    public synchronized long getCoalesced(){
+        return coalesced;
+    }
+
+    //helpers
+    /**
+     * Starts a computation: no more callers may join it, and it is skipped if every caller has cancelled
+     * @param key the query
+     * @param pending the computation
+     * @param query computes the answer
+     * @param <T> the type of the answer
+     */
+    private <T> void run(String key, Pending<T> pending, Supplier<T> query){
+        waiting.remove(key, pending);
+        if (pending.answer.isDone())
+            return;
+        synchronized (this){
+            computations++;
+        }
+        try {
+            T value;
+            synchronized (lock){
+                value = query.get();
+            }
+            pending.answer.complete(value);
+        } catch (Throwable e){
+            pending.answer.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Flight Recorder event timing one query of a greenhouse, including processing whatever was pending for it
+ * (which shows up as nested ingest events). Queries begin the event, answer, then call record, which only fills in
+ * and commits the event if the event is enabled and over its threshold.
+ */
+@Name("greenhouse.Query")
+@Label("Query")
+@Category({"Greenhouse", "Query"})
+@Description("A query of a greenhouse")
+@StackTrace(false)
+public class QueryEvent extends jdk.jfr.Event {
+
+    /**
+     * The query, e.g. middleReading
+     */
+    @Label("Query")
+    String query;
+
+    /**
+     * The class of the strategy answering it
+     */
+    @Label("Strategy")
+    String strategy;
+
+    /**
+     * The date queried (YYYYMMDD), or 0 for every date
+     */
+    @Label("Date")
+    long date;
+
+    /**
+     * Commits the event if it is enabled and over its threshold
+     * @param query the query
+     * @param strategy the strategy answering it
+     * @param date the date queried, or 0 for every date
+     */
+    public void record(String query, Object strategy, double date){
+        if (!shouldCommit())
+            return;
+        this.query = query;
+        this.strategy = strategy.getClass().getSimpleName();
+        this.date = (long) date;
+        commit();
+    }
+}
@@ -0,0 +1,274 @@
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A preallocated single producer, single consumer ring of primitive reading slots between the thread that polls
+ * sensor data and a processing thread. The producer copies each poll into the slots and publishes it with one volatile
+ * write, without locking or allocating; the processing thread hands every published value on as one batch.
+ * The consumer side is guarded by a lock: the processing thread takes it for each batch, and any thread holding it may
+ * drain the ring itself (flush), which is how queries see every poll put before them and how a producer holding the
+ * lock makes room instead of waiting on a consumer it is blocking.
+ */
+public class ReadingRing {
+
+    /**
+     * Idle by spinning (lowest latency, burns a core)
+     */
+    public static final int BUSY_SPIN = 0;
+
+    /**
+     * Idle by yielding to other threads
+     */
+    public static final int YIELD = 1;
+
+    /**
+     * Idle by parking for PARK_NANOS (cheapest, adds up to that much latency)
+     */
+    public static final int PARK = 2;
+
+    /**
+     * How long an idle thread parks under PARK, in nanoseconds
+     */
+    public static final long PARK_NANOS = 50_000;
+
+    /**
+     * The slots; the value at position p is at slots[p & mask]
+     */
+    private final double[] slots;
+
+    /**
+     * slots.length - 1
+     */
+    private final int mask;
+
+    /**
+     * How idle threads wait: BUSY_SPIN, YIELD or PARK
+     */
+    private final int waitStrategy;
+
+    /**
+     * The position after the last value handed on, written by the consumer
+     */
+    private final AtomicLong head;
+
+    /**
+     * The position after the last value published, written by the producer
+     */
+    private final AtomicLong tail;
+
+    /**
+     * The head as last read by the producer, so it only reads the consumer's counter when the ring looks full
+     */
+    private long cachedHead;
+
+    /**
+     * Where batches are handed on to
+     */
+    private final Consumer<List<Double>> sink;
+
+    /**
+     * The lock held while handing a batch on
+     */
+    private final Object lock;
+
+    /**
+     * The processing thread
+     */
+    private final Thread consumer;
+
+    /**
+     * Whether the processing thread should keep running
+     */
+    private volatile boolean running;
+
+    /**
+     * The number of batches handed on
+     */
+    private long batches;
+
+    /**
+     * Constructs a ring and starts its processing thread
+     * @param capacity the least number of values the ring holds, rounded up to a power of two
+     * @param waitStrategy how idle threads wait: BUSY_SPIN, YIELD or PARK
+     * @param sink where batches are handed on to, holding lock; a batch is a view of the slots, only valid during the call
+     * @param lock the lock held while handing a batch on; queries of whatever sink feeds should hold it too
+     * @throws IllegalArgumentException if capacity is less than 1 or above 2^30, or the wait strategy is unknown
+     */
+    public ReadingRing(int capacity, int waitStrategy, Consumer<List<Double>> sink, Object lock){
+        if (capacity < 1 || capacity > 1 << 30)
+            throw new IllegalArgumentException("capacity must be from 1 to 2^30");
+        if (waitStrategy < BUSY_SPIN || waitStrategy > PARK)
+            throw new IllegalArgumentException("unknown wait strategy " + waitStrategy);
+        int size = 1;
+        while (size < capacity)
+            size <<= 1;
+        slots = new double[size];
+        mask = slots.length - 1;
+        this.waitStrategy = waitStrategy;
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        this.sink = sink;
+        this.lock = lock;
+        running = true;
+        consumer = new Thread(this::consume, "reading-ring");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Puts a poll into the ring, waiting for room if the ring is full. Only one thread may put.
+     * A poll larger than the ring, or put once the ring is closed, is handed on directly, after whatever is in the ring.
+     * A poll that races close is handed on by whichever of the two sees it last, so it is never left in the ring.
+     * @param values filtered data starting with a datetime
+     */
+    public void put(List<Double> values){
+        int n = values.size();
+        if (n == 0)
+            return;
+        if (n > slots.length || !running){
+            synchronized (lock){
+                flush();
+                sink.accept(values);
+            }
+            return;
+        }
+        long t = tail.get();
+        while (t + n - cachedHead > slots.length){
+            cachedHead = head.get();
+            if (t + n - cachedHead <= slots.length)
+                break;
+            if (Thread.holdsLock(lock) || !running)
+                flush();
+            else
+                idle();
+        }
+        for (int i = 0; i < n; i++)
+            slots[(int) (t + i) & mask] = values.get(i);
+        //a volatile write, so that either close's flush sees this tail or the read of running below sees the close
+        tail.set(t + n);
+        if (!running)
+            flush();
+    }
+
+    /**
+     * Hands on every value published so far, on the calling thread
+     */
+    public void flush(){
+        synchronized (lock){
+            long h = head.get();
+            long t = tail.get();
+            if (h == t)
+                return;
+            sink.accept(new Slice(h, (int) (t - h)));
+            batches++;
+            head.lazySet(t);
+        }
+    }
+
+    /**
+     * Hands on whatever is in the ring and stops the processing thread. Called holding the lock, it does not wait for
+     * the processing thread to exit, since that thread may be waiting for the lock; nothing is put after close.
+     */
+    public void close(){
+        running = false;
+        LockSupport.unpark(consumer);
+        if (!Thread.holdsLock(lock)){
+            try {
+                consumer.join();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * @return the number of values the ring holds
+     */
+    public int capacity(){
+        return slots.length;
+    }
+
+    /**
+     * @return the number of values published and not yet handed on
+     */
+    public int size(){
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return the number of batches handed on
+     */
+    public long getBatches(){
+        synchronized (lock){
+            return batches;
+        }
+    }
+
+    //helpers
+    /**
+     * The processing thread: waits for published values, then hands them on
+     */
+    private void consume(){
+        while (running){
+            if (tail.get() == head.get())
+                idle();
+            else
+                flush();
+        }
+    }
+
+    /**
+     * Waits a little, as the wait strategy says
+     */
+    private void idle(){
+        if (waitStrategy == BUSY_SPIN)
+            Thread.onSpinWait();
+        else if (waitStrategy == YIELD)
+            Thread.yield();
+        else
+            LockSupport.parkNanos(PARK_NANOS);
+    }
+
+    /**
+     * A read-only view of published slots
+     */
+    private class Slice extends AbstractList<Double> implements RandomAccess {
+
+        /**
+         * The position of the first value
+         */
+        private final long start;
+
+        /**
+         * The number of values
+         */
+        private final int size;
+
+        /**
+         * Constructs a view
+         * @param start the position of the first value
+         * @param size the number of values
+         */
+        Slice(long start, int size){
+            this.start = start;
+            this.size = size;
+        }
+
+        @Override
+        public Double get(int index){
+            if (index < 0 || index >= size)
+                throw new IndexOutOfBoundsException(index);
+            return slots[(int) (start + index) & mask];
+        }
+
+        @Override
+        public int size(){
+            return size;
+        }
+    }
+}
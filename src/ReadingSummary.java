@@ -0,0 +1,144 @@
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A compact, mergeable summary of a set of readings: a QuantileSketch each for temperatures and humidities
+ * and the number of errors. Summaries of many greenhouses can be merged to find a middle reading
+ * and percent error across all of them without moving their raw readings.
+ */
+public class ReadingSummary implements QualityControlable {
+
+    /**
+     * The default sketch capacity, and so the number of readings below which answers are exact
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The temperatures
+     */
+    private QuantileSketch temps;
+
+    /**
+     * The humidities
+     */
+    private QuantileSketch hums;
+
+    /**
+     * The number of errors (-999)
+     */
+    private long errors;
+
+    /**
+     * Constructs an empty summary with the default capacity
+     */
+    public ReadingSummary(){
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty summary
+     * @param capacity the capacity of each sketch (see QuantileSketch)
+     */
+    public ReadingSummary(int capacity){
+        temps = new QuantileSketch(capacity);
+        hums = new QuantileSketch(capacity);
+        errors = 0;
+    }
+
+    /**
+     * Summarizes many greenhouses in parallel and merges their summaries
+     * @param greenhouses the greenhouses
+     * @param capacity the capacity of each sketch
+     * @return the merged summary
+     */
+    public static ReadingSummary of(Collection<? extends AbsGreenHouse> greenhouses, int capacity){
+        return greenhouses.parallelStream()
+                .map(g -> g.summarize(capacity))
+                .collect(() -> new ReadingSummary(capacity), ReadingSummary::merge, ReadingSummary::merge);
+    }
+
+    /**
+     * Adds a (valid) temperature
+     * @param t a temperature
+     */
+    public void addTemp(double t){
+        temps.add(t);
+    }
+
+    /**
+     * Adds a (valid) humidity
+     * @param h a humidity
+     */
+    public void addHum(double h){
+        hums.add(h);
+    }
+
+    /**
+     * Adds to the number of errors
+     * @param n the number of errors (-999) to add
+     */
+    public void addErrors(long n){
+        errors += n;
+    }
+
+    /**
+     * Adds everything summarized by another summary
+     * @param other the other summary, which is not changed
+     */
+    public void merge(ReadingSummary other){
+        temps.merge(other.temps);
+        hums.merge(other.hums);
+        errors += other.errors;
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the summarized readings
+     * @return a new SensorReading object that has the middle temperature (value at index (size() / 2) of the sorted temperatures,
+     * exact if isExact()) and the middle humidity. If there are no temperature or humidity values, respectively,
+     * then the resulting sensor reading has -999 for that data
+     */
+    public TempHumidReading middleReading(){
+        return quantile(0.5);
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the summarized readings
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object, exact if isExact()
+     */
+    public TempHumidReading quantile(double q){
+        return new SuperTempHumidReading(temps.quantile(q), hums.quantile(q));
+    }
+
+    /**
+     * computes the percentage of summarized sensor values that are -999.0s
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError(){
+        return (errors / (double)(temps.size() + hums.size() + errors)) * 100.0;
+    }
+
+    /**
+     * computes percentError(), which reads counts kept in the summary, so the future is already complete
+     * @return a completed future for the percentage
+     */
+    @Override
+    public CompletableFuture<Double> percentErrorAsync(){
+        return CompletableFuture.completedFuture(percentError());
+    }
+
+    /**
+     * @return true if every quantile is exact
+     */
+    public boolean isExact(){
+        return temps.isExact() && hums.isExact();
+    }
+
+    /**
+     * @return the number of values kept by both sketches
+     */
+    public int retained(){
+        return temps.retained() + hums.retained();
+    }
+}
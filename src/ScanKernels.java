@@ -0,0 +1,227 @@
+/**
+ * Branch-free scans over raw readings held in primitive arrays: error sentinel counting and removal,
+ * datetime boundary detection, range filtering and min/max. Each kernel is a counted loop whose only branch is
+ * the loop itself, so its speed does not depend on how often errors or datetimes occur and the JIT is free
+ * to unroll (and, where the platform allows, vectorize) it. Each kernel has a scalar twin written the plain way,
+ * with a branch per value, as a reference and for comparison (see Benchmarks scanKernels).
+ */
+public final class ScanKernels {
+
+    /**
+     * Not instantiable
+     */
+    private ScanKernels(){
+    }
+
+    /**
+     * Counts error sentinels (-999, within Utility.compareDoubles' tolerance)
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @return the number of errors
+     */
+    public static int countErrors(double[] a, int from, int to){
+        int n = 0;
+        for (int i = from; i < to; i++)
+            n += error(a[i]);
+        return n;
+    }
+
+    /**
+     * Counts error sentinels with a branch per value
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @return the number of errors
+     */
+    public static int countErrorsScalar(double[] a, int from, int to){
+        int n = 0;
+        for (int i = from; i < to; i++)
+            if (Utility.compareDoubles(a[i], -999.0))
+                n++;
+        return n;
+    }
+
+    /**
+     * Copies every value that is not an error sentinel, writing each value and advancing only past valid ones
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @param out receives the valid values from index at; needs room for to - from values
+     * @param at the first index of out to write
+     * @return the number of valid values written
+     */
+    public static int removeErrors(double[] a, int from, int to, double[] out, int at){
+        int n = at;
+        for (int i = from; i < to; i++){
+            double v = a[i];
+            out[n] = v;
+            n += 1 - error(v);
+        }
+        return n - at;
+    }
+
+    /**
+     * Copies every stride-th value that is not an error sentinel, such as one channel's values in a frame
+     * @param a values
+     * @param from the index of the first value
+     * @param to the index after the last value that may be read
+     * @param stride the distance between values, at least 1
+     * @param out receives the valid values from index at; needs room for every value read
+     * @param at the first index of out to write
+     * @return the number of valid values written
+     */
+    public static int removeErrors(double[] a, int from, int to, int stride, double[] out, int at){
+        int n = at;
+        for (int i = from; i < to; i += stride){
+            double v = a[i];
+            out[n] = v;
+            n += 1 - error(v);
+        }
+        return n - at;
+    }
+
+    /**
+     * Copies every value that is not an error sentinel, with a branch per value
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @param out receives the valid values from index at; needs room for to - from values
+     * @param at the first index of out to write
+     * @return the number of valid values written
+     */
+    public static int removeErrorsScalar(double[] a, int from, int to, double[] out, int at){
+        int n = at;
+        for (int i = from; i < to; i++)
+            if (!Utility.compareDoubles(a[i], -999.0))
+                out[n++] = a[i];
+        return n - at;
+    }
+
+    /**
+     * Finds the datetimes (see Utility.isDateTime), which start frames
+     * @param a raw data
+     * @param from the first index
+     * @param to the index after the last
+     * @param starts receives the index of each datetime; needs room for to - from indexes
+     * @return the number of datetimes found
+     */
+    public static int dateTimes(double[] a, int from, int to, int[] starts){
+        int n = 0;
+        for (int i = from; i < to; i++){
+            starts[n] = i;
+            n += negative(19700101000000.0 - a[i]);
+        }
+        return n;
+    }
+
+    /**
+     * Finds the datetimes, with a branch per value
+     * @param a raw data
+     * @param from the first index
+     * @param to the index after the last
+     * @param starts receives the index of each datetime; needs room for to - from indexes
+     * @return the number of datetimes found
+     */
+    public static int dateTimesScalar(double[] a, int from, int to, int[] starts){
+        int n = 0;
+        for (int i = from; i < to; i++)
+            if (Utility.isDateTime(a[i]))
+                starts[n++] = i;
+        return n;
+    }
+
+    /**
+     * Copies every value within a range
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @param lo the lowest value kept
+     * @param hi the highest value kept
+     * @param out receives the kept values from index 0; needs room for to - from values
+     * @return the number of values kept
+     */
+    public static int filterRange(double[] a, int from, int to, double lo, double hi, double[] out){
+        int n = 0;
+        for (int i = from; i < to; i++){
+            double v = a[i];
+            out[n] = v;
+            n += (v >= lo) & (v <= hi) ? 1 : 0;
+        }
+        return n;
+    }
+
+    /**
+     * Copies every value within a range, with a branch per value
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @param lo the lowest value kept
+     * @param hi the highest value kept
+     * @param out receives the kept values from index 0; needs room for to - from values
+     * @return the number of values kept
+     */
+    public static int filterRangeScalar(double[] a, int from, int to, double lo, double hi, double[] out){
+        int n = 0;
+        for (int i = from; i < to; i++)
+            if (a[i] >= lo && a[i] <= hi)
+                out[n++] = a[i];
+        return n;
+    }
+
+    /**
+     * Finds the smallest and largest values
+     * @param a values, none of them NaN
+     * @param from the first index
+     * @param to the index after the last, greater than from
+     * @param out receives the smallest value at out[0] and the largest at out[1]
+     */
+    public static void minMax(double[] a, int from, int to, double[] out){
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++){
+            double v = a[i];
+            min = v < min ? v : min;
+            max = v > max ? v : max;
+        }
+        out[0] = min;
+        out[1] = max;
+    }
+
+    /**
+     * Finds the smallest and largest values, with a branch per value
+     * @param a values
+     * @param from the first index
+     * @param to the index after the last
+     * @param out receives the smallest value at out[0] and the largest at out[1]
+     */
+    public static void minMaxScalar(double[] a, int from, int to, double[] out){
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++){
+            if (a[i] < min)
+                min = a[i];
+            if (a[i] > max)
+                max = a[i];
+        }
+        out[0] = min;
+        out[1] = max;
+    }
+
+    //helpers
+    /**
+     * @param v a value, not NaN
+     * @return 1 if it is an error sentinel (see Utility.compareDoubles), else 0, worked out from a sign bit rather than a comparison
+     */
+    private static int error(double v){
+        return 1 - negative(0.001 - Math.abs(v + 999.0));
+    }
+
+    /**
+     * @param v a value, not NaN
+     * @return 1 if it is negative, else 0 (for 0.0 too)
+     */
+    private static int negative(double v){
+        return (int) (Double.doubleToRawLongBits(v) >>> 63);
+    }
+}
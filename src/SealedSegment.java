@@ -0,0 +1,261 @@
+import java.nio.DoubleBuffer;
+import java.util.List;
+
+/**
+ * An immutable partition of readings: the sorted temperatures and humidities of each of its days as primitive arrays,
+ * and the number of errors on each day. A sealed segment never changes (late readings make a new segment with with()),
+ * so it can be cached, dropped and read by many threads without locks.
+ */
+public final class SealedSegment {
+
+    /**
+     * The date of each day, ascending
+     */
+    private final double[] dates;
+
+    /**
+     * The sorted temperatures of each day
+     */
+    private final double[][] temps;
+
+    /**
+     * The sorted humidities of each day
+     */
+    private final double[][] hums;
+
+    /**
+     * The number of errors on each day
+     */
+    private final int[] errors;
+
+    /**
+     * Constructs a segment from its columns, which it takes ownership of
+     */
+    private SealedSegment(double[] dates, double[][] temps, double[][] hums, int[] errors){
+        this.dates = dates;
+        this.temps = temps;
+        this.hums = hums;
+        this.errors = errors;
+    }
+
+    /**
+     * Seals the readings of some days
+     * @param days the readings, in date order with sorted temperatures and humidities, which are copied
+     * @return the segment
+     */
+    public static SealedSegment seal(List<DateReading> days){
+        int n = days.size();
+        double[] dates = new double[n];
+        double[][] temps = new double[n][];
+        double[][] hums = new double[n][];
+        int[] errors = new int[n];
+        for (int i = 0; i < n; i++){
+            DateReading d = days.get(i);
+            dates[i] = d.getDate();
+            temps[i] = toArray(d.getTemps());
+            hums[i] = toArray(d.getHums());
+            errors[i] = d.getErrors();
+        }
+        return new SealedSegment(dates, temps, hums, errors);
+    }
+
+    /**
+     * Makes a new segment with some late readings added, sharing the columns of every day they do not touch
+     * @param late the readings of one day, with sorted temperatures and humidities
+     * @return the new segment; this one is not changed
+     */
+    public SealedSegment with(DateReading late){
+        int i = indexOf(late.getDate());
+        if (i >= 0){
+            double[][] newTemps = temps.clone();
+            double[][] newHums = hums.clone();
+            int[] newErrors = errors.clone();
+            newTemps[i] = merge(temps[i], late.getTemps());
+            newHums[i] = merge(hums[i], late.getHums());
+            newErrors[i] += late.getErrors();
+            return new SealedSegment(dates, newTemps, newHums, newErrors);
+        }
+        int at = -i - 1;
+        double[] newDates = new double[dates.length + 1];
+        double[][] newTemps = new double[dates.length + 1][];
+        double[][] newHums = new double[dates.length + 1][];
+        int[] newErrors = new int[dates.length + 1];
+        for (int j = 0, k = 0; j < newDates.length; j++){
+            if (j == at){
+                newDates[j] = late.getDate();
+                newTemps[j] = toArray(late.getTemps());
+                newHums[j] = toArray(late.getHums());
+                newErrors[j] = late.getErrors();
+            } else {
+                newDates[j] = dates[k];
+                newTemps[j] = temps[k];
+                newHums[j] = hums[k];
+                newErrors[j] = errors[k];
+                k++;
+            }
+        }
+        return new SealedSegment(newDates, newTemps, newHums, newErrors);
+    }
+
+    /**
+     * @return the number of days
+     */
+    public int days(){
+        return dates.length;
+    }
+
+    /**
+     * @param day a day, from 0 to days() - 1
+     * @return its date
+     */
+    public double date(int day){
+        return dates[day];
+    }
+
+    /**
+     * @return the first date
+     */
+    public double firstDate(){
+        return dates[0];
+    }
+
+    /**
+     * @return the last date
+     */
+    public double lastDate(){
+        return dates[dates.length - 1];
+    }
+
+    /**
+     * Binary searches for a date
+     * @param date a date formatted as a double
+     * @return its day, or (-(insertion point) - 1) if it has no readings
+     */
+    public int indexOf(double date){
+        int lo = 0;
+        int hi = dates.length - 1;
+        while (lo <= hi){
+            int mid = (lo + hi) >>> 1;
+            if (Utility.sameDate(dates[mid], date))
+                return mid;
+            if (dates[mid] < date)
+                lo = mid + 1;
+            else
+                hi = mid - 1;
+        }
+        return -lo - 1;
+    }
+
+    /**
+     * @param day a day
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the temperature at quantile q of the day, or -999 if it has none
+     */
+    public double tempQuantile(int day, double q){
+        return quantile(temps[day], q);
+    }
+
+    /**
+     * @param day a day
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the humidity at quantile q of the day, or -999 if it has none
+     */
+    public double humQuantile(int day, double q){
+        return quantile(hums[day], q);
+    }
+
+    /**
+     * @param day a day
+     * @return the number of temperatures on the day
+     */
+    public int tempCount(int day){
+        return temps[day].length;
+    }
+
+    /**
+     * @param day a day
+     * @return the number of humidities on the day
+     */
+    public int humCount(int day){
+        return hums[day].length;
+    }
+
+    /**
+     * @param day a day
+     * @return the number of errors on the day
+     */
+    public int errors(int day){
+        return errors[day];
+    }
+
+    /**
+     * Adds the readings of every day in a date range to views of sorted runs
+     * @param tempRuns receives each day's temperatures
+     * @param humRuns receives each day's humidities
+     * @param fromDate the first date, inclusive
+     * @param toDate the last date, inclusive
+     */
+    public void addTo(SortedRuns tempRuns, SortedRuns humRuns, double fromDate, double toDate){
+        for (int i = 0; i < dates.length; i++){
+            if (dates[i] > fromDate - 0.001 && dates[i] < toDate + 0.001){
+                tempRuns.add(DoubleBuffer.wrap(temps[i]));
+                humRuns.add(DoubleBuffer.wrap(hums[i]));
+            }
+        }
+    }
+
+    /**
+     * adds every reading and the number of errors to a mergeable summary
+     * @param summary the summary to add to
+     */
+    public void summarizeInto(ReadingSummary summary){
+        for (int i = 0; i < dates.length; i++){
+            for (double t : temps[i])
+                summary.addTemp(t);
+            for (double h : hums[i])
+                summary.addHum(h);
+            summary.addErrors(errors[i]);
+        }
+    }
+
+    //helpers
+    /**
+     * @param values boxed values
+     * @return the same values, unboxed
+     */
+    private static double[] toArray(List<Double> values){
+        double[] a = new double[values.size()];
+        for (int i = 0; i < a.length; i++)
+            a[i] = values.get(i);
+        return a;
+    }
+
+    /**
+     * @param a sorted values
+     * @param b sorted values
+     * @return every value of a and b, sorted
+     */
+    private static double[] merge(double[] a, List<Double> b){
+        double[] merged = new double[a.length + b.size()];
+        int i = 0;
+        int j = 0;
+        for (int k = 0; k < merged.length; k++){
+            if (j == b.size() || (i < a.length && Double.compare(a[i], b.get(j)) <= 0))
+                merged[k] = a[i++];
+            else
+                merged[k] = b.get(j++);
+        }
+        return merged;
+    }
+
+    /**
+     * @param sorted sorted values
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at quantile q, or -999 if there are none
+     */
+    private static double quantile(double[] sorted, double q){
+        if (sorted.length == 0)
+            return -999.0;
+        return sorted[Utility.quantileIndex(q, sorted.length)];
+    }
+}
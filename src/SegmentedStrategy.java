@@ -0,0 +1,496 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A strategy which partitions readings by time. New readings go into the mutable current partition, which is sealed
+ * into an immutable SealedSegment once readings for a later partition arrive (or seal() is called when it closes).
+ * A batch only sorts and merges the readings of the days it touches, never the whole history, and queries over many days
+ * select across the sorted days of every segment with SortedRuns instead of keeping one globally sorted list.
+ * Late readings for a sealed partition replace its segment with a new one, so a segment handed out by segments()
+ * never changes. Segments keep whole days; each day's readings are also bucketed by hour (see HourlyIndex), outside the
+ * segments, for ranges of time that start or end within a day.
+ */
+public class SegmentedStrategy implements ParsedDataStrategy{
+
+    /**
+     * The number of days in a partition by default
+     */
+    public static final int DAILY = 1;
+
+    /**
+     * The number of days in a weekly partition
+     */
+    public static final int WEEKLY = 7;
+
+    /**
+     * The number of days in each partition
+     */
+    private int partitionDays;
+
+    /**
+     * The sealed partitions, in date order
+     */
+    private ArrayList<SealedSegment> sealed;
+
+    /**
+     * The partition of each sealed segment, in the same order
+     */
+    private ArrayList<Long> sealedPartitions;
+
+    /**
+     * The days of the current partition, in date order
+     */
+    private ArrayList<DateReading> current;
+
+    /**
+     * The current partition, or Long.MIN_VALUE before the first reading
+     */
+    private long currentPartition;
+
+    /**
+     * The readings of each date bucketed by hour
+     */
+    private DateIndex<HourlyIndex> dayHours;
+
+    /**
+     * The number of temperatures and humidities across all partitions
+     */
+    private long numValues;
+
+    /**
+     * The number of errors (-999) encountered in the data
+     */
+    private int numErrs;
+
+    /**
+     * A view of every day's temperatures, or null until a query needs it
+     */
+    private SortedRuns tempRuns;
+
+    /**
+     * A view of every day's humidities, or null until a query needs it
+     */
+    private SortedRuns humRuns;
+
+    /**
+     * Constructs a new SegmentedStrategy with daily partitions
+     */
+    public SegmentedStrategy(){
+        this(DAILY);
+    }
+
+    /**
+     * Constructs a new SegmentedStrategy
+     * @param partitionDays the number of days in each partition, such as DAILY or WEEKLY; partitions are counted from 1970-01-01
+     * @throws IllegalArgumentException if partitionDays is less than 1
+     */
+    public SegmentedStrategy(int partitionDays){
+        if (partitionDays < 1)
+            throw new IllegalArgumentException("a partition needs at least one day");
+        this.partitionDays = partitionDays;
+        sealed = new ArrayList<SealedSegment>();
+        sealedPartitions = new ArrayList<Long>();
+        current = new ArrayList<DateReading>();
+        currentPartition = Long.MIN_VALUE;
+        dayHours = new DateIndex<HourlyIndex>();
+        numValues = 0;
+        numErrs = 0;
+    }
+
+    /**
+     * Processes data: the batch is bucketed by date in one pass, then each day's new readings are sorted and merged into
+     * the current partition, sealing it first if the day is in a later partition, or into a new copy of the sealed segment
+     * of an earlier partition
+     *
+     * @param data raw data
+     */
+    @Override
+    public void processData(List<Double> data) {
+        IngestEvent parse = new IngestEvent();
+        parse.begin();
+        ArrayList<DateReading> batch = new ArrayList<DateReading>();
+        int frames = DateReading.parse(data, batch, true);
+        for (DateReading dr : batch){
+            numErrs += dr.getErrors();
+            HourlyIndex hours = dayHours.get(dr.getDate());
+            if (hours == null)
+                dayHours.put(dr.getDate(), dr.getHourly());
+            else
+                hours.merge(dr.getHourly());
+            dr.setHourly(null);
+        }
+        parse.record("parseData", this, data.size(), frames, batch.size());
+
+        IngestEvent merge = new IngestEvent();
+        merge.begin();
+        batch.sort((a, b) -> Double.compare(a.getDate(), b.getDate()));
+        for (DateReading dr : batch){
+            dr.getTemps().sort(Double::compare);
+            dr.getHums().sort(Double::compare);
+            numValues += dr.getTemps().size() + dr.getHums().size();
+            long partition = partitionOf(dr.getDate());
+            if (partition > currentPartition){
+                seal();
+                currentPartition = partition;
+            }
+            if (partition == currentPartition)
+                addCurrent(dr);
+            else
+                addLate(partition, dr);
+        }
+        tempRuns = null;
+        humRuns = null;
+        merge.record("mergeData", this, data.size(), frames, batch.size());
+    }
+
+    /**
+     * Seals the current partition, if it has any readings, so that later readings for it are kept as late readings
+     */
+    public void seal(){
+        if (current.isEmpty())
+            return;
+        sealed.add(SealedSegment.seal(current));
+        sealedPartitions.add(currentPartition);
+        current = new ArrayList<DateReading>();
+    }
+
+    /**
+     * @return the sealed segments, in date order; they never change and may be read by any thread
+     */
+    public List<SealedSegment> segments(){
+        return Collections.unmodifiableList(new ArrayList<SealedSegment>(sealed));
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading() {
+        return quantile(0.5);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the stored readings ignoring error values (-999s)
+     *
+     * @param onDate the date which to consider medianReadings for (inclusive) with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the middle temperature of all the sensor values (value at index (size() / 2) of the sorted temperatures)
+     * and the middle humidity of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading middleReading(double onDate) {
+        return quantile(0.5, onDate);
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) of the readings in a range of time, selecting
+     * across the sorted days the range covers whole (in parallel when there are many) and the hour buckets of the (at most
+     * two) days it covers in part, without merging them
+     *
+     * @param from the first datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @param to the last datetime, inclusive, YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return a new SensorReading object with the value at index (size() / 2) of the range's sorted temperatures and humidities,
+     * or -999 for either if the range has none
+     */
+    @Override
+    public TempHumidReading middleReading(double from, double to) {
+        double start = Utility.rangeStart(from);
+        double end = Utility.rangeEnd(to);
+        double firstDate = Utility.toDate(start);
+        double lastDate = Utility.toDate(end);
+        int fromSecond = Utility.firstSecondOn(start, firstDate);
+        int toSecond = Utility.lastSecondOn(end, lastDate);
+        SortedRuns temps = new SortedRuns();
+        SortedRuns hums = new SortedRuns();
+        if (Utility.sameDate(firstDate, lastDate) && (fromSecond > 0 || toSecond < HourBuckets.DAY - 1))
+            addHours(temps, hums, firstDate, fromSecond, toSecond);
+        else {
+            //dates are whole numbers, so the days after a date are those from date + 1 on
+            if (fromSecond > 0){
+                addHours(temps, hums, firstDate, fromSecond, HourBuckets.DAY - 1);
+                firstDate += 1;
+            }
+            if (toSecond < HourBuckets.DAY - 1){
+                addHours(temps, hums, lastDate, 0, toSecond);
+                lastDate -= 1;
+            }
+            addRuns(temps, hums, firstDate, lastDate);
+        }
+        return new SuperTempHumidReading(temps.quantile(0.5), hums.quantile(0.5));
+    }
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     * once the view of every day is built after a batch while there are fewer than SortedRuns.PARALLEL_RUNS days
+     *
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature() {
+        return tempRuns().quantile(0.5);
+    }
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     * once the view of every day is built after a batch while there are fewer than SortedRuns.PARALLEL_RUNS days
+     *
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity() {
+        return humRuns().quantile(0.5);
+    }
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    @Override
+    public double middleTemperature(double onDate) {
+        return dayQuantile(onDate, 0.5, true);
+    }
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     *
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    @Override
+    public double middleHumidity(double onDate) {
+        return dayQuantile(onDate, 0.5, false);
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q) {
+        return new SuperTempHumidReading(tempRuns().quantile(q), humRuns().quantile(q));
+    }
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     *
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    @Override
+    public TempHumidReading quantile(double q, double onDate) {
+        return new SuperTempHumidReading(dayQuantile(onDate, q, true), dayQuantile(onDate, q, false));
+    }
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     *
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    @Override
+    public TempHumidReading[] quantiles(double[] qs) {
+        TempHumidReading[] readings = new TempHumidReading[qs.length];
+        for (int i = 0; i < qs.length; i++)
+            readings[i] = quantile(qs[i]);
+        return readings;
+    }
+
+    /**
+     * produces the middle temperature and humidity on each of several dates
+     *
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    @Override
+    public void middleReadings(double[] dates, double[] out) {
+        Utility.checkReadingsOut(dates, out);
+        for (int i = 0; i < dates.length; i++){
+            out[2 * i] = dayQuantile(dates[i], 0.5, true);
+            out[2 * i + 1] = dayQuantile(dates[i], 0.5, false);
+        }
+    }
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order
+     *
+     * @param visitor receives each day
+     */
+    @Override
+    public void forEachDay(DailySummaryVisitor visitor) {
+        for (SealedSegment s : sealed)
+            for (int d = 0; d < s.days(); d++)
+                visitor.visitDay(s.date(d), s.tempQuantile(d, 0.5), s.humQuantile(d, 0.5), s.tempCount(d), s.humCount(d),
+                        s.errors(d));
+        for (DateReading d : current)
+            visitor.visitDay(d.getDate(), d.tempQuantile(0.5), d.humQuantile(0.5),
+                    d.tempCount(), d.humCount(), d.getErrors());
+    }
+
+    /**
+     * adds every stored reading and the number of errors to a mergeable summary
+     *
+     * @param summary the summary to add to
+     */
+    @Override
+    public void summarizeInto(ReadingSummary summary) {
+        for (SealedSegment s : sealed)
+            s.summarizeInto(summary);
+        for (DateReading d : current){
+            for (int i = 0; i < d.getTemps().size(); i++)
+                summary.addTemp(d.getTemps().get(i));
+            for (int i = 0; i < d.getHums().size(); i++)
+                summary.addHum(d.getHums().get(i));
+            summary.addErrors(d.getErrors());
+        }
+    }
+
+    /**
+     * computes the current percentage of non-datetime sensor values that are -999.0s
+     * @return a percent value between 0.0 and 100.0 inclusive
+     */
+    @Override
+    public double percentError(){
+        return (numErrs / (double)(numValues + numErrs)) * 100.0;
+    }
+
+    //helpers
+    /**
+     * @param date a date formatted as a double
+     * @return the number of the partition the date falls in
+     */
+    private long partitionOf(double date){
+        return Math.floorDiv(Utility.toEpochSecond(date * 1000000.0), 24L * 60 * 60 * partitionDays);
+    }
+
+    /**
+     * Merges the readings of a day into the current partition
+     * @param dr the day's sorted readings
+     */
+    private void addCurrent(DateReading dr){
+        int i = current.size();
+        while (i > 0 && current.get(i - 1).getDate() > dr.getDate() + 0.001)
+            i--;
+        if (i > 0 && Utility.sameDate(current.get(i - 1).getDate(), dr.getDate()))
+            current.get(i - 1).merge(dr);
+        else
+            current.add(i, dr);
+    }
+
+    /**
+     * Adds the readings of a day in an earlier partition, replacing that partition's segment
+     * @param partition the day's partition
+     * @param dr the day's sorted readings
+     */
+    private void addLate(long partition, DateReading dr){
+        int i = Collections.binarySearch(sealedPartitions, partition);
+        if (i >= 0)
+            sealed.set(i, sealed.get(i).with(dr));
+        else {
+            sealed.add(-i - 1, SealedSegment.seal(List.of(dr)));
+            sealedPartitions.add(-i - 1, partition);
+        }
+    }
+
+    /**
+     * Finds the value at a quantile of the readings on a date
+     * @param onDate a date formatted as a double
+     * @param q the quantile, from 0.0 to 1.0
+     * @param temps true for temperatures, false for humidities
+     * @return the value, or -999 if there are none
+     */
+    private double dayQuantile(double onDate, double q, boolean temps){
+        long partition = partitionOf(onDate);
+        if (partition == currentPartition){
+            for (DateReading d : current)
+                if (Utility.sameDate(d.getDate(), onDate))
+                    return temps ? d.tempQuantile(q) : d.humQuantile(q);
+            return -999.0;
+        }
+        int i = Collections.binarySearch(sealedPartitions, partition);
+        if (i < 0)
+            return -999.0;
+        SealedSegment s = sealed.get(i);
+        int day = s.indexOf(onDate);
+        if (day < 0)
+            return -999.0;
+        return temps ? s.tempQuantile(day, q) : s.humQuantile(day, q);
+    }
+
+    /**
+     * Adds the readings of every day in a date range to views of sorted runs, which rank pivots in parallel
+     * @param temps receives each day's temperatures
+     * @param hums receives each day's humidities
+     * @param fromDate the first date, inclusive
+     * @param toDate the last date, inclusive
+     */
+    private void addRuns(SortedRuns temps, SortedRuns hums, double fromDate, double toDate){
+        temps.setParallel(true);
+        hums.setParallel(true);
+        for (SealedSegment s : sealed)
+            if (s.lastDate() > fromDate - 0.001 && s.firstDate() < toDate + 0.001)
+                s.addTo(temps, hums, fromDate, toDate);
+        for (DateReading d : current){
+            if (d.getDate() > fromDate - 0.001 && d.getDate() < toDate + 0.001){
+                d.addTempsTo(temps);
+                d.addHumsTo(hums);
+            }
+        }
+    }
+
+    /**
+     * Adds the readings of a date between two times of the day to views of sorted runs
+     * @param temps receives the temperatures
+     * @param hums receives the humidities
+     * @param date the date
+     * @param fromSecond the first second of the day, inclusive
+     * @param toSecond the last second of the day, inclusive
+     */
+    private void addHours(SortedRuns temps, SortedRuns hums, double date, int fromSecond, int toSecond){
+        HourlyIndex hours = dayHours.get(date);
+        if (hours != null)
+            hours.addTo(temps, hums, fromSecond, toSecond);
+    }
+
+    /**
+     * @return a view of every day's temperatures, built when first needed after a batch
+     */
+    private SortedRuns tempRuns(){
+        if (tempRuns == null)
+            buildRuns();
+        return tempRuns;
+    }
+
+    /**
+     * @return a view of every day's humidities, built when first needed after a batch
+     */
+    private SortedRuns humRuns(){
+        if (humRuns == null)
+            buildRuns();
+        return humRuns;
+    }
+
+    /**
+     * Builds the views of every day's temperatures and humidities
+     */
+    private void buildRuns(){
+        tempRuns = new SortedRuns();
+        humRuns = new SortedRuns();
+        addRuns(tempRuns, humRuns, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+}
@@ -1,4 +1,5 @@
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 public interface Sensible {
 
@@ -32,4 +33,84 @@ public interface Sensible {
      *         If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
      */
     public TempHumidReading middleReading(double onDate);
+
+    /**
+     * produces middleReading() asynchronously. Identical queries asked while one is waiting to run share its answer.
+     * @return a future for the reading, which the caller may cancel or time out without affecting other callers
+     */
+    public CompletableFuture<TempHumidReading> middleReadingAsync();
+
+    /**
+     * produces middleReading(onDate) asynchronously. Identical queries asked while one is waiting to run share its answer.
+     * @param onDate the date which to consider medianReadings for (inclusive) with the format YYYYMMDD.0
+     * @return a future for the reading, which the caller may cancel or time out without affecting other callers
+     */
+    public CompletableFuture<TempHumidReading> middleReadingAsync(double onDate);
+
+    /**
+     * produces the middle temperature from the stored readings ignoring error values (-999s), without allocating
+     * @return the value at index (size() / 2) of the sorted temperatures, or -999 if there are none
+     */
+    public double middleTemperature();
+
+    /**
+     * produces the middle humidity from the stored readings ignoring error values (-999s), without allocating
+     * @return the value at index (size() / 2) of the sorted humidities, or -999 if there are none
+     */
+    public double middleHumidity();
+
+    /**
+     * produces the middle temperature from the readings on a date ignoring error values (-999s), without allocating
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted temperatures on that date, or -999 if there are none
+     */
+    public double middleTemperature(double onDate);
+
+    /**
+     * produces the middle humidity from the readings on a date ignoring error values (-999s), without allocating
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return the value at index (size() / 2) of the sorted humidities on that date, or -999 if there are none
+     */
+    public double middleHumidity(double onDate);
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the stored readings ignoring error values (-999s)
+     * @param q the quantile, from 0.0 to 1.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    public TempHumidReading quantile(double q);
+
+    /**
+     * produces a pair of the temperature and humidity (respectively) at quantile q of the readings on a date ignoring error values (-999s)
+     * @param q the quantile, from 0.0 to 1.0
+     * @param onDate the date which to consider readings for with the format YYYYMMDD.0
+     * @return a new SensorReading object that has the temperature at index (q * size()) of the sorted temperatures (capped at the last one)
+     * and the humidity at the same quantile of the sorted humidities
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     */
+    public TempHumidReading quantile(double q, double onDate);
+
+    /**
+     * produces the temperature and humidity at each of several quantiles of the stored readings ignoring error values (-999s)
+     * @param qs the quantiles, each from 0.0 to 1.0
+     * @return a new SensorReading object per quantile, in the same order as qs
+     */
+    public TempHumidReading[] quantiles(double[] qs);
+
+    /**
+     * produces the middle temperature and humidity on each of several dates, looking the dates up in date order
+     * @param dates the dates which to consider readings for with the format YYYYMMDD.0, in any order
+     * @param out receives the middle temperature of dates[i] at out[2 * i] and the middle humidity at out[2 * i + 1],
+     *            or -999 if there are no valid values on that date
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    public void middleReadings(double[] dates, double[] out);
+
+    /**
+     * gives the summary of every day with readings to a visitor, in date order
+     * @param visitor receives each day
+     */
+    public void forEachDay(DailySummaryVisitor visitor);
 }
@@ -0,0 +1,97 @@
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Encodes and decodes the binary frames sensors send to a SensorIngestServer.
+ * A frame is a datetime followed by N temperature humidity pairs:
+ * [long YYYYMMDDhhmmss][short N][short temperature * 10, short humidity * 10] * N
+ * so values keep the sensors' 0.1 resolution and -999 stays -999.
+ */
+public class SensorFrameCodec {
+
+    /**
+     * The number of bytes before the pairs of a frame
+     */
+    public static final int HEADER_SIZE = 8 + 2;
+
+    /**
+     * The number of bytes in one temperature humidity pair
+     */
+    public static final int PAIR_SIZE = 2 + 2;
+
+    /**
+     * The number of bytes in the largest frame, with Short.MAX_VALUE pairs
+     */
+    public static final int MAX_FRAME_SIZE = HEADER_SIZE + Short.MAX_VALUE * PAIR_SIZE;
+
+    /**
+     * @param pairs the number of temperature humidity pairs
+     * @return the number of bytes in a frame with that many pairs
+     */
+    public static int frameSize(int pairs){
+        return HEADER_SIZE + pairs * PAIR_SIZE;
+    }
+
+    /**
+     * @param in a buffer in read mode
+     * @return the number of bytes in the frame starting at in's position, or HEADER_SIZE if its header is not all
+     * in the buffer yet
+     */
+    public static int nextFrameSize(ByteBuffer in){
+        if (in.remaining() < HEADER_SIZE)
+            return HEADER_SIZE;
+        return frameSize(Math.max(in.getShort(in.position() + 8), 0));
+    }
+
+    /**
+     * Writes a frame
+     * @param frame an ordered sequence of [datetime, temperature, humidity, temperature, humidity, ...]
+     * @param out the buffer to write to, which must have frameSize(pairs) bytes remaining
+     * @throws IllegalArgumentException if the frame has a dangling value or a value does not fit in a frame
+     */
+    public static void encode(List<Double> frame, ByteBuffer out){
+        int pairs = (frame.size() - 1) / 2;
+        if (frame.size() % 2 == 0 || pairs > Short.MAX_VALUE)
+            throw new IllegalArgumentException("a frame is a datetime followed by at most " + Short.MAX_VALUE + " pairs");
+        out.putLong((long) (double) frame.get(0));
+        out.putShort((short) pairs);
+        for (int i = 1; i < frame.size(); i++)
+            out.putShort(quantize(frame.get(i)));
+    }
+
+    /**
+     * Reads one frame if all of it is in the buffer
+     * @param in the buffer to read from, in read mode
+     * @param out the list to append the frame's datetime and values to
+     * @return true if a frame was read, false (leaving in untouched) if the frame is not complete yet
+     */
+    public static boolean decode(ByteBuffer in, List<Double> out){
+        if (in.remaining() < HEADER_SIZE)
+            return false;
+        int pairs = in.getShort(in.position() + 8);
+        if (pairs < 0)
+            throw new IllegalArgumentException("negative pair count " + pairs);
+        if (in.remaining() < frameSize(pairs))
+            return false;
+
+        out.add((double) in.getLong());
+        in.getShort();
+        for (int i = 0; i < pairs * 2; i++)
+            out.add(in.getShort() / 10.0);
+        return true;
+    }
+
+    //helpers
+    /**
+     * Rounds a value to tenths
+     * @param value a temperature, humidity or -999
+     * @return the value in tenths
+     * @throws IllegalArgumentException if the value does not fit in a short
+     */
+    private static short quantize(double value){
+        long tenths = Math.round(value * 10.0);
+        if (tenths < Short.MIN_VALUE || tenths > Short.MAX_VALUE)
+            throw new IllegalArgumentException(value + " does not fit in a frame");
+        return (short) tenths;
+    }
+}
@@ -0,0 +1,149 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * Feeds frames of sensor data from a Flow.Publisher into a greenhouse.
+ * At most bufferSize frames are requested ahead of what has been polled, so a greenhouse that falls behind
+ * slows the publisher down. Small frames are batched into a single pollSensorData call.
+ */
+public class SensorFrameSubscriber implements Flow.Subscriber<List<Double>> {
+
+    /**
+     * The greenhouse to poll, which is also what polls are synchronized on
+     */
+    private Sensible target;
+
+    /**
+     * The most frames that may be requested and not yet polled
+     */
+    private int bufferSize;
+
+    /**
+     * The number of values at which a batch is polled
+     */
+    private int batchSize;
+
+    /**
+     * The subscription frames are requested from
+     */
+    private Flow.Subscription subscription;
+
+    /**
+     * Frames received and not yet polled, concatenated
+     */
+    private ArrayList<Double> batch;
+
+    /**
+     * The number of frames in batch
+     */
+    private int framesInBatch;
+
+    /**
+     * The number of frames requested and not yet received
+     */
+    private int outstanding;
+
+    /**
+     * Completes once the publisher completes and everything has been polled
+     */
+    private CompletableFuture<Void> completion;
+
+    /**
+     * Constructs a sensor frame subscriber
+     * @param target the greenhouse to poll
+     * @param bufferSize the most frames that may be requested and not yet polled
+     * @param batchSize the number of values at which a batch is polled
+     */
+    public SensorFrameSubscriber(Sensible target, int bufferSize, int batchSize){
+        if (bufferSize <= 0)
+            throw new IllegalArgumentException("bufferSize must be positive");
+        this.target = target;
+        this.bufferSize = bufferSize;
+        this.batchSize = batchSize;
+        batch = new ArrayList<Double>();
+        framesInBatch = 0;
+        outstanding = 0;
+        completion = new CompletableFuture<Void>();
+    }
+
+    /**
+     * Requests the first bufferSize frames
+     * @param subscription the subscription
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null){
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        outstanding = bufferSize;
+        subscription.request(bufferSize);
+    }
+
+    /**
+     * Adds a frame to the batch, polling the batch when it is big enough
+     * or when every requested frame has arrived
+     * @param frame an ordered sequence of [datetime, temperature, humidity, temperature, humidity, ...]
+     */
+    @Override
+    public void onNext(List<Double> frame) {
+        outstanding--;
+        framesInBatch++;
+        batch.addAll(frame);
+        if (batch.size() >= batchSize || outstanding == 0)
+            flush();
+    }
+
+    /**
+     * Polls what has been received so far and fails the completion
+     * @param throwable the error
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        pollBatch();
+        completion.completeExceptionally(throwable);
+    }
+
+    /**
+     * Polls what has been received so far and completes the completion
+     */
+    @Override
+    public void onComplete() {
+        pollBatch();
+        completion.complete(null);
+    }
+
+    /**
+     * @return a future which completes once the publisher completes and everything has been polled
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    //helpers
+    /**
+     * Polls the batch, then requests as many frames as it held
+     */
+    private void flush(){
+        int consumed = framesInBatch;
+        pollBatch();
+        outstanding += consumed;
+        subscription.request(consumed);
+    }
+
+    /**
+     * Polls the batch into the greenhouse, holding its lock as SensorIngestServer does, and starts a new one
+     */
+    private void pollBatch(){
+        if (framesInBatch == 0)
+            return;
+        synchronized (target){
+            target.pollSensorData(batch);
+        }
+        batch = new ArrayList<Double>();
+        framesInBatch = 0;
+    }
+}
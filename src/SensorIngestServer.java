@@ -0,0 +1,221 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A socket server which sensors connect to and send SensorFrameCodec frames over.
+ * Each connection is served by its own (virtual, where the JVM has them) thread, which decodes frames
+ * straight out of a direct buffer and polls them into the greenhouse.
+ */
+public class SensorIngestServer implements AutoCloseable {
+
+    /**
+     * The initial size of each connection's read buffer, which holds many typical frames. A connection's buffer grows
+     * (in powers of two, up to the largest frame the codec accepts) only when a frame header announces a larger frame.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * The greenhouse frames are polled into, which is also what polls are synchronized on
+     */
+    private Sensible greenhouse;
+
+    /**
+     * The address to listen on
+     */
+    private InetSocketAddress address;
+
+    /**
+     * The listening channel, or null before start()
+     */
+    private ServerSocketChannel server;
+
+    /**
+     * Runs the accept loop and one task per connection
+     */
+    private ExecutorService executor;
+
+    /**
+     * The open connections
+     */
+    private Set<SocketChannel> connections;
+
+    /**
+     * The number of frames polled so far
+     */
+    private AtomicLong framesReceived;
+
+    /**
+     * Why the accept loop stopped, if it stopped for anything but close()
+     */
+    private volatile IOException acceptFailure;
+
+    /**
+     * Constructs an ingest server
+     * @param greenhouse the greenhouse frames are polled into
+     * @param address the address to listen on, e.g. new InetSocketAddress(InetAddress.getLoopbackAddress(), 0)
+     */
+    public SensorIngestServer(Sensible greenhouse, InetSocketAddress address){
+        this.greenhouse = greenhouse;
+        this.address = address;
+        connections = ConcurrentHashMap.newKeySet();
+        framesReceived = new AtomicLong();
+    }
+
+    /**
+     * Starts listening and accepting connections
+     * @throws IOException if the address cannot be bound
+     */
+    public void start() throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(address, 4096);
+        executor = newConnectionExecutor();
+        executor.execute(this::acceptLoop);
+    }
+
+    /**
+     * @return the port being listened on
+     * @throws IOException if the port cannot be read
+     */
+    public int getPort() throws IOException {
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+    /**
+     * @return the number of frames polled so far
+     */
+    public long getFramesReceived(){
+        return framesReceived.get();
+    }
+
+    /**
+     * @return why the server stopped accepting connections, or null if it is accepting or was closed
+     */
+    public IOException getAcceptFailure(){
+        return acceptFailure;
+    }
+
+    /**
+     * @return the number of open connections
+     */
+    public int getConnectionCount(){
+        return connections.size();
+    }
+
+    /**
+     * Stops listening and closes every connection; does nothing if the server was never started
+     * @throws IOException if the listening channel cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (server == null)
+            return;
+        server.close();
+        for (SocketChannel c : connections)
+            c.close();
+        executor.shutdown();
+    }
+
+    /**
+     * Creates an executor with a virtual thread per task when the JVM supports them (Java 21+),
+     * falling back to a cached pool of daemon platform threads
+     * @return a new executor
+     */
+    static ExecutorService newConnectionExecutor(){
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "sensor-ingest");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    //helpers
+    /**
+     * Accepts connections until the server is closed. Any other failure stops the server from listening
+     * and is kept for getAcceptFailure, since nothing else would see it on the executor.
+     */
+    private void acceptLoop(){
+        try {
+            while (true){
+                SocketChannel c = server.accept();
+                connections.add(c);
+                executor.execute(() -> serve(c));
+            }
+        } catch (ClosedChannelException e) {
+            // closed by close()
+        } catch (IOException e) {
+            acceptFailure = e;
+            try {
+                server.close();
+            } catch (IOException closing) {
+                e.addSuppressed(closing);
+            }
+        }
+    }
+
+    /**
+     * Reads frames from a connection until it is closed, polling whatever frames each read completes
+     * @param c the connection
+     */
+    private void serve(SocketChannel c){
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        ArrayList<Double> batch = new ArrayList<Double>();
+        try {
+            while (c.read(buffer) >= 0){
+                buffer.flip();
+                int frames = 0;
+                while (SensorFrameCodec.decode(buffer, batch))
+                    frames++;
+                int needed = SensorFrameCodec.nextFrameSize(buffer);
+                if (needed > buffer.capacity())
+                    buffer = grow(buffer, needed);
+                else
+                    buffer.compact();
+                if (frames > 0){
+                    synchronized (greenhouse){
+                        greenhouse.pollSensorData(batch);
+                    }
+                    framesReceived.addAndGet(frames);
+                    batch.clear();
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            // a broken or misbehaving sensor only loses its own connection
+        } finally {
+            connections.remove(c);
+            try {
+                c.close();
+            } catch (IOException e) {
+                // already closing
+            }
+        }
+    }
+
+    /**
+     * Moves what is left of a read buffer to a larger one
+     * @param buffer the buffer, in read mode
+     * @param needed the number of bytes the new buffer must hold
+     * @return the new buffer, in write mode after the bytes moved
+     */
+    private static ByteBuffer grow(ByteBuffer buffer, int needed){
+        int size = buffer.capacity();
+        while (size < needed)
+            size *= 2;
+        ByteBuffer larger = ByteBuffer.allocateDirect(Math.min(size, SensorFrameCodec.MAX_FRAME_SIZE));
+        larger.put(buffer);
+        return larger;
+    }
+}
@@ -0,0 +1,152 @@
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Opens many sensor connections to a SensorIngestServer and sends each of them a fixed number of frames,
+ * for testing the server over loopback
+ */
+public class SensorLoadGenerator {
+
+    /**
+     * The address of the server
+     */
+    private InetSocketAddress address;
+
+    /**
+     * The number of concurrent connections
+     */
+    private int connections;
+
+    /**
+     * The number of frames each connection sends
+     */
+    private int framesPerConnection;
+
+    /**
+     * The number of temperature humidity pairs in each frame
+     */
+    private int pairs;
+
+    /**
+     * The seed frames are generated from
+     */
+    private long seed;
+
+    /**
+     * Constructs a load generator
+     * @param address the address of the server
+     * @param connections the number of concurrent connections
+     * @param framesPerConnection the number of frames each connection sends
+     * @param pairs the number of temperature humidity pairs in each frame
+     * @param seed the seed frames are generated from
+     */
+    public SensorLoadGenerator(InetSocketAddress address, int connections, int framesPerConnection, int pairs, long seed){
+        this.address = address;
+        this.connections = connections;
+        this.framesPerConnection = framesPerConnection;
+        this.pairs = pairs;
+        this.seed = seed;
+    }
+
+    /**
+     * Generates one frame. Frame i of every connection has the datetime 2023-11-06 00:00:00 plus i seconds,
+     * and about 1 in 50 values is a -999.
+     * @param connection the connection sending the frame
+     * @param index the index of the frame within the connection
+     * @return an ordered sequence of [datetime, temperature, humidity, temperature, humidity, ...]
+     */
+    public List<Double> frame(int connection, int index){
+        Random random = new Random(seed * 31 + connection * 1_000_003L + index);
+        ArrayList<Double> frame = new ArrayList<Double>();
+        frame.add(Utility.fromEpochSecond(Utility.toEpochSecond(20231106000000.0) + index));
+        for (int p = 0; p < pairs; p++){
+            frame.add(random.nextInt(50) == 0 ? -999.0 : 50 + random.nextInt(400) / 10.0);
+            frame.add(random.nextInt(50) == 0 ? -999.0 : random.nextInt(1001) / 10.0);
+        }
+        return frame;
+    }
+
+    /**
+     * Opens every connection, sends every frame, and closes the connections
+     * @return the number of frames sent
+     * @throws Exception if a connection fails
+     */
+    public long run() throws Exception {
+        ExecutorService executor = SensorIngestServer.newConnectionExecutor();
+        ArrayList<Future<Integer>> sent = new ArrayList<Future<Integer>>();
+        for (int c = 0; c < connections; c++){
+            int connection = c;
+            sent.add(executor.submit(() -> send(connection)));
+        }
+        long total = 0;
+        for (Future<Integer> f : sent)
+            total += f.get();
+        executor.shutdown();
+        return total;
+    }
+
+    /**
+     * Runs a load test against a GreenHouseProduce over loopback and prints the throughput
+     * @param args [connections, framesPerConnection, pairs]
+     * @throws Exception if the test fails
+     */
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int frames = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int pairs = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+
+        try (SensorIngestServer server = new SensorIngestServer(new GreenHouseProduce(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))){
+            server.start();
+            SensorLoadGenerator generator = new SensorLoadGenerator(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()), connections, frames, pairs, 29);
+            long start = System.nanoTime();
+            long sent = generator.run();
+            while (server.getFramesReceived() < sent)
+                Thread.sleep(1);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d connections, %d frames in %.2fs (%.0f frames/s)%n", connections, sent, seconds, sent / seconds);
+        }
+    }
+
+    //helpers
+    /**
+     * Sends every frame of one connection
+     * @param connection the connection
+     * @return the number of frames sent
+     * @throws IOException if the connection fails
+     */
+    private int send(int connection) throws IOException {
+        try (SocketChannel c = SocketChannel.open(address)){
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SensorFrameCodec.frameSize(pairs) * 64);
+            for (int i = 0; i < framesPerConnection; i++){
+                if (buffer.remaining() < SensorFrameCodec.frameSize(pairs))
+                    drain(c, buffer);
+                SensorFrameCodec.encode(frame(connection, i), buffer);
+            }
+            drain(c, buffer);
+        }
+        return framesPerConnection;
+    }
+
+    /**
+     * Writes everything in a buffer to a connection
+     * @param c the connection
+     * @param buffer the buffer, in write mode
+     * @throws IOException if the connection fails
+     */
+    private void drain(SocketChannel c, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            c.write(buffer);
+        buffer.clear();
+    }
+}
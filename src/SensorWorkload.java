@@ -0,0 +1,437 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A seeded generator of realistic pollSensorData streams: many sensors per frame, a regular cadence broken by
+ * gaps and bursts, scattered -999 errors and storms where every sensor reports -999, over a range of days.
+ * Temperatures and humidities follow a daily cycle around a per-sensor baseline, at the sensors' 0.1 resolution.
+ * The same seed and settings always produce the same stream. Streams can be written to disk
+ * (as polls of SensorFrameCodec frames) and replayed at a controlled rate against any greenhouse.
+ */
+public class SensorWorkload {
+
+    /**
+     * The seed
+     */
+    private long seed;
+
+    /**
+     * The number of temperature humidity pairs in each frame
+     */
+    private int sensors;
+
+    /**
+     * The first date, YYYYMMDD.0
+     */
+    private double startDate;
+
+    /**
+     * The number of days covered
+     */
+    private int days;
+
+    /**
+     * The usual time between frames, in seconds
+     */
+    private long cadence;
+
+    /**
+     * The number of frames in each poll
+     */
+    private int framesPerPoll;
+
+    /**
+     * The chance of each value being -999
+     */
+    private double errorRate;
+
+    /**
+     * The chance of an error storm starting after each frame
+     */
+    private double stormRate;
+
+    /**
+     * The number of frames an error storm lasts
+     */
+    private int stormFrames;
+
+    /**
+     * The chance of a gap (sensors off) after each frame
+     */
+    private double gapRate;
+
+    /**
+     * The longest gap, in seconds
+     */
+    private long maxGap;
+
+    /**
+     * The chance of a burst starting after each frame
+     */
+    private double burstRate;
+
+    /**
+     * The number of frames in a burst, which are one second apart
+     */
+    private int burstFrames;
+
+    /**
+     * Constructs a workload with a one minute cadence, polls of 60 frames, 1% errors, occasional 30 frame error storms,
+     * occasional gaps of up to 6 hours and occasional 20 frame bursts
+     * @param seed the seed
+     * @param sensors the number of temperature humidity pairs in each frame
+     * @param startDate the first date with the format YYYYMMDD.0
+     * @param days the number of days covered
+     */
+    public SensorWorkload(long seed, int sensors, double startDate, int days){
+        if (sensors < 1 || days < 1)
+            throw new IllegalArgumentException("a workload needs at least one sensor and one day");
+        this.seed = seed;
+        this.sensors = sensors;
+        this.startDate = startDate;
+        this.days = days;
+        cadence = 60;
+        framesPerPoll = 60;
+        errorRate = 0.01;
+        stormRate = 0.001;
+        stormFrames = 30;
+        gapRate = 0.002;
+        maxGap = 6 * 60 * 60;
+        burstRate = 0.005;
+        burstFrames = 20;
+    }
+
+    /**
+     * Sets the usual time between frames
+     * @param cadence the time, at least one second
+     */
+    public void setCadence(Duration cadence){
+        if (cadence.getSeconds() < 1)
+            throw new IllegalArgumentException("cadence must be at least one second");
+        this.cadence = cadence.getSeconds();
+    }
+
+    /**
+     * Sets the number of frames in each poll
+     * @param framesPerPoll the number of frames, at least 1
+     */
+    public void setFramesPerPoll(int framesPerPoll){
+        if (framesPerPoll < 1)
+            throw new IllegalArgumentException("a poll needs at least one frame");
+        this.framesPerPoll = framesPerPoll;
+    }
+
+    /**
+     * Sets the chance of each value being -999 outside of error storms
+     * @param errorRate the chance, from 0.0 to 1.0
+     */
+    public void setErrorRate(double errorRate){
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * Sets how often every sensor reports -999 together, and for how long
+     * @param rate the chance of a storm starting after each frame, from 0.0 to 1.0
+     * @param frames the number of frames a storm lasts
+     */
+    public void setErrorStorms(double rate, int frames){
+        this.stormRate = rate;
+        this.stormFrames = frames;
+    }
+
+    /**
+     * Sets how often the sensors go quiet, and for how long at most
+     * @param rate the chance of a gap after each frame, from 0.0 to 1.0
+     * @param maxGap the longest gap
+     */
+    public void setGaps(double rate, Duration maxGap){
+        this.gapRate = rate;
+        this.maxGap = Math.max(1, maxGap.getSeconds());
+    }
+
+    /**
+     * Sets how often the sensors report in a burst of frames one second apart, and for how long
+     * @param rate the chance of a burst starting after each frame, from 0.0 to 1.0
+     * @param frames the number of frames in a burst
+     */
+    public void setBursts(double rate, int frames){
+        this.burstRate = rate;
+        this.burstFrames = frames;
+    }
+
+    /**
+     * Generates the stream, one poll at a time
+     * @param action receives each poll: an ordered sequence of [datetime, temperature, humidity, ..., datetime, ...]
+     */
+    public void forEachPoll(Consumer<List<Double>> action){
+        Random random = new Random(seed);
+        double[] baseTemps = new double[sensors];
+        double[] baseHums = new double[sensors];
+        for (int s = 0; s < sensors; s++){
+            baseTemps[s] = 60 + random.nextInt(200) / 10.0;
+            baseHums[s] = 40 + random.nextInt(300) / 10.0;
+        }
+
+        long time = Utility.toEpochSecond(startDate * 1000000);
+        long end = time + days * 24L * 60 * 60;
+        int stormLeft = 0;
+        int burstLeft = 0;
+        ArrayList<Double> poll = new ArrayList<Double>();
+        int frames = 0;
+        while (time < end){
+            poll.add(Utility.fromEpochSecond(time));
+            double cycle = Math.sin(2 * Math.PI * Math.floorMod(time, 24L * 60 * 60) / (24.0 * 60 * 60) - Math.PI / 2);
+            for (int s = 0; s < sensors; s++){
+                double temp = baseTemps[s] + 10 * cycle + random.nextGaussian();
+                double hum = Math.max(0, Math.min(100, baseHums[s] - 15 * cycle + 2 * random.nextGaussian()));
+                poll.add(stormLeft > 0 || random.nextDouble() < errorRate ? -999.0 : Math.round(temp * 10) / 10.0);
+                poll.add(stormLeft > 0 || random.nextDouble() < errorRate ? -999.0 : Math.round(hum * 10) / 10.0);
+            }
+            if (stormLeft > 0)
+                stormLeft--;
+            else if (random.nextDouble() < stormRate)
+                stormLeft = stormFrames;
+
+            frames++;
+            if (frames == framesPerPoll){
+                action.accept(poll);
+                poll = new ArrayList<Double>();
+                frames = 0;
+            }
+
+            if (burstLeft > 0){
+                burstLeft--;
+                time += 1;
+            } else if (random.nextDouble() < burstRate){
+                burstLeft = burstFrames - 1;
+                time += 1;
+            } else if (random.nextDouble() < gapRate)
+                time += cadence + 1 + (long) (random.nextDouble() * maxGap);
+            else
+                time += cadence;
+        }
+        if (frames > 0)
+            action.accept(poll);
+    }
+
+    /**
+     * Generates the whole stream
+     * @return every poll, in order
+     */
+    public List<List<Double>> polls(){
+        ArrayList<List<Double>> polls = new ArrayList<List<Double>>();
+        forEachPoll(polls::add);
+        return polls;
+    }
+
+    /**
+     * Writes the stream to a file: for each poll, an int frame count followed by that many SensorFrameCodec frames
+     * @param path the file, which is created or replaced
+     * @return the number of polls written
+     * @throws IOException if the file cannot be written
+     */
+    public long writeTo(Path path) throws IOException {
+        long[] polls = new long[1];
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)){
+            int frameSize = SensorFrameCodec.frameSize(sensors);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(64 * 1024, Integer.BYTES + frameSize));
+            IOException[] failure = new IOException[1];
+            forEachPoll(poll -> {
+                if (failure[0] != null)
+                    return;
+                try {
+                    int frameLength = 1 + 2 * sensors;
+                    if (buffer.remaining() < Integer.BYTES)
+                        drain(out, buffer);
+                    buffer.putInt(poll.size() / frameLength);
+                    for (int start = 0; start < poll.size(); start += frameLength){
+                        if (buffer.remaining() < frameSize)
+                            drain(out, buffer);
+                        SensorFrameCodec.encode(poll.subList(start, start + frameLength), buffer);
+                    }
+                    polls[0]++;
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null)
+                throw failure[0];
+            drain(out, buffer);
+        }
+        return polls[0];
+    }
+
+    /**
+     * Reads a stream written by writeTo
+     * @param path the file
+     * @param action receives each poll, in order
+     * @return the number of polls read
+     * @throws IOException if the file cannot be read or ends part way through a poll
+     */
+    public static long readFrom(Path path, Consumer<List<Double>> action) throws IOException {
+        long polls = 0;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)){
+            ByteBuffer[] buffer = {ByteBuffer.allocateDirect(64 * 1024)};
+            buffer[0].flip();
+            while (true){
+                while (buffer[0].remaining() < Integer.BYTES){
+                    if (!fill(in, buffer)){
+                        if (buffer[0].hasRemaining())
+                            throw new EOFException(path + " ends part way through a poll");
+                        return polls;
+                    }
+                }
+                int frames = buffer[0].getInt();
+                ArrayList<Double> poll = new ArrayList<Double>();
+                for (int f = 0; f < frames; f++){
+                    while (!SensorFrameCodec.decode(buffer[0], poll)){
+                        if (!fill(in, buffer))
+                            throw new EOFException(path + " ends part way through a frame");
+                    }
+                }
+                action.accept(poll);
+                polls++;
+            }
+        }
+    }
+
+    /**
+     * Polls a stream into a greenhouse at a controlled rate
+     * @param polls the polls, in order
+     * @param target the greenhouse
+     * @param pollsPerSecond the rate to poll at, or 0 to poll as fast as possible
+     * @return the number of polls
+     */
+    public static long replay(List<List<Double>> polls, AbsGreenHouse target, double pollsPerSecond){
+        Pacer pacer = new Pacer(pollsPerSecond);
+        for (List<Double> poll : polls){
+            pacer.await();
+            target.pollSensorData(poll);
+        }
+        return polls.size();
+    }
+
+    /**
+     * Polls a stream written by writeTo into a greenhouse at a controlled rate, reading it as it goes
+     * @param path the file
+     * @param target the greenhouse
+     * @param pollsPerSecond the rate to poll at, or 0 to poll as fast as possible
+     * @return the number of polls
+     * @throws IOException if the file cannot be read
+     */
+    public static long replay(Path path, AbsGreenHouse target, double pollsPerSecond) throws IOException {
+        Pacer pacer = new Pacer(pollsPerSecond);
+        return readFrom(path, poll -> {
+            pacer.await();
+            target.pollSensorData(poll);
+        });
+    }
+
+    /**
+     * Writes a workload to a file, or replays a file into a GreenHouseProduce and prints the achieved rate
+     * @param args write file seed sensors days, or replay file pollsPerSecond
+     * @throws IOException if the file cannot be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 5 && args[0].equals("write")){
+            SensorWorkload w = new SensorWorkload(Long.parseLong(args[2]), Integer.parseInt(args[3]), 20231106,
+                    Integer.parseInt(args[4]));
+            System.out.println(w.writeTo(Paths.get(args[1])) + " polls written to " + args[1]);
+        } else if (args.length == 3 && args[0].equals("replay")){
+            GreenHouseProduce g = new GreenHouseProduce(new GregorianCalendar(2023, Calendar.NOVEMBER, 6));
+            long start = System.nanoTime();
+            long polls = replay(Paths.get(args[1]), g, Double.parseDouble(args[2]));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("%d polls in %.2fs (%.0f polls/s), middle reading %s, %.2f%% errors%n",
+                    polls, seconds, polls / seconds, g.middleReading(), g.percentError());
+        } else
+            System.out.println("usage: SensorWorkload write file seed sensors days | replay file pollsPerSecond");
+    }
+
+    //helpers
+    /**
+     * Waits until each poll is due, keeping to a fixed schedule from the first poll so that late polls catch up
+     */
+    private static class Pacer {
+
+        /**
+         * The time between polls in nanoseconds, or 0 for no waiting
+         */
+        private long interval;
+
+        /**
+         * When the next poll is due
+         */
+        private long next;
+
+        /**
+         * Constructs a pacer
+         * @param pollsPerSecond the rate, or 0 for no waiting
+         */
+        Pacer(double pollsPerSecond){
+            interval = pollsPerSecond > 0 ? (long) (1e9 / pollsPerSecond) : 0;
+            next = System.nanoTime();
+        }
+
+        /**
+         * Waits until the next poll is due
+         */
+        void await(){
+            if (interval == 0)
+                return;
+            long wait;
+            while ((wait = next - System.nanoTime()) > 0)
+                LockSupport.parkNanos(wait);
+            next += interval;
+        }
+    }
+
+    /**
+     * Writes everything in a buffer to a file
+     * @param out the file
+     * @param buffer the buffer, in write mode
+     * @throws IOException if the file cannot be written
+     */
+    private static void drain(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            out.write(buffer);
+        buffer.clear();
+    }
+
+    /**
+     * Reads more of a file after the unread bytes of a buffer, replacing the buffer with a bigger copy if it is full
+     * @param in the file
+     * @param buffer holds the buffer, in read mode
+     * @return false if the file has ended
+     * @throws IOException if the file cannot be read
+     */
+    private static boolean fill(FileChannel in, ByteBuffer[] buffer) throws IOException {
+        ByteBuffer b = buffer[0];
+        b.compact();
+        if (!b.hasRemaining()){
+            ByteBuffer bigger = ByteBuffer.allocateDirect(b.capacity() * 2);
+            b.flip();
+            bigger.put(b);
+            b = bigger;
+            buffer[0] = b;
+        }
+        int n = in.read(b);
+        b.flip();
+        return n >= 0;
+    }
+}
@@ -0,0 +1,165 @@
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+/**
+ * A running median over the values seen in the last span seconds.
+ * Values are split between two counted multisets so that inserting and evicting are O(log w)
+ * and the middle value (index size() / 2 of the sorted window) is always the smallest value of the upper half.
+ */
+public class SlidingWindowMedian {
+
+    /**
+     * The length of the window in seconds
+     */
+    private long span;
+
+    /**
+     * The values in the window, oldest first, so late values can be added out of order
+     */
+    private PriorityQueue<TimedValue> entries;
+
+    /**
+     * The newest time seen, in seconds since the epoch
+     */
+    private long newest;
+
+    /**
+     * The smallest size() / 2 values in the window, mapped to how many times they occur
+     */
+    private TreeMap<Double, Integer> lower;
+
+    /**
+     * The remaining values in the window, mapped to how many times they occur
+     */
+    private TreeMap<Double, Integer> upper;
+
+    /**
+     * The number of values in lower
+     */
+    private int lowerSize;
+
+    /**
+     * Constructs an empty window
+     * @param span the length of the window in seconds
+     */
+    public SlidingWindowMedian(long span){
+        this.span = span;
+        entries = new PriorityQueue<TimedValue>(Comparator.comparingLong(TimedValue::getTime));
+        newest = Long.MIN_VALUE;
+        lower = new TreeMap<Double, Integer>();
+        upper = new TreeMap<Double, Integer>();
+        lowerSize = 0;
+    }
+
+    /**
+     * Constructs a window seeded with the values of source that fall within span of its newest value
+     * @param span the length of the window in seconds
+     * @param source a (longer) window to copy values from
+     */
+    public SlidingWindowMedian(long span, SlidingWindowMedian source){
+        this(span);
+        for (TimedValue e : source.entries)
+            add(e.getTime(), e.getValue());
+        if (!source.entries.isEmpty())
+            advanceTo(source.newest);
+    }
+
+    /**
+     * Adds a value to the window. Values may arrive late (out of time order);
+     * a value already older than the window is evicted by the next advanceTo.
+     * @param time the time of the value in seconds since the epoch
+     * @param value the value
+     */
+    public void add(long time, double value){
+        entries.add(new TimedValue(time, value));
+        newest = Math.max(newest, time);
+        if (!upper.isEmpty() && value >= upper.firstKey())
+            increment(upper, value);
+        else {
+            increment(lower, value);
+            lowerSize++;
+        }
+        rebalance();
+    }
+
+    /**
+     * Evicts every value that is no longer within span seconds of now
+     * @param now the current time in seconds since the epoch
+     */
+    public void advanceTo(long now){
+        while (!entries.isEmpty() && entries.peek().getTime() <= now - span){
+            double value = entries.poll().getValue();
+            if (lower.containsKey(value)){
+                decrement(lower, value);
+                lowerSize--;
+            } else
+                decrement(upper, value);
+            rebalance();
+        }
+    }
+
+    /**
+     * @return the value at index (size() / 2) of the sorted window, or -999.0 if the window is empty
+     */
+    public double median(){
+        if (upper.isEmpty())
+            return -999.0;
+        return upper.firstKey();
+    }
+
+    /**
+     * @return the number of values in the window
+     */
+    public int size(){
+        return entries.size();
+    }
+
+    /**
+     * @return the length of the window in seconds
+     */
+    public long getSpan(){
+        return span;
+    }
+
+    //helpers
+    /**
+     * Moves values between the halves until lower holds exactly size() / 2 of them
+     */
+    private void rebalance(){
+        while (lowerSize > size() / 2){
+            double moved = lower.lastKey();
+            decrement(lower, moved);
+            lowerSize--;
+            increment(upper, moved);
+        }
+        while (lowerSize < size() / 2){
+            double moved = upper.firstKey();
+            decrement(upper, moved);
+            increment(lower, moved);
+            lowerSize++;
+        }
+    }
+
+    /**
+     * Adds one occurrence of value to a multiset
+     * @param set the multiset
+     * @param value the value
+     */
+    private void increment(TreeMap<Double, Integer> set, double value){
+        set.merge(value, 1, Integer::sum);
+    }
+
+    /**
+     * Removes one occurrence of value from a multiset
+     * @param set the multiset
+     * @param value the value
+     */
+    private void decrement(TreeMap<Double, Integer> set, double value){
+        int count = set.get(value);
+        if (count == 1)
+            set.remove(value);
+        else
+            set.put(value, count - 1);
+    }
+}
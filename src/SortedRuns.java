@@ -0,0 +1,209 @@
+import java.nio.DoubleBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * A read-only view of several sorted runs of values as one sorted multiset, answering the k-th smallest without merging them.
+ * Runs are either sorted lists or sorted DoubleBuffers (such as mapped segments), and must not change while they are viewed.
+ * Selection repeatedly takes the middle of the widest remaining window as a pivot and ranks it in every run by binary search,
+ * so it takes O(m log n) rounds of O(m log n) work for m runs of up to n values, and does not allocate.
+ * A parallel view with many runs ranks each pivot in every run in parallel. A view is not safe for concurrent queries.
+ */
+public class SortedRuns {
+
+    /**
+     * The list runs, or null for a buffer run
+     */
+    private ArrayList<List<Double>> lists;
+
+    /**
+     * The buffer runs, or null for a list run
+     */
+    private ArrayList<DoubleBuffer> buffers;
+
+    /**
+     * The fewest runs for which a parallel view ranks pivots in parallel
+     */
+    public static final int PARALLEL_RUNS = 64;
+
+    /**
+     * True if pivots are ranked in parallel
+     */
+    private boolean parallel;
+
+    /**
+     * The total number of values
+     */
+    private long size;
+
+    /**
+     * Scratch space for the start of the window still searched in each run
+     */
+    private int[] lo;
+
+    /**
+     * Scratch space for the end (exclusive) of the window still searched in each run
+     */
+    private int[] hi;
+
+    /**
+     * Constructs a view of no runs
+     */
+    public SortedRuns(){
+        lists = new ArrayList<List<Double>>();
+        buffers = new ArrayList<DoubleBuffer>();
+        size = 0;
+        lo = new int[0];
+        hi = new int[0];
+    }
+
+    /**
+     * Adds a run
+     * @param run values in ascending order
+     */
+    public void add(List<Double> run){
+        lists.add(run);
+        buffers.add(null);
+        size += run.size();
+    }
+
+    /**
+     * Adds a run
+     * @param run values in ascending order, from index 0 to its limit
+     */
+    public void add(DoubleBuffer run){
+        lists.add(null);
+        buffers.add(run);
+        size += run.limit();
+    }
+
+    /**
+     * Removes every run, keeping the scratch space, so a view can be reused without allocating
+     */
+    public void clear(){
+        lists.clear();
+        buffers.clear();
+        size = 0;
+    }
+
+    /**
+     * Sets whether pivots are ranked in every run in parallel (on the common fork join pool) when there are at least PARALLEL_RUNS runs
+     * @param parallel true to rank in parallel
+     */
+    public void setParallel(boolean parallel){
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return the total number of values
+     */
+    public long size(){
+        return size;
+    }
+
+    /**
+     * Gets the value at a quantile, such that quantile 0.5 is the value at index size() / 2 of all the values sorted
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value, or -999.0 if there are no values
+     */
+    public double quantile(double q){
+        if (size == 0)
+            return -999.0;
+        return kth(Utility.quantileRank(q, size));
+    }
+
+    /**
+     * Finds the k-th smallest value
+     * @param k the rank, from 0 to size() - 1
+     * @return the value
+     * @throws IllegalArgumentException if k is out of range
+     */
+    public double kth(long k){
+        if (k < 0 || k >= size)
+            throw new IllegalArgumentException("rank " + k + " is not below the size " + size);
+        int m = lists.size();
+        if (lo.length < m){
+            lo = new int[m];
+            hi = new int[m];
+        }
+        for (int r = 0; r < m; r++){
+            lo[r] = 0;
+            hi[r] = length(r);
+        }
+        while (true){
+            int widest = 0;
+            for (int r = 1; r < m; r++)
+                if (hi[r] - lo[r] > hi[widest] - lo[widest])
+                    widest = r;
+            double pivot = get(widest, (lo[widest] + hi[widest]) >>> 1);
+            if (parallel && m >= PARALLEL_RUNS){
+                long less = IntStream.range(0, m).parallel().mapToLong(r -> bound(r, pivot, false)).sum();
+                long notMore = IntStream.range(0, m).parallel().mapToLong(r -> bound(r, pivot, true)).sum();
+                if (k < less)
+                    IntStream.range(0, m).parallel().forEach(r -> hi[r] = bound(r, pivot, false));
+                else if (k < notMore)
+                    return pivot;
+                else
+                    IntStream.range(0, m).parallel().forEach(r -> lo[r] = bound(r, pivot, true));
+                continue;
+            }
+            long less = 0;
+            long notMore = 0;
+            for (int r = 0; r < m; r++){
+                less += bound(r, pivot, false);
+                notMore += bound(r, pivot, true);
+            }
+            if (k < less){
+                for (int r = 0; r < m; r++)
+                    hi[r] = bound(r, pivot, false);
+            } else if (k < notMore)
+                return pivot;
+            else {
+                for (int r = 0; r < m; r++)
+                    lo[r] = bound(r, pivot, true);
+            }
+        }
+    }
+
+    //helpers
+    /**
+     * @param r a run
+     * @return the number of values in it
+     */
+    private int length(int r){
+        List<Double> list = lists.get(r);
+        return list == null ? buffers.get(r).limit() : list.size();
+    }
+
+    /**
+     * @param r a run
+     * @param i an index in it
+     * @return the value at that index
+     */
+    private double get(int r, int i){
+        List<Double> list = lists.get(r);
+        return list == null ? buffers.get(r).get(i) : list.get(i);
+    }
+
+    /**
+     * Binary searches the window of a run for a value
+     * @param r the run
+     * @param value the value
+     * @param after true to find the first index after every copy of value, false to find the first copy of value
+     * @return the index, within the run's window
+     */
+    private int bound(int r, double value, boolean after){
+        int l = lo[r];
+        int h = hi[r];
+        while (l < h){
+            int mid = (l + h) >>> 1;
+            int c = Double.compare(get(r, mid), value);
+            if (c < 0 || (after && c == 0))
+                l = mid + 1;
+            else
+                h = mid;
+        }
+        return l;
+    }
+}
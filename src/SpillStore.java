@@ -0,0 +1,357 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.TreeMap;
+
+/**
+ * Keeps the readings of whole days on disk, one compact segment file per day, for strategies over their memory budget.
+ * A segment is the int MAGIC, the ints temperatures, humidities and errors, then the sorted temperatures and sorted humidities
+ * as doubles, then the day's hourly index: the temperatures and humidities hour by hour as doubles, followed by the second
+ * of the day of each as ints. Whole spilled days are read from the sorted values, and part of a spilled day by scanning
+ * the seconds, so no spilled day needs its index in memory until it is loaded back. Segments are mapped read-only once written, so a spilled day's values are paged in by the operating system
+ * when they are read and take no heap beyond a few small objects per day.
+ * A file is never rewritten while it may be mapped: every spill writes a new file, and the files of replaced or loaded
+ * segments are deleted lazily, since some platforms refuse to delete a file until its mapping is garbage collected.
+ */
+public class SpillStore {
+
+    /**
+     * The first int of a segment
+     */
+    public static final int MAGIC = 0x47485350;
+
+    /**
+     * The bytes before the values of a segment
+     */
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    /**
+     * The directory segments are written to
+     */
+    private Path dir;
+
+    /**
+     * The segment of each spilled day, in date order
+     */
+    private TreeMap<Double, Segment> segments;
+
+    /**
+     * The number of values in every segment
+     */
+    private long values;
+
+    /**
+     * The number of segment files written, which numbers the next one
+     */
+    private long generation;
+
+    /**
+     * The files of segments that were replaced or loaded and are not deleted yet
+     */
+    private ArrayList<Path> stale;
+
+    /**
+     * A mapped segment
+     */
+    private static class Segment {
+
+        /**
+         * The sorted temperatures
+         */
+        DoubleBuffer temps;
+
+        /**
+         * The sorted humidities
+         */
+        DoubleBuffer hums;
+
+        /**
+         * The temperatures hour by hour
+         */
+        DoubleBuffer hourTemps;
+
+        /**
+         * The humidities hour by hour
+         */
+        DoubleBuffer hourHums;
+
+        /**
+         * The second of the day of each of hourTemps
+         */
+        IntBuffer tempSeconds;
+
+        /**
+         * The second of the day of each of hourHums
+         */
+        IntBuffer humSeconds;
+
+        /**
+         * The number of errors
+         */
+        int errors;
+
+        /**
+         * The segment's file
+         */
+        Path file;
+    }
+
+    /**
+     * Constructs a store with no spilled days
+     * @param dir the directory to write segments to, created if needed
+     * @throws UncheckedIOException if the directory cannot be created
+     */
+    public SpillStore(Path dir){
+        try {
+            this.dir = Files.createDirectories(dir);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments = new TreeMap<Double, Segment>();
+        values = 0;
+        generation = 0;
+        stale = new ArrayList<Path>();
+    }
+
+    /**
+     * Writes a day to a new segment file, replacing any segment of the same date, whose file is deleted lazily
+     * @param dr the day's (sorted) readings, with their hourly index
+     * @throws IllegalArgumentException if the day has no hourly index holding its readings
+     * @throws UncheckedIOException if the segment cannot be written
+     */
+    public void spill(DateReading dr){
+        HourlyIndex hourly = dr.getHourly();
+        int temps = dr.getTemps().size();
+        int hums = dr.getHums().size();
+        if (hourly == null || hourly.getTemps().size() != temps || hourly.getHums().size() != hums)
+            throw new IllegalArgumentException("the hourly index of " + (long) dr.getDate() + " does not hold its readings");
+        ByteBuffer out = ByteBuffer.allocate(HEADER_BYTES + (temps + hums) * (2 * Double.BYTES + Integer.BYTES));
+        out.putInt(MAGIC).putInt(temps).putInt(hums).putInt(dr.getErrors());
+        for (int i = 0; i < temps; i++)
+            out.putDouble(dr.getTemps().get(i));
+        for (int i = 0; i < hums; i++)
+            out.putDouble(dr.getHums().get(i));
+        double[] hourTemps = new double[temps];
+        int[] tempSeconds = new int[temps];
+        hourly.getTemps().copyTo(hourTemps, tempSeconds);
+        double[] hourHums = new double[hums];
+        int[] humSeconds = new int[hums];
+        hourly.getHums().copyTo(hourHums, humSeconds);
+        out.asDoubleBuffer().put(hourTemps).put(hourHums);
+        out.position(out.position() + (temps + hums) * Double.BYTES);
+        out.asIntBuffer().put(tempSeconds).put(humSeconds);
+        out.position(out.limit());
+        out.flip();
+        deleteStale();
+        Path file = dir.resolve(Math.round(dr.getDate()) + "-" + generation++ + ".seg");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)){
+            while (out.hasRemaining())
+                channel.write(out);
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, out.limit());
+            Segment s = new Segment();
+            s.errors = dr.getErrors();
+            s.file = file;
+            s.temps = mapped.position(HEADER_BYTES).slice().asDoubleBuffer().limit(temps);
+            s.hums = mapped.position(HEADER_BYTES + temps * Double.BYTES).slice().asDoubleBuffer().limit(hums);
+            int byHour = HEADER_BYTES + (temps + hums) * Double.BYTES;
+            s.hourTemps = mapped.position(byHour).slice().asDoubleBuffer().limit(temps);
+            s.hourHums = mapped.position(byHour + temps * Double.BYTES).slice().asDoubleBuffer().limit(hums);
+            int seconds = byHour + (temps + hums) * Double.BYTES;
+            s.tempSeconds = mapped.position(seconds).slice().asIntBuffer().limit(temps);
+            s.humSeconds = mapped.position(seconds + temps * Integer.BYTES).slice().asIntBuffer().limit(hums);
+            Segment old = segments.put(key(dr.getDate()), s);
+            if (old != null){
+                values -= old.temps.limit() + old.hums.limit();
+                stale.add(old.file);
+            }
+            values += temps + hums;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads a day back into memory, with its hourly index, and drops its segment, whose file is deleted lazily
+     * @param date a date formatted as a double
+     * @return the day's readings, or null if the date is not spilled
+     */
+    public DateReading load(double date){
+        Segment s = segments.remove(key(date));
+        if (s == null)
+            return null;
+        ArrayList<Double> temps = new ArrayList<Double>(s.temps.limit());
+        for (int i = 0; i < s.temps.limit(); i++)
+            temps.add(s.temps.get(i));
+        ArrayList<Double> hums = new ArrayList<Double>(s.hums.limit());
+        for (int i = 0; i < s.hums.limit(); i++)
+            hums.add(s.hums.get(i));
+        HourlyIndex hourly = new HourlyIndex();
+        for (int i = 0; i < s.hourTemps.limit(); i++)
+            hourly.getTemps().add(s.tempSeconds.get(i), s.hourTemps.get(i));
+        for (int i = 0; i < s.hourHums.limit(); i++)
+            hourly.getHums().add(s.humSeconds.get(i), s.hourHums.get(i));
+        values -= temps.size() + hums.size();
+        stale.add(s.file);
+        deleteStale();
+        DateReading dr = new DateReading(key(date), temps, hums, s.errors);
+        dr.setHourly(hourly);
+        return dr;
+    }
+
+    /**
+     * Adds the readings of a spilled date between two times of the day to views of sorted runs, scanning the segment
+     * for the values in the range and sorting them
+     * @param date a spilled date formatted as a double
+     * @param tempRuns receives the temperatures
+     * @param humRuns receives the humidities
+     * @param fromSecond the first second of the day, inclusive, from 0
+     * @param toSecond the last second of the day, inclusive, up to 86399
+     */
+    public void addTo(double date, SortedRuns tempRuns, SortedRuns humRuns, int fromSecond, int toSecond){
+        Segment s = segments.get(key(date));
+        if (s == null)
+            return;
+        tempRuns.add(scan(s.hourTemps, s.tempSeconds, fromSecond, toSecond));
+        humRuns.add(scan(s.hourHums, s.humSeconds, fromSecond, toSecond));
+    }
+
+    /**
+     * @param date a date formatted as a double
+     * @return true if the date is spilled
+     */
+    public boolean contains(double date){
+        return segments.containsKey(key(date));
+    }
+
+    /**
+     * @param date a spilled date formatted as a double
+     * @return the date's sorted temperatures, or null if the date is not spilled
+     */
+    public DoubleBuffer temps(double date){
+        Segment s = segments.get(key(date));
+        return s == null ? null : s.temps;
+    }
+
+    /**
+     * @param date a spilled date formatted as a double
+     * @return the date's sorted humidities, or null if the date is not spilled
+     */
+    public DoubleBuffer hums(double date){
+        Segment s = segments.get(key(date));
+        return s == null ? null : s.hums;
+    }
+
+    /**
+     * @param date a spilled date formatted as a double
+     * @return the number of errors on the date, or 0 if the date is not spilled
+     */
+    public int errors(double date){
+        Segment s = segments.get(key(date));
+        return s == null ? 0 : s.errors;
+    }
+
+    /**
+     * Adds the temperatures of every spilled day to a view of sorted runs
+     * @param runs the view
+     */
+    public void addTempsTo(SortedRuns runs){
+        for (Segment s : segments.values())
+            runs.add(s.temps);
+    }
+
+    /**
+     * Adds the humidities of every spilled day to a view of sorted runs
+     * @param runs the view
+     */
+    public void addHumsTo(SortedRuns runs){
+        for (Segment s : segments.values())
+            runs.add(s.hums);
+    }
+
+    /**
+     * @return every spilled date, in ascending order
+     */
+    public double[] sortedDates(){
+        double[] dates = new double[segments.size()];
+        int n = 0;
+        for (double date : segments.keySet())
+            dates[n++] = date;
+        return dates;
+    }
+
+    /**
+     * @return the number of spilled days
+     */
+    public int size(){
+        return segments.size();
+    }
+
+    /**
+     * @return the number of values in every spilled day
+     */
+    public long values(){
+        return values;
+    }
+
+    /**
+     * @return the number of files of replaced or loaded segments that could not be deleted yet
+     */
+    public int staleFiles(){
+        return stale.size();
+    }
+
+    //helpers
+    /**
+     * Gathers the values whose second of the day is in a range
+     * @param values the values
+     * @param seconds the second of the day of each value
+     * @param fromSecond the first second, inclusive
+     * @param toSecond the last second, inclusive
+     * @return the values in the range, sorted
+     */
+    private static DoubleBuffer scan(DoubleBuffer values, IntBuffer seconds, int fromSecond, int toSecond){
+        double[] in = new double[values.limit()];
+        int n = 0;
+        for (int i = 0; i < values.limit(); i++){
+            int second = seconds.get(i);
+            if (second >= fromSecond && second <= toSecond)
+                in[n++] = values.get(i);
+        }
+        Arrays.sort(in, 0, n);
+        return DoubleBuffer.wrap(in, 0, n);
+    }
+
+    /**
+     * @param date a date formatted as a double
+     * @return the date rounded to a whole number, so that nearly equal dates share a segment
+     */
+    private static double key(double date){
+        return Math.round(date);
+    }
+
+    /**
+     * Tries to delete the files of replaced or loaded segments, keeping those the platform refuses to delete while they
+     * are still mapped for a later attempt
+     */
+    private void deleteStale(){
+        for (Iterator<Path> it = stale.iterator(); it.hasNext(); ){
+            try {
+                Files.deleteIfExists(it.next());
+                it.remove();
+            } catch (IOException e) {
+                //still mapped, retried on the next spill or load
+            }
+        }
+    }
+}
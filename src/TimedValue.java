@@ -0,0 +1,39 @@
+/**
+ * A DTO for a single sensor value and when it was read
+ */
+public class TimedValue {
+
+    /**
+     * When the value was read, in seconds since the epoch
+     */
+    private long time;
+
+    /**
+     * The value
+     */
+    private double value;
+
+    /**
+     * Constructs a timed value
+     * @param time when the value was read, in seconds since the epoch
+     * @param value the value
+     */
+    public TimedValue(long time, double value){
+        this.time = time;
+        this.value = value;
+    }
+
+    /**
+     * @return when the value was read, in seconds since the epoch
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * @return the value
+     */
+    public double getValue() {
+        return value;
+    }
+}
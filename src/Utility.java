@@ -1,3 +1,7 @@
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+
 /**
  * A class just for utility functions used across many classes
  */
@@ -32,6 +36,44 @@ public class Utility {
         return sensorDatum > 19700101000000.0;
     }
 
+    /**
+     * Gives the first datetime of a range bound
+     * @param dateOrDateTime YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the start of that day
+     * @return YYYYMMDDhhmmss.0
+     */
+    public static double rangeStart(double dateOrDateTime){
+        return isDateTime(dateOrDateTime) ? dateOrDateTime : dateOrDateTime * 1000000.0;
+    }
+
+    /**
+     * Gives the last datetime of a range bound
+     * @param dateOrDateTime YYYYMMDDhhmmss.0, or YYYYMMDD.0 for the end of that day
+     * @return YYYYMMDDhhmmss.0
+     */
+    public static double rangeEnd(double dateOrDateTime){
+        return isDateTime(dateOrDateTime) ? dateOrDateTime : dateOrDateTime * 1000000.0 + 235959.0;
+    }
+
+    /**
+     * Gives the second of a date a range starts at
+     * @param start the first datetime of the range, YYYYMMDDhhmmss.0
+     * @param date a date within the range
+     * @return the start's second of the date, or 0 if the range starts on an earlier date
+     */
+    public static int firstSecondOn(double start, double date){
+        return sameDate(toDate(start), date) ? HourlyIndex.secondOfDay(start) : 0;
+    }
+
+    /**
+     * Gives the second of a date a range ends at
+     * @param end the last datetime of the range, YYYYMMDDhhmmss.0
+     * @param date a date within the range
+     * @return the end's second of the date, or the last second of the day if the range ends on a later date
+     */
+    public static int lastSecondOn(double end, double date){
+        return sameDate(toDate(end), date) ? HourlyIndex.secondOfDay(end) : HourBuckets.DAY - 1;
+    }
+
     /**
      * Converts the double date time format to just the date part by dividing and rounding
      * @param dateTime YYYYMMDDhhmmss.0
@@ -51,4 +93,146 @@ public class Utility {
         return Math.abs(date1 - date2) < 0.001;
     }
 
+    /**
+     * Converts the double date time format to seconds since the epoch (UTC), so that
+     * datetimes can be compared as durations. Out of range fields roll over the same way
+     * a lenient GregorianCalendar would.
+     * @param dateTime YYYYMMDDhhmmss.0
+     * @return the number of seconds since 1970-01-01 00:00:00
+     */
+    public static long toEpochSecond(double dateTime){
+        long dt = (long) dateTime;
+        long second = dt % 100;
+        dt /= 100;
+        long minute = dt % 100;
+        dt /= 100;
+        long hour = dt % 100;
+        dt /= 100;
+        long day = dt % 100;
+        dt /= 100;
+        long month = dt % 100;
+        int year = (int) (dt / 100);
+        long epochDay = LocalDate.of(year, 1, 1).plusMonths(month - 1).plusDays(day - 1).toEpochDay();
+        return (epochDay * 24 * 60 * 60) + (hour * 60 * 60) + (minute * 60) + second;
+    }
+
+    /**
+     * Converts seconds since the epoch (UTC) back to the double date time format
+     * @param epochSecond the number of seconds since 1970-01-01 00:00:00
+     * @return YYYYMMDDhhmmss.0
+     */
+    public static double fromEpochSecond(long epochSecond){
+        LocalDate date = LocalDate.ofEpochDay(Math.floorDiv(epochSecond, 24 * 60 * 60));
+        long secondOfDay = Math.floorMod(epochSecond, 24 * 60 * 60);
+        double time = (secondOfDay / 3600) * 100.0 * 100.0 +
+                ((secondOfDay / 60) % 60) * 100.0 +
+                (secondOfDay % 60);
+        double day = date.getYear() * 100.0 * 100.0 + date.getMonthValue() * 100.0 + date.getDayOfMonth();
+        return day * 100.0 * 100.0 * 100.0 + time;
+    }
+
+    /**
+     * Merges two sorted lists into a new sorted list in one linear pass
+     * @param a a sorted list
+     * @param b another sorted list
+     * @return a new list holding the values of both, sorted
+     */
+    public static ArrayList<Double> mergeSorted(ArrayList<Double> a, ArrayList<Double> b){
+        ArrayList<Double> merged = new ArrayList<Double>(a.size() + b.size());
+        int i = 0;
+        int j = 0;
+        while (i < a.size() && j < b.size()){
+            if (Double.compare(a.get(i), b.get(j)) <= 0)
+                merged.add(a.get(i++));
+            else
+                merged.add(b.get(j++));
+        }
+        while (i < a.size())
+            merged.add(a.get(i++));
+        while (j < b.size())
+            merged.add(b.get(j++));
+        return merged;
+    }
+
+    /**
+     * Removes one copy of each value of a sorted list from another sorted list, as multisets
+     * @param a a sorted list
+     * @param b a sorted list of values to remove, each of which is in a
+     * @return a new sorted list of a's values less b's
+     */
+    public static ArrayList<Double> removeSorted(ArrayList<Double> a, ArrayList<Double> b){
+        ArrayList<Double> kept = new ArrayList<Double>(Math.max(0, a.size() - b.size()));
+        int j = 0;
+        for (int i = 0; i < a.size(); i++){
+            if (j < b.size() && Double.compare(a.get(i), b.get(j)) == 0)
+                j++;
+            else
+                kept.add(a.get(i));
+        }
+        return kept;
+    }
+
+    /**
+     * Finds the index of a quantile in a sorted list, such that quantile 0.5 is the middle value at size / 2
+     * @param q the quantile, from 0.0 to 1.0
+     * @param size the size of the list, at least 1
+     * @return (q * size) capped at the last index
+     * @throws IllegalArgumentException if q is not between 0.0 and 1.0
+     */
+    public static int quantileIndex(double q, int size){
+        return (int) quantileRank(q, size);
+    }
+
+    /**
+     * Finds the rank of a quantile among size values, such that quantile 0.5 is the middle value at size / 2
+     * @param q the quantile, from 0.0 to 1.0
+     * @param size the number of values, at least 1
+     * @return (q * size) capped at size - 1
+     * @throws IllegalArgumentException if q is not between 0.0 and 1.0
+     */
+    public static long quantileRank(double q, long size){
+        if (!(q >= 0.0 && q <= 1.0))
+            throw new IllegalArgumentException("quantile " + q + " is not between 0.0 and 1.0");
+        return Math.min((long) (q * size), size - 1);
+    }
+
+    /**
+     * Gets the value at a quantile of a sorted list
+     * @param sorted a sorted list
+     * @param q the quantile, from 0.0 to 1.0
+     * @return the value at quantileIndex(q, sorted.size()), or -999.0 if the list is empty
+     */
+    public static double quantile(ArrayList<Double> sorted, double q){
+        if (sorted.isEmpty())
+            return -999.0;
+        return sorted.get(quantileIndex(q, sorted.size()));
+    }
+
+    /**
+     * Orders dates without boxing them, by sorting each date packed together with its index
+     * @param dates dates with the format YYYYMMDD.0
+     * @return the indexes of dates, in ascending date order
+     */
+    public static int[] dateOrder(double[] dates){
+        long[] packed = new long[dates.length];
+        for (int i = 0; i < dates.length; i++)
+            packed[i] = (Math.round(dates[i]) << 32) | i;
+        Arrays.sort(packed);
+        int[] order = new int[dates.length];
+        for (int i = 0; i < dates.length; i++)
+            order[i] = (int) packed[i];
+        return order;
+    }
+
+    /**
+     * Checks that an output array can hold a temperature and a humidity for every date
+     * @param dates the dates
+     * @param out the output array
+     * @throws IllegalArgumentException if out is shorter than 2 * dates.length
+     */
+    public static void checkReadingsOut(double[] dates, double[] out){
+        if (out.length < 2 * dates.length)
+            throw new IllegalArgumentException("out holds " + out.length + " values, " + 2 * dates.length + " are needed");
+    }
+
 }
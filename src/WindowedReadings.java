@@ -0,0 +1,179 @@
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps running medians of the most recent readings for any number of time windows.
+ * Windows are created the first time they are asked for, seeded from the retained readings,
+ * and from then on maintained incrementally as filtered data arrives. Pinned windows, such as those alert rules read,
+ * are maintained for good; of the others, at most MAX_WINDOWS are maintained, the least recently asked for being
+ * dropped to make room and seeded again if it is asked for later.
+ */
+public class WindowedReadings {
+
+    /**
+     * The most windows that are not pinned maintained at once
+     */
+    public static final int MAX_WINDOWS = 8;
+
+    /**
+     * The temperatures within the retention period
+     */
+    private SlidingWindowMedian retainedTemps;
+
+    /**
+     * The humidities within the retention period
+     */
+    private SlidingWindowMedian retainedHums;
+
+    /**
+     * The temperature and humidity windows (respectively), keyed by their length in seconds, least recently asked for first
+     */
+    private LinkedHashMap<Long, SlidingWindowMedian[]> windows;
+
+    /**
+     * The pinned temperature and humidity windows (respectively), keyed by their length in seconds
+     */
+    private HashMap<Long, SlidingWindowMedian[]> pinned;
+
+    /**
+     * The time of the newest reading in seconds since the epoch
+     */
+    private long now;
+
+    /**
+     * Constructs an empty set of windows
+     * @param retention the longest window that may be asked for
+     */
+    public WindowedReadings(Duration retention){
+        retainedTemps = new SlidingWindowMedian(retention.getSeconds());
+        retainedHums = new SlidingWindowMedian(retention.getSeconds());
+        windows = new LinkedHashMap<Long, SlidingWindowMedian[]>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, SlidingWindowMedian[]> eldest){
+                return size() > MAX_WINDOWS;
+            }
+        };
+        pinned = new HashMap<Long, SlidingWindowMedian[]>();
+        now = 0;
+    }
+
+    /**
+     * Adds filtered sensor data to every window
+     * @param data an ordered sequence of [datetime, temperature, humidity, ..., datetime, temperature, humidity, ...]
+     *             as produced by AbsGreenHouse.filterData; late datetimes are added to the windows they still fall in
+     */
+    public void ingest(List<Double> data){
+        for (int i = 0; i < data.size(); i++){
+            long time = Utility.toEpochSecond(data.get(i));
+            now = Math.max(now, time);
+            while (i + 1 < data.size() && !Utility.isDateTime(data.get(i + 1))){
+                i++;
+                double temp = data.get(i);
+                i++;
+                double hum = data.get(i);
+                if (!Utility.compareDoubles(temp, -999.0)){
+                    retainedTemps.add(time, temp);
+                    for (SlidingWindowMedian[] w : windows.values())
+                        w[0].add(time, temp);
+                    for (SlidingWindowMedian[] w : pinned.values())
+                        w[0].add(time, temp);
+                }
+                if (!Utility.compareDoubles(hum, -999.0)){
+                    retainedHums.add(time, hum);
+                    for (SlidingWindowMedian[] w : windows.values())
+                        w[1].add(time, hum);
+                    for (SlidingWindowMedian[] w : pinned.values())
+                        w[1].add(time, hum);
+                }
+            }
+        }
+        advanceAll();
+    }
+
+    /**
+     * produces a pair of the middle temperature and humidity (respectively) from the readings in the last window of time
+     *
+     * @param window how far back from the newest reading to look (exclusive), in whole seconds (any fraction is ignored)
+     * @return a new SensorReading object that has the middle temperature of the readings in the window
+     * and the middle humidity of the readings in the window
+     * If there are no valid temperature or humidity values, respectively, then the resulting sensor reading should have -999 for that data
+     * @throws IllegalArgumentException if the window is shorter than one second or longer than the retention period
+     */
+    public TempHumidReading middleReading(Duration window){
+        long span = span(window);
+        SlidingWindowMedian[] w = pinned.get(span);
+        if (w == null)
+            w = windows.get(span);
+        if (w == null){
+            w = seed(span);
+            windows.put(span, w);
+        }
+        return new SuperTempHumidReading(w[0].median(), w[1].median());
+    }
+
+    /**
+     * Maintains a window for good, however many other windows are asked for
+     * @param window how far back from the newest reading the window looks, in whole seconds (any fraction is ignored)
+     * @throws IllegalArgumentException if the window is shorter than one second or longer than the retention period
+     */
+    public void pin(Duration window){
+        long span = span(window);
+        if (pinned.containsKey(span))
+            return;
+        SlidingWindowMedian[] w = windows.remove(span);
+        pinned.put(span, w != null ? w : seed(span));
+    }
+
+    /**
+     * @return the number of windows maintained, pinned or not
+     */
+    public int windowCount(){
+        return windows.size() + pinned.size();
+    }
+
+    //helpers
+    /**
+     * @param window a window
+     * @return its length in whole seconds
+     * @throws IllegalArgumentException if the window is shorter than one second or longer than the retention period
+     */
+    private long span(Duration window){
+        long span = window.getSeconds();
+        if (span < 1)
+            throw new IllegalArgumentException("window of " + window + " is shorter than one second");
+        if (span > retainedTemps.getSpan())
+            throw new IllegalArgumentException("window of " + window + " is longer than the retention period");
+        return span;
+    }
+
+    /**
+     * Makes a window from the retained readings
+     * @param span the window's length in seconds
+     * @return its temperature and humidity medians (respectively), advanced to the newest reading
+     */
+    private SlidingWindowMedian[] seed(long span){
+        SlidingWindowMedian[] w = {new SlidingWindowMedian(span, retainedTemps), new SlidingWindowMedian(span, retainedHums)};
+        w[0].advanceTo(now);
+        w[1].advanceTo(now);
+        return w;
+    }
+
+    /**
+     * Evicts readings that have fallen out of each window
+     */
+    private void advanceAll(){
+        retainedTemps.advanceTo(now);
+        retainedHums.advanceTo(now);
+        for (SlidingWindowMedian[] w : windows.values()){
+            w[0].advanceTo(now);
+            w[1].advanceTo(now);
+        }
+        for (SlidingWindowMedian[] w : pinned.values()){
+            w[0].advanceTo(now);
+            w[1].advanceTo(now);
+        }
+    }
+}